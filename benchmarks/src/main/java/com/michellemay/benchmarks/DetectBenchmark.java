@@ -0,0 +1,81 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.benchmarks;
+
+import com.michellemay.URLLanguageDetector;
+import com.michellemay.URLLanguageDetectorBuilder;
+import com.michellemay.config.ConfigReader;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full detection pipeline on the built-in default configuration.
+ *
+ * @author Michel Lemay
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DetectBenchmark {
+    private static final int CORPUS_SIZE = 4096;
+    private static final int BATCH_SIZE = 1024;
+
+    @Param({ "hit", "miss", "malformed", "mixed" })
+    public UrlCorpus.Kind kind;
+
+    @Param({ "0", "10000" })
+    public long hostCache;
+
+    private URLLanguageDetector detector;
+    private String[] urls;
+    private List<String> batch;
+    private Locale[] results;
+    private int next;
+
+    @Setup
+    public void setup() throws IOException {
+        detector = URLLanguageDetectorBuilder.create(ConfigReader.readBuiltIn())
+                .withHostCache(hostCache)
+                .create();
+        List<String> corpus = UrlCorpus.generate(kind, CORPUS_SIZE, 200, 42);
+        urls = corpus.toArray(new String[0]);
+        batch = corpus.subList(0, BATCH_SIZE);
+        results = new Locale[BATCH_SIZE];
+    }
+
+    @Benchmark
+    public Optional<Locale> detect() {
+        String url = urls[next];
+        next = (next + 1) & (CORPUS_SIZE - 1);
+        return detector.detect(url);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public Locale[] detectAll() {
+        detector.detectAll(batch, results);
+        return results;
+    }
+}
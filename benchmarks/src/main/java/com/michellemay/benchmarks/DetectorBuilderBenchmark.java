@@ -0,0 +1,54 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.benchmarks;
+
+import com.michellemay.URLLanguageDetector;
+import com.michellemay.URLLanguageDetectorBuilder;
+import com.michellemay.config.Config;
+import com.michellemay.config.ConfigReader;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Detector creation: mappings, matchers and profiles compilation.
+ *
+ * @author Michel Lemay
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DetectorBuilderBenchmark {
+    @Param({ ConfigReader.DEFAULT_CONFIG, ConfigReader.TEST_CONFIG })
+    public String config;
+
+    private Config parsedConfig;
+
+    @Setup
+    public void setup() throws IOException {
+        parsedConfig = ConfigReader.readBuiltIn(config);
+    }
+
+    @Benchmark
+    public URLLanguageDetector create() {
+        return URLLanguageDetectorBuilder.create(parsedConfig).create();
+    }
+}
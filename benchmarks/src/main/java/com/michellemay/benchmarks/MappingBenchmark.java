@@ -0,0 +1,80 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.benchmarks;
+
+import com.michellemay.mappings.Mapping;
+import com.michellemay.mappings.MappingsFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Language candidate resolution in built-in mappings.
+ *
+ * @author Michel Lemay
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MappingBenchmark {
+    // Candidates as found in urls, with their surrounding context: hits in various cases, and misses.
+    private static final String[] CANDIDATES = { "/en/", "/FR/", "?lang=De", "/eng/", "/fra/", "?lang=en-US",
+            "?lang=pt_br", "?lang=french", "/English/", "/index/", "/news/", "/2015/", "?lang=", "/xx/", "/docs/", "/zz-ZZ/" };
+
+    @Param({ "ISO-639-ALPHA-2", "ISO-639-ALPHA-3", "LANGUAGE_TAGS", "ENGLISH_NAMES" })
+    public String mapping;
+
+    private Mapping langMapping;
+    private String[] values;
+    private int[] starts;
+    private int[] ends;
+    private int next;
+
+    @Setup
+    public void setup() {
+        langMapping = new MappingsFactory(Collections.emptyList()).getMappings().get(mapping);
+        values = new String[CANDIDATES.length];
+        starts = new int[CANDIDATES.length];
+        ends = new int[CANDIDATES.length];
+        for (int i = 0; i < CANDIDATES.length; i++) {
+            String candidate = CANDIDATES[i];
+            starts[i] = candidate.startsWith("?lang=") ? 6 : 1;
+            ends[i] = candidate.endsWith("/") ? candidate.length() - 1 : candidate.length();
+            values[i] = candidate.substring(starts[i], ends[i]);
+        }
+    }
+
+    @Benchmark
+    public Optional<Locale> detect() {
+        int i = next;
+        next = (next + 1) & (CANDIDATES.length - 1);
+        return langMapping.detect(values[i]);
+    }
+
+    @Benchmark
+    public Locale lookup() {
+        int i = next;
+        next = (next + 1) & (CANDIDATES.length - 1);
+        return langMapping.lookup(CANDIDATES[i], starts[i], ends[i]);
+    }
+}
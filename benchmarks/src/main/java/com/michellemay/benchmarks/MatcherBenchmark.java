@@ -0,0 +1,83 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.benchmarks;
+
+import com.michellemay.config.Config;
+import com.michellemay.config.ConfigReader;
+import com.michellemay.mappings.MappingsFactory;
+import com.michellemay.matchers.Matcher;
+import com.michellemay.matchers.MatchersFactory;
+import com.michellemay.profiles.ProfilesFactory;
+import com.michellemay.url.URLTokenizer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Each matcher of the built-in default profile on pre-tokenized urls.
+ *
+ * @author Michel Lemay
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatcherBenchmark {
+    private static final int CORPUS_SIZE = 1024;
+
+    @Param({ "hostname", "path", "querystring" })
+    public String matcher;
+
+    @Param({ "hit", "miss" })
+    public UrlCorpus.Kind kind;
+
+    private Matcher urlMatcher;
+    private URLTokenizer[] urls;
+    private int next;
+
+    @Setup
+    public void setup() throws IOException {
+        Config config = ConfigReader.readBuiltIn();
+        MappingsFactory mappingsFactory = new MappingsFactory(config.mappings);
+        MatchersFactory matchersFactory = new MatchersFactory(config.matchers, mappingsFactory);
+        ProfilesFactory profilesFactory = new ProfilesFactory(config.profiles, matchersFactory, mappingsFactory);
+        urlMatcher = profilesFactory.getProfiles().get(0).getMatchers().stream()
+                .filter((m) -> m.getName().equals(matcher))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("Matcher '" + matcher + "' does not exists!"));
+
+        List<String> corpus = UrlCorpus.generate(kind, CORPUS_SIZE, 200, 42);
+        urls = new URLTokenizer[CORPUS_SIZE];
+        for (int i = 0; i < CORPUS_SIZE; i++) {
+            urls[i] = new URLTokenizer();
+            urls[i].tokenize(corpus.get(i));
+        }
+    }
+
+    @Benchmark
+    public Optional<Locale> detect() {
+        URLTokenizer url = urls[next];
+        next = (next + 1) & (CORPUS_SIZE - 1);
+        return urlMatcher.detect(url);
+    }
+}
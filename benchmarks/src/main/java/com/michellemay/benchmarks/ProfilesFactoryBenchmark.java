@@ -0,0 +1,75 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.benchmarks;
+
+import com.michellemay.config.Config;
+import com.michellemay.config.ConfigReader;
+import com.michellemay.mappings.MappingsFactory;
+import com.michellemay.matchers.MatchersFactory;
+import com.michellemay.profiles.Profile;
+import com.michellemay.profiles.ProfilesFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Host to profile resolution as the number of profiles grows.
+ *
+ * @author Michel Lemay
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProfilesFactoryBenchmark {
+    private static final int HOSTS = 1024;
+
+    @Param({ "1", "10", "100", "1000" })
+    public int profiles;
+
+    private ProfilesFactory profilesFactory;
+    private String[] hosts;
+    private int next;
+
+    @Setup
+    public void setup() throws IOException {
+        Config config = UrlCorpus.withProfiles(ConfigReader.readBuiltIn(), profiles);
+        MappingsFactory mappingsFactory = new MappingsFactory(config.mappings);
+        MatchersFactory matchersFactory = new MatchersFactory(config.matchers, mappingsFactory);
+        profilesFactory = new ProfilesFactory(config.profiles, matchersFactory, mappingsFactory);
+
+        // Half of the hosts match a generated profile, others fall through to the catch-all profile.
+        Random random = new Random(42);
+        String[] prefixes = { "www.", "en.", "fr.", "" };
+        hosts = new String[HOSTS];
+        for (int i = 0; i < HOSTS; i++) {
+            hosts[i] = prefixes[random.nextInt(prefixes.length)] + "site" + random.nextInt(profiles * 2) + ".com";
+        }
+    }
+
+    @Benchmark
+    public Optional<Profile> findProfileForHost() {
+        String host = hosts[next];
+        next = (next + 1) & (HOSTS - 1);
+        return profilesFactory.findProfileForHost(host);
+    }
+}
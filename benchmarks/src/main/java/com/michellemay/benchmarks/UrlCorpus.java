@@ -0,0 +1,169 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.benchmarks;
+
+import com.michellemay.config.Config;
+import com.michellemay.mappings.MappingConfig;
+import com.michellemay.matchers.MatcherConfig;
+import com.michellemay.profiles.ProfileConfig;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic, reproducible, url corpus and configurations.
+ *
+ * @author Michel Lemay
+ */
+public final class UrlCorpus {
+    /**
+     * Kind of urls to generate.
+     */
+    public enum Kind {
+        /**
+         * Urls with a language code in hostname, path or querystring.
+         */
+        hit,
+        /**
+         * Valid urls without any language.
+         */
+        miss,
+        /**
+         * Urls failing to parse.
+         */
+        malformed,
+        /**
+         * Realistic mix: mostly misses, some hits and a few malformed urls.
+         */
+        mixed
+    }
+
+    private static final List<String> LANGUAGES = Arrays.asList("en", "fr", "de", "es", "it", "pt", "nl", "ja", "zh",
+            "eng", "fra", "deu", "en-US", "fr_CA", "pt-BR", "english", "french");
+    private static final List<String> WORDS = Arrays.asList("news", "blog", "shop", "docs", "index", "products",
+            "about", "contact", "search", "2015", "article", "category", "item", "help", "support", "media");
+    private static final List<String> PARAMETERS = Arrays.asList("q", "id", "page", "ref", "utm_source", "session", "sort");
+
+    private UrlCorpus() {
+    }
+
+    /**
+     * Generate urls.
+     *
+     * @param kind the kind of urls
+     * @param size the number of urls
+     * @param hosts the number of distinct hosts
+     * @param seed the random seed
+     * @return the urls
+     */
+    public static List<String> generate(Kind kind, int size, int hosts, long seed) {
+        Random random = new Random(seed);
+        List<String> urls = new ArrayList<String>(size);
+        for (int i = 0; i < size; i++) {
+            Kind current = kind;
+            if (kind == Kind.mixed) {
+                int dice = random.nextInt(100);
+                current = dice < 70 ? Kind.miss : (dice < 97 ? Kind.hit : Kind.malformed);
+            }
+            urls.add(generate(current, random, hosts));
+        }
+        return urls;
+    }
+
+    private static String generate(Kind kind, Random random, int hosts) {
+        String host = "www.site" + random.nextInt(hosts) + ".com";
+        StringBuilder path = new StringBuilder();
+        for (int i = random.nextInt(4); i >= 0; i--) {
+            path.append('/').append(pick(WORDS, random));
+        }
+        StringBuilder query = new StringBuilder();
+        for (int i = random.nextInt(3); i > 0; i--) {
+            query.append(query.length() == 0 ? '?' : '&').append(pick(PARAMETERS, random)).append('=').append(random.nextInt(10000));
+        }
+
+        switch (kind) {
+            case hit:
+                String lang = pick(LANGUAGES, random);
+                switch (random.nextInt(3)) {
+                    case 0:
+                        host = lang + ".site" + random.nextInt(hosts) + ".com";
+                        break;
+                    case 1:
+                        path.insert(0, "/" + lang);
+                        break;
+                    default:
+                        query.append(query.length() == 0 ? '?' : '&').append("lang=").append(lang);
+                        break;
+                }
+                return "http://" + host + path + query;
+            case malformed:
+                switch (random.nextInt(3)) {
+                    case 0:
+                        return "http//" + host + path;
+                    case 1:
+                        return "gopher://" + host + path;
+                    default:
+                        return "http://" + host + ":port" + path;
+                }
+            default:
+                return (random.nextBoolean() ? "http://" : "https://") + host + path + query;
+        }
+    }
+
+    private static <T> T pick(List<T> values, Random random) {
+        return values.get(random.nextInt(values.size()));
+    }
+
+    /**
+     * Generate a configuration with many profiles. Profile domains are a mix of literal hosts, suffixes and
+     * regexes; the default config profile comes last to catch all other hosts.
+     *
+     * @param base the base configuration (ex: built-in defaults)
+     * @param profiles the number of generated profiles
+     * @return the configuration
+     */
+    public static Config withProfiles(Config base, int profiles) {
+        Config config = new Config();
+        config.mappings = base.mappings != null ? base.mappings : Collections.<MappingConfig>emptyList();
+        config.matchers = base.matchers != null ? base.matchers : Collections.<MatcherConfig>emptyList();
+        config.profiles = new ArrayList<ProfileConfig>();
+        ProfileConfig catchAll = base.profiles.get(base.profiles.size() - 1);
+        for (int i = 0; i < profiles; i++) {
+            ProfileConfig profile = new ProfileConfig();
+            profile.name = "generated" + i;
+            profile.mapping = catchAll.mapping;
+            profile.matchers = catchAll.matchers;
+            switch (i % 3) {
+                case 0:
+                    profile.domains = Collections.singletonList("www\\.site" + i + "\\.com");
+                    break;
+                case 1:
+                    profile.domains = Collections.singletonList("(.*\\.)?site" + i + "\\.com");
+                    break;
+                default:
+                    profile.domains = Collections.singletonList("(www|en|fr)\\.site" + i + "\\.c[o]m");
+                    break;
+            }
+            config.profiles.add(profile);
+        }
+        config.profiles.addAll(base.profiles);
+        return config;
+    }
+}
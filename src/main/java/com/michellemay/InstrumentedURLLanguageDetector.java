@@ -0,0 +1,125 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay;
+
+import com.michellemay.mappings.LanguageRegistry;
+import com.michellemay.metrics.DetectorMetrics;
+import com.michellemay.profiles.HostProfileCache;
+import com.michellemay.profiles.NegativeHostFilter;
+import com.michellemay.profiles.Profile;
+import com.michellemay.profiles.ProfilesFactory;
+import com.michellemay.url.URLResultCache;
+import com.michellemay.url.URLTokenizer;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * URL language detector recording metrics. Only created when metrics are enabled in the builder,
+ * so that the plain detector does not pay for them.
+ *
+ * @author Michel Lemay
+ */
+class InstrumentedURLLanguageDetector extends URLLanguageDetectorImpl {
+    private final DetectorMetrics metrics;
+
+    /**
+     * Instantiates a new Instrumented URL language detector.
+     *
+     * @param profilesFactory the profiles factory
+     * @param hostCache the host cache or null if disabled
+     * @param negativeHostFilter the filter of hosts yielding no language or null if disabled
+     * @param resultCache the url result cache or null if disabled
+     * @param regexBudget the number of characters regexes may read per url, 0 for unlimited
+     */
+    InstrumentedURLLanguageDetector(ProfilesFactory profilesFactory, HostProfileCache hostCache, NegativeHostFilter negativeHostFilter,
+                                    URLResultCache resultCache, long regexBudget) {
+        super(profilesFactory, hostCache, negativeHostFilter, resultCache, regexBudget);
+        this.metrics = new DetectorMetrics(profilesFactory.getProfiles());
+    }
+
+    @Override
+    public int detectId(CharSequence url) {
+        long start = System.nanoTime();
+        int lang = super.detectId(url);
+        metrics.recordDetection(System.nanoTime() - start);
+        return lang;
+    }
+
+    /**
+     * Urls of a batch are detected together: each one is recorded with the mean latency of the batch.
+     */
+    @Override
+    public void detectAll(List<? extends CharSequence> urls, int[] results) {
+        long start = System.nanoTime();
+        super.detectAll(urls, results);
+        if (!urls.isEmpty()) {
+            long latency = (System.nanoTime() - start) / urls.size();
+            for (int i = 0; i < urls.size(); i++) {
+                metrics.recordDetection(latency);
+            }
+        }
+    }
+
+    @Override
+    void onMalformedUrl() {
+        metrics.recordMalformed();
+    }
+
+    @Override
+    void onRegexAborts(long aborts) {
+        metrics.recordRegexAborts(aborts);
+    }
+
+    @Override
+    void onSkippedHost() {
+        metrics.recordSkippedHost();
+    }
+
+    @Override
+    void onNoProfile() {
+        metrics.recordNoProfile();
+    }
+
+    /**
+     * Same as Profile.detectId, counting each matcher attempts, hits and mapping misses.
+     */
+    @Override
+    int detectId(Profile profile, URLTokenizer tokenizer) {
+        long start = System.nanoTime();
+        DetectorMetrics.ProfileMetrics profileMetrics = metrics.getProfileMetrics(profile);
+        profileMetrics.recordResolution();
+
+        int lang = LanguageRegistry.NO_LANGUAGE;
+        long[] found = profile.findLiterals(tokenizer);
+        for (int i = 0; i < profile.getMatchers().size() && lang == LanguageRegistry.NO_LANGUAGE; i++) {
+            DetectorMetrics.MatcherMetrics matcherMetrics = profileMetrics.getMatcherMetrics(i);
+            matcherMetrics.recordAttempt();
+            lang = profile.detectId(tokenizer, i, found, matcherMetrics.getMappingMisses());
+            if (lang != LanguageRegistry.NO_LANGUAGE) {
+                matcherMetrics.recordHit();
+            }
+        }
+        profileMetrics.recordLatency(System.nanoTime() - start);
+        return lang;
+    }
+
+    @Override
+    public Optional<DetectorMetrics> getMetrics() {
+        return Optional.of(metrics);
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay;
+
+import com.michellemay.config.Config;
+import com.michellemay.config.ConfigReader;
+import com.michellemay.metrics.DetectorMetrics;
+import com.michellemay.profiles.HostProfileCache;
+import com.michellemay.profiles.NegativeHostFilter;
+import com.michellemay.url.URLResultCache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * URL language detector handle whose configuration can be reloaded while in use.
+ *
+ * <p>New detectors are fully built before being published with a single atomic reference swap: readers
+ * never lock, and in-flight detections finish on the detector they started with. A failed build keeps
+ * the current detector. Each successful reload increments the generation.</p>
+ *
+ * @author Michel Lemay
+ */
+public class ReloadableURLLanguageDetector implements URLLanguageDetector, Closeable {
+    private final Function<Config, URLLanguageDetector> factory;
+    private final AtomicReference<Generation> current;
+    private final AtomicReference<Exception> lastFailure = new AtomicReference<Exception>();
+    private final Object reloadLock = new Object();
+    private final ExecutorService executor;
+    private final List<WatchService> watchers = new CopyOnWriteArrayList<WatchService>();
+
+    /**
+     * Instantiates a new Reloadable URL language detector with default builder options.
+     *
+     * @param config the initial config
+     */
+    public ReloadableURLLanguageDetector(Config config) {
+        this(config, (c) -> URLLanguageDetectorBuilder.create(c).create());
+    }
+
+    /**
+     * Instantiates a new Reloadable URL language detector.
+     *
+     * @param config the initial config
+     * @param factory creates a detector from a config (ex: to set builder options). Invalid configs must throw.
+     */
+    public ReloadableURLLanguageDetector(Config config, Function<Config, URLLanguageDetector> factory) {
+        this.factory = factory;
+        this.current = new AtomicReference<Generation>(new Generation(factory.apply(config), 0));
+        this.executor = Executors.newSingleThreadExecutor((runnable) -> {
+            Thread thread = new Thread(runnable, "url-lang-id-reload");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Gets the detector of the current generation.
+     *
+     * @return the detector
+     */
+    public URLLanguageDetector getDetector() { return current.get().detector; }
+
+    /**
+     * Gets generation. Incremented on each successful reload, starting at 0.
+     *
+     * @return the generation
+     */
+    public long getGeneration() { return current.get().number; }
+
+    /**
+     * Gets the last reload failure.
+     *
+     * @return the exception of the last failed reload, absent if the last reload succeeded
+     */
+    public Optional<Exception> getLastReloadFailure() { return Optional.ofNullable(lastFailure.get()); }
+
+    /**
+     * Build a detector from config and publish it.
+     *
+     * @param config the new config
+     * @return true if published, false if the build failed and the current detector was kept
+     */
+    public boolean reload(Config config) {
+        return reload(() -> config);
+    }
+
+    /**
+     * Read config, build a detector and publish it. Reloads are serialized.
+     *
+     * @param configSource reads the new config
+     * @return true if published, false if reading or building failed and the current detector was kept
+     */
+    public boolean reload(Callable<Config> configSource) {
+        synchronized (reloadLock) {
+            URLLanguageDetector detector;
+            try {
+                detector = factory.apply(configSource.call());
+            } catch (Exception e) {
+                lastFailure.set(e);
+                return false;
+            }
+            current.set(new Generation(detector, current.get().number + 1));
+            lastFailure.set(null);
+            return true;
+        }
+    }
+
+    /**
+     * Reload in the background.
+     *
+     * @param configSource reads the new config
+     * @return completes with true if published, false if the current detector was kept
+     */
+    public CompletableFuture<Boolean> reloadAsync(Callable<Config> configSource) {
+        return CompletableFuture.supplyAsync(() -> reload(configSource), executor);
+    }
+
+    /**
+     * Reload whenever a config file is created or modified. Watching stops on {@link #close()}.
+     *
+     * @param configFile the config file
+     * @throws IOException if the file directory cannot be watched
+     */
+    public void watch(Path configFile) throws IOException {
+        Path file = configFile.toAbsolutePath();
+        WatchService watcher = file.getFileSystem().newWatchService();
+        file.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        watchers.add(watcher);
+
+        Thread thread = new Thread(() -> watchLoop(watcher, file), "url-lang-id-watch-" + file.getFileName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void watchLoop(WatchService watcher, Path file) {
+        try {
+            while (true) {
+                WatchKey key = watcher.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    changed |= event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context());
+                }
+                key.reset();
+                if (changed) {
+                    reload(() -> ConfigReader.read(file));
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed
+        }
+    }
+
+    /**
+     * Stop watching files and background reloads.
+     *
+     * @throws IOException if a watcher fails to close
+     */
+    @Override
+    public void close() throws IOException {
+        executor.shutdown();
+        for (WatchService watcher : watchers) {
+            watcher.close();
+        }
+        watchers.clear();
+    }
+
+    @Override
+    public Optional<Locale> detect(CharSequence url) {
+        return current.get().detector.detect(url);
+    }
+
+    @Override
+    public int detectId(CharSequence url) {
+        return current.get().detector.detectId(url);
+    }
+
+    @Override
+    public void detectAll(List<? extends CharSequence> urls, Locale[] results) {
+        current.get().detector.detectAll(urls, results);
+    }
+
+    @Override
+    public void detectAll(List<? extends CharSequence> urls, int[] results) {
+        current.get().detector.detectAll(urls, results);
+    }
+
+    @Override
+    public Optional<HostProfileCache.Stats> getHostCacheStats() {
+        return current.get().detector.getHostCacheStats();
+    }
+
+    @Override
+    public Optional<NegativeHostFilter.Stats> getNegativeHostFilterStats() {
+        return current.get().detector.getNegativeHostFilterStats();
+    }
+
+    @Override
+    public Optional<URLResultCache.Stats> getResultCacheStats() {
+        return current.get().detector.getResultCacheStats();
+    }
+
+    @Override
+    public Optional<DetectorMetrics> getMetrics() {
+        return current.get().detector.getMetrics();
+    }
+
+    /**
+     * Detector and its generation number, published together.
+     */
+    private static final class Generation {
+        final URLLanguageDetector detector;
+        final long number;
+
+        Generation(URLLanguageDetector detector, long number) {
+            this.detector = detector;
+            this.number = number;
+        }
+    }
+}
@@ -16,8 +16,19 @@
 
 package com.michellemay;
 
+import com.michellemay.mappings.LanguageRegistry;
+import com.michellemay.metrics.DetectorMetrics;
+import com.michellemay.profiles.HostProfileCache;
+import com.michellemay.profiles.NegativeHostFilter;
+import com.michellemay.url.ByteCharSequence;
+import com.michellemay.url.URLResultCache;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Locale;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 /**
  * Guesses the language of an URL.
@@ -30,6 +41,116 @@ public interface URLLanguageDetector {
      * @param url Url to detect language from.
      * @return The language if confident, absent if unknown or not confident enough.
      */
-    Optional<Locale> detect(String url);
-    
+    Optional<Locale> detect(CharSequence url);
+
+    /**
+     * @param url Url to detect language from.
+     * @return The language if confident, absent if unknown or not confident enough.
+     */
+    default Optional<Locale> detect(String url) {
+        return detect((CharSequence)url);
+    }
+
+    /**
+     * Detect language from an UTF-8 encoded url without decoding it first when it is pure ASCII.
+     *
+     * @param utf8 Buffer containing the url.
+     * @param offset Offset of the url in the buffer.
+     * @param length Length of the url in bytes.
+     * @return The language if confident, absent if unknown or not confident enough.
+     */
+    default Optional<Locale> detect(byte[] utf8, int offset, int length) {
+        return detect(ByteCharSequence.utf8(utf8, offset, length));
+    }
+
+    /**
+     * Detect language from the remaining bytes of an UTF-8 encoded buffer. The buffer position is not modified.
+     *
+     * @param utf8 Buffer containing the url.
+     * @return The language if confident, absent if unknown or not confident enough.
+     */
+    default Optional<Locale> detect(ByteBuffer utf8) {
+        return detect(ByteCharSequence.utf8(utf8));
+    }
+
+    /**
+     * Detect language id, without wrapping the result. Ids are dense, small and stable for the process:
+     * see {@link LanguageRegistry} to get back the language.
+     *
+     * @param url Url to detect language from.
+     * @return The language id if confident, {@link LanguageRegistry#NO_LANGUAGE} if unknown or not confident enough.
+     */
+    default int detectId(CharSequence url) {
+        return LanguageRegistry.getId(detect(url).orElse(null));
+    }
+
+    /**
+     * Detect language id of a batch of urls.
+     *
+     * @param urls Urls to detect language from.
+     * @param results Receives the language id of each url, in input order. {@link LanguageRegistry#NO_LANGUAGE} if unknown or not confident enough.
+     */
+    default void detectAll(List<? extends CharSequence> urls, int[] results) {
+        if (results.length < urls.size()) {
+            throw new IllegalArgumentException("Results array is too small!");
+        }
+        for (int i = 0; i < urls.size(); i++) {
+            results[i] = detectId(urls.get(i));
+        }
+    }
+
+    /**
+     * Detect language of a batch of urls.
+     *
+     * @param urls Urls to detect language from.
+     * @param results Receives the language of each url, in input order. null if unknown or not confident enough.
+     */
+    default void detectAll(List<? extends CharSequence> urls, Locale[] results) {
+        if (results.length < urls.size()) {
+            throw new IllegalArgumentException("Results array is too small!");
+        }
+        for (int i = 0; i < urls.size(); i++) {
+            results[i] = detect(urls.get(i)).orElse(null);
+        }
+    }
+
+    /**
+     * Detect language of a batch of urls.
+     *
+     * @param urls Urls to detect language from.
+     * @return The language of each url, in input order.
+     */
+    default List<Optional<Locale>> detectAll(List<? extends CharSequence> urls) {
+        Locale[] results = new Locale[urls.size()];
+        detectAll(urls, results);
+        return Arrays.stream(results).map(Optional::ofNullable).collect(Collectors.toList());
+    }
+
+    /**
+     * @return Host cache statistics, absent if the detector was built without a host cache.
+     */
+    default Optional<HostProfileCache.Stats> getHostCacheStats() {
+        return Optional.empty();
+    }
+
+    /**
+     * @return Negative host filter statistics, absent if the detector was built without a negative host filter.
+     */
+    default Optional<NegativeHostFilter.Stats> getNegativeHostFilterStats() {
+        return Optional.empty();
+    }
+
+    /**
+     * @return Url result cache statistics, absent if the detector was built without a result cache.
+     */
+    default Optional<URLResultCache.Stats> getResultCacheStats() {
+        return Optional.empty();
+    }
+
+    /**
+     * @return Live detection metrics, absent if the detector was built without metrics.
+     */
+    default Optional<DetectorMetrics> getMetrics() {
+        return Optional.empty();
+    }
 }
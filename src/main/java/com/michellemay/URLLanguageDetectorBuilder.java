@@ -19,7 +19,15 @@ package com.michellemay;
 import com.michellemay.config.Config;
 import com.michellemay.mappings.MappingsFactory;
 import com.michellemay.matchers.MatchersFactory;
+import com.michellemay.profiles.HostProfileCache;
+import com.michellemay.profiles.NegativeHostFilter;
 import com.michellemay.profiles.ProfilesFactory;
+import com.michellemay.url.URLResultCache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * URL language detector builder.
@@ -30,6 +38,20 @@ public class URLLanguageDetectorBuilder {
     private MappingsFactory mappingsFactory;
     private MatchersFactory matchersFactory;
     private ProfilesFactory profilesFactory;
+    /**
+     * Default number of characters regexes may read per url, see {@link #withRegexBudget(long)}. Unlimited:
+     * patterns are checked for exponential backtracking when loaded.
+     */
+    public static final long DEFAULT_REGEX_BUDGET = 0;
+
+    private long hostCacheSize = 0;
+    private long regexBudget = DEFAULT_REGEX_BUDGET;
+    private int negativeHostThreshold = 0;
+    private double negativeHostFalsePositiveRate;
+    private long negativeHostAgingNanos;
+    private long resultCacheBytes = 0;
+    private List<String> strippedParameters = URLResultCache.DEFAULT_STRIPPED_PARAMETERS;
+    private boolean metrics = false;
 
     /**
      * Create uRL language detector builder.
@@ -41,19 +63,142 @@ public class URLLanguageDetectorBuilder {
         return new URLLanguageDetectorBuilder(config);
     }
 
+    /**
+     * Create uRL language detector builder reusing already built mappings. Config mappings are ignored.
+     *
+     * @param config the config
+     * @param mappingsFactory the mappings factory
+     * @return the uRL language detector builder
+     */
+    public static URLLanguageDetectorBuilder create(Config config, MappingsFactory mappingsFactory) {
+        return new URLLanguageDetectorBuilder(config, mappingsFactory);
+    }
+
     private URLLanguageDetectorBuilder(Config config)
     {
-        this.mappingsFactory = new MappingsFactory(config.mappings);
+        this(config, new MappingsFactory(config.mappings));
+    }
+
+    private URLLanguageDetectorBuilder(Config config, MappingsFactory mappingsFactory)
+    {
+        this.mappingsFactory = mappingsFactory;
         this.matchersFactory = new MatchersFactory(config.matchers, this.mappingsFactory);
         this.profilesFactory = new ProfilesFactory(config.profiles, this.matchersFactory, this.mappingsFactory);
     }
 
+    /**
+     * Gets mappings factory.
+     *
+     * @return the mappings factory
+     */
+    public MappingsFactory getMappingsFactory() { return mappingsFactory; }
+
+    /**
+     * Cache host to profile resolutions in each created detector.
+     *
+     * @param maximumSize the maximum number of hosts kept in cache, 0 to disable
+     * @return the uRL language detector builder
+     */
+    public URLLanguageDetectorBuilder withHostCache(long maximumSize) {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException("Host cache size must be positive!");
+        }
+        this.hostCacheSize = maximumSize;
+        return this;
+    }
+
+    /**
+     * Record metrics (per profile and per matcher counters, latency histograms) in each created detector.
+     * Detectors created without metrics do not pay for them.
+     *
+     * @param metrics enable metrics
+     * @return the uRL language detector builder
+     */
+    public URLLanguageDetectorBuilder withMetrics(boolean metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Bound the number of characters java.util.regex patterns may read per url. Matches aborted when the budget is
+     * spent are reported as not matching, so that no pattern can pin a CPU on hostile urls.
+     *
+     * @param maxReads the maximum number of characters read per url, 0 for unlimited
+     * @return the uRL language detector builder
+     */
+    public URLLanguageDetectorBuilder withRegexBudget(long maxReads) {
+        if (maxReads < 0) {
+            throw new IllegalArgumentException("Regex budget must be positive!");
+        }
+        this.regexBudget = maxReads;
+        return this;
+    }
+
+    /**
+     * Skip hosts whose urls yielded no language lately, in each created detector. See {@link NegativeHostFilter}.
+     *
+     * @param missThreshold the number of consecutive urls without language before a host is skipped, 0 to disable
+     * @param falsePositiveRate the ratio of other hosts wrongly skipped, at most
+     * @param agingPeriod the period after which skipped hosts may be retried
+     * @param unit the aging period unit
+     * @return the uRL language detector builder
+     */
+    public URLLanguageDetectorBuilder withNegativeHostFilter(int missThreshold, double falsePositiveRate, long agingPeriod, TimeUnit unit) {
+        if (missThreshold < 0) {
+            throw new IllegalArgumentException("Negative host filter threshold must be positive!");
+        }
+        if (missThreshold > 0) {
+            NegativeHostFilter.validate(missThreshold, falsePositiveRate, agingPeriod, unit);
+        }
+        this.negativeHostThreshold = missThreshold;
+        this.negativeHostFalsePositiveRate = falsePositiveRate;
+        this.negativeHostAgingNanos = unit.toNanos(agingPeriod);
+        return this;
+    }
+
+    /**
+     * Cache detection results in each created detector, keyed by url fingerprints. Common tracking parameters are
+     * ignored, see {@link URLResultCache#DEFAULT_STRIPPED_PARAMETERS}.
+     *
+     * @param maxBytes the memory budget of the cache, 0 to disable
+     * @return the uRL language detector builder
+     */
+    public URLLanguageDetectorBuilder withResultCache(long maxBytes) {
+        return withResultCache(maxBytes, URLResultCache.DEFAULT_STRIPPED_PARAMETERS);
+    }
+
+    /**
+     * Cache detection results in each created detector, keyed by url fingerprints.
+     *
+     * @param maxBytes the memory budget of the cache, 0 to disable
+     * @param strippedParameters the query parameters ignored in urls (names, or prefixes ending with '*'), never used by matchers
+     * @return the uRL language detector builder
+     */
+    public URLLanguageDetectorBuilder withResultCache(long maxBytes, Collection<String> strippedParameters) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Result cache size must be positive!");
+        }
+        if (maxBytes > 0) {
+            URLResultCache.validate(maxBytes, strippedParameters);
+        }
+        this.resultCacheBytes = maxBytes;
+        this.strippedParameters = new ArrayList<String>(strippedParameters);
+        return this;
+    }
+
     /**
      * Create uRL language detector.
      *
      * @return the uRL language detector
      */
     public URLLanguageDetector create() {
-        return new URLLanguageDetectorImpl(profilesFactory);
+        HostProfileCache hostCache = hostCacheSize > 0 ? new HostProfileCache(profilesFactory, hostCacheSize) : null;
+        NegativeHostFilter negativeHostFilter = negativeHostThreshold > 0
+                ? new NegativeHostFilter(negativeHostThreshold, negativeHostFalsePositiveRate, negativeHostAgingNanos, TimeUnit.NANOSECONDS)
+                : null;
+        URLResultCache resultCache = resultCacheBytes > 0 ? new URLResultCache(resultCacheBytes, strippedParameters) : null;
+        return metrics
+                ? new InstrumentedURLLanguageDetector(profilesFactory, hostCache, negativeHostFilter, resultCache, regexBudget)
+                : new URLLanguageDetectorImpl(profilesFactory, hostCache, negativeHostFilter, resultCache, regexBudget);
     }
 }
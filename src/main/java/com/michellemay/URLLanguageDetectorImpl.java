@@ -16,11 +16,17 @@
 
 package com.michellemay;
 
+import com.michellemay.mappings.LanguageRegistry;
+import com.michellemay.profiles.HostProfileCache;
+import com.michellemay.profiles.NegativeHostFilter;
 import com.michellemay.profiles.Profile;
 import com.michellemay.profiles.ProfilesFactory;
+import com.michellemay.regex.RegexBudget;
+import com.michellemay.url.URLResultCache;
+import com.michellemay.url.URLTokenizer;
 
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Locale;
 import java.util.Optional;
 
@@ -30,37 +36,327 @@ import java.util.Optional;
  * @author Michel Lemay
  */
 public class URLLanguageDetectorImpl implements URLLanguageDetector {
+    // Marks batch entries already processed. Never a valid key: input indexes are below 2^31.
+    private static final long DONE = -1L;
+
     private ProfilesFactory profilesFactory;
+    private HostProfileCache hostCache;
+    private NegativeHostFilter negativeHostFilter;
+    private URLResultCache resultCache;
+    private long regexBudget;
+    private ThreadLocal<URLTokenizer> tokenizers = ThreadLocal.withInitial(URLTokenizer::new);
 
     /**
      * Instantiates a new URL language detector impl.
      *
      * @param profilesFactory the profiles factory
+     * @param hostCache the host cache or null if disabled
+     * @param negativeHostFilter the filter of hosts yielding no language or null if disabled
+     * @param resultCache the url result cache or null if disabled
+     * @param regexBudget the number of characters regexes may read per url, 0 for unlimited
      */
-    URLLanguageDetectorImpl(ProfilesFactory profilesFactory) {
+    URLLanguageDetectorImpl(ProfilesFactory profilesFactory, HostProfileCache hostCache, NegativeHostFilter negativeHostFilter,
+                            URLResultCache resultCache, long regexBudget) {
         this.profilesFactory = profilesFactory;
+        this.hostCache = hostCache;
+        this.negativeHostFilter = negativeHostFilter;
+        this.resultCache = resultCache;
+        this.regexBudget = regexBudget;
     }
 
     @Override
-    public Optional<Locale> detect(String url) {
-        Optional<Locale> lang = Optional.empty();
+    public Optional<Locale> detect(CharSequence url) {
+        return Optional.ofNullable(LanguageRegistry.getLocale(detectId(url)));
+    }
 
-        try {
-            // First, make sure we have a valid url
-            URL parsedURL = new URL(url);
+    @Override
+    public int detectId(CharSequence url) {
+        // First, make sure we have a valid url
+        URLTokenizer tokenizer = tokenizers.get();
+        if (tokenizer.tokenize(url) != URLTokenizer.OK) {
+            // Malformed url, cannot detect.
+            onMalformedUrl();
+            return LanguageRegistry.NO_LANGUAGE;
+        }
 
+        long fingerprint = 0;
+        if (resultCache != null) {
+            fingerprint = resultCache.fingerprint(tokenizer);
+            int cached = resultCache.get(fingerprint);
+            if (cached != URLResultCache.MISS) {
+                return cached;
+            }
+        }
+        if (skipHost(tokenizer.getInput(), tokenizer.getHostStart(), tokenizer.getHostEnd())) {
+            return LanguageRegistry.NO_LANGUAGE;
+        }
+
+        RegexBudget budget = startBudget();
+        int lang;
+        boolean aborted;
+        try {
             // Select matching profile
-            Optional<Profile> profile = profilesFactory.findProfileForHost(parsedURL.getHost());
+            Optional<Profile> profile = findProfileForHost(tokenizer);
 
             // Execute matchers
             if (profile.isPresent()) {
-                lang = profile.get().detect(parsedURL);
+                lang = detectId(profile.get(), tokenizer);
+            } else {
+                onNoProfile();
+                lang = LanguageRegistry.NO_LANGUAGE;
             }
+        } finally {
+            aborted = endBudget(budget);
+        }
+        if (!aborted) {
+            // Results of aborted regex matches are neither recorded nor cached: they may succeed with a fresh budget.
+            recordOutcome(tokenizer.getInput(), tokenizer.getHostStart(), tokenizer.getHostEnd(), lang);
+            if (resultCache != null) {
+                resultCache.put(fingerprint, lang);
+            }
+        }
+        return lang;
+    }
 
-        } catch (MalformedURLException e) {
-            // Malformed url, cannot detect.
+    @Override
+    public void detectAll(List<? extends CharSequence> urls, Locale[] results) {
+        if (results.length < urls.size()) {
+            throw new IllegalArgumentException("Results array is too small!");
         }
+        int[] ids = new int[urls.size()];
+        detectAll(urls, ids);
+        for (int i = 0; i < ids.length; i++) {
+            results[i] = LanguageRegistry.getLocale(ids[i]);
+        }
+    }
 
-        return lang;
+    /**
+     * Urls are grouped by host (ASCII case insensitive, like domain patterns) so that profiles are resolved
+     * once per distinct host.
+     */
+    @Override
+    public void detectAll(List<? extends CharSequence> urls, int[] results) {
+        if (results.length < urls.size()) {
+            throw new IllegalArgumentException("Results array is too small!");
+        }
+
+        // Sort valid urls by host hash, keeping the input index in the low bits.
+        URLTokenizer tokenizer = tokenizers.get();
+        long[] keys = new long[urls.size()];
+        int[] hostStarts = new int[urls.size()];
+        int[] hostEnds = new int[urls.size()];
+        CharSequence[] inputs = new CharSequence[urls.size()];
+        long[] fingerprints = resultCache != null ? new long[urls.size()] : null;
+        int count = 0;
+        for (int i = 0; i < urls.size(); i++) {
+            results[i] = LanguageRegistry.NO_LANGUAGE;
+            CharSequence url = urls.get(i);
+            if (tokenizer.tokenize(url) == URLTokenizer.OK) {
+                if (resultCache != null) {
+                    fingerprints[i] = resultCache.fingerprint(tokenizer);
+                    int cached = resultCache.get(fingerprints[i]);
+                    if (cached != URLResultCache.MISS) {
+                        results[i] = cached;
+                        continue;
+                    }
+                }
+                hostStarts[i] = tokenizer.getHostStart();
+                hostEnds[i] = tokenizer.getHostEnd();
+                inputs[i] = tokenizer.getInput();
+                keys[count++] = ((long)hostHash(inputs[i], hostStarts[i], hostEnds[i]) << 32) | i;
+            } else {
+                onMalformedUrl();
+            }
+        }
+        Arrays.sort(keys, 0, count);
+
+        // Within a run of equal hashes, resolve each distinct host once and detect all its urls.
+        // The tokenizer is the per-thread detection context, with lazily computed query parameters and path
+        // segments: urls are tokenized again before matching rather than keeping a tokenizer per url. Host
+        // filtering and recording only need the host slices kept from the first pass.
+        for (int runStart = 0, runEnd; runStart < count; runStart = runEnd) {
+            long hash = keys[runStart] >>> 32;
+            runEnd = runStart + 1;
+            while (runEnd < count && keys[runEnd] >>> 32 == hash) {
+                runEnd++;
+            }
+            for (int k = runStart; k < runEnd; k++) {
+                if (keys[k] == DONE) {
+                    continue;
+                }
+                int first = (int)keys[k];
+                boolean skipped = skipHost(inputs[first], hostStarts[first], hostEnds[first]);
+                Optional<Profile> profile = Optional.empty();
+                boolean hostAborted = false;
+                if (!skipped) {
+                    tokenizer.tokenize(urls.get(first));
+                    RegexBudget budget = startBudget();
+                    try {
+                        profile = findProfileForHost(tokenizer);
+                    } finally {
+                        hostAborted = endBudget(budget);
+                    }
+                }
+                for (int j = k; j < runEnd; j++) {
+                    int idx = (int)keys[j];
+                    if (keys[j] != DONE && sameHost(inputs[first], hostStarts[first], hostEnds[first], inputs[idx], hostStarts[idx], hostEnds[idx])) {
+                        keys[j] = DONE;
+                        if (skipped) {
+                            if (j != k) {
+                                // Skipped once per url, as single detections.
+                                skipHost(inputs[idx], hostStarts[idx], hostEnds[idx]);
+                            }
+                        } else if (profile.isPresent()) {
+                            if (j != k) {
+                                // The first url of the host is still tokenized
+                                tokenizer.tokenize(urls.get(idx));
+                            }
+                            RegexBudget budget = startBudget();
+                            boolean aborted;
+                            try {
+                                results[idx] = detectId(profile.get(), tokenizer);
+                            } finally {
+                                aborted = endBudget(budget);
+                            }
+                            if (!hostAborted && !aborted) {
+                                recordOutcome(inputs[idx], hostStarts[idx], hostEnds[idx], results[idx]);
+                                if (resultCache != null) {
+                                    resultCache.put(fingerprints[idx], results[idx]);
+                                }
+                            }
+                        } else {
+                            onNoProfile();
+                            if (!hostAborted) {
+                                recordOutcome(inputs[idx], hostStarts[idx], hostEnds[idx], LanguageRegistry.NO_LANGUAGE);
+                                if (resultCache != null) {
+                                    resultCache.put(fingerprints[idx], LanguageRegistry.NO_LANGUAGE);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean skipHost(CharSequence input, int hostStart, int hostEnd) {
+        if (negativeHostFilter != null && negativeHostFilter.shouldSkip(input, hostStart, hostEnd)) {
+            onSkippedHost();
+            return true;
+        }
+        return false;
+    }
+
+    private void recordOutcome(CharSequence input, int hostStart, int hostEnd, int lang) {
+        if (negativeHostFilter != null) {
+            negativeHostFilter.record(input, hostStart, hostEnd, lang != LanguageRegistry.NO_LANGUAGE);
+        }
+    }
+
+    /**
+     * Called for each url failing to parse.
+     */
+    void onMalformedUrl() {
+    }
+
+    /**
+     * Called for each url whose host matches no profile.
+     */
+    void onNoProfile() {
+    }
+
+    /**
+     * Called after an url detection, or a host resolution, whose regex budget was spent.
+     *
+     * @param aborts the number of aborted regex matches
+     */
+    void onRegexAborts(long aborts) {
+    }
+
+    /**
+     * Called for each url skipped because its host is filtered, see {@link NegativeHostFilter}.
+     */
+    void onSkippedHost() {
+    }
+
+    private RegexBudget startBudget() {
+        RegexBudget budget = RegexBudget.get();
+        budget.reset(regexBudget);
+        return budget;
+    }
+
+    /**
+     * @return true if regex matches were aborted
+     */
+    private boolean endBudget(RegexBudget budget) {
+        long aborts = budget.getAborts();
+        if (aborts > 0) {
+            onRegexAborts(aborts);
+        }
+        // Matchers used outside of detectors are not limited.
+        budget.reset(0);
+        return aborts > 0;
+    }
+
+    /**
+     * Execute profile matchers.
+     *
+     * @param profile the profile
+     * @param tokenizer the tokenized url
+     * @return the detected language id
+     */
+    int detectId(Profile profile, URLTokenizer tokenizer) {
+        return profile.detectId(tokenizer);
+    }
+
+    /**
+     * Find profile for host of tokenized url.
+     *
+     * @param tokenizer the tokenized url
+     * @return the profile
+     */
+    Optional<Profile> findProfileForHost(URLTokenizer tokenizer) {
+        return hostCache != null
+                ? hostCache.findProfileForHost(tokenizer.getInput(), tokenizer.getHostStart(), tokenizer.getHostEnd())
+                : profilesFactory.findProfileForHost(tokenizer.getInput(), tokenizer.getHostStart(), tokenizer.getHostEnd());
+    }
+
+    private static int hostHash(CharSequence url, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + foldAscii(url.charAt(i));
+        }
+        return h;
+    }
+
+    private static boolean sameHost(CharSequence a, int aStart, int aEnd, CharSequence b, int bStart, int bEnd) {
+        if (aEnd - aStart != bEnd - bStart) {
+            return false;
+        }
+        for (int i = 0; i < aEnd - aStart; i++) {
+            if (foldAscii(a.charAt(aStart + i)) != foldAscii(b.charAt(bStart + i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static char foldAscii(char c) {
+        return c >= 'A' && c <= 'Z' ? (char)(c + ('a' - 'A')) : c;
+    }
+
+    @Override
+    public Optional<HostProfileCache.Stats> getHostCacheStats() {
+        return hostCache != null ? Optional.of(hostCache.getStats()) : Optional.empty();
+    }
+
+    @Override
+    public Optional<NegativeHostFilter.Stats> getNegativeHostFilterStats() {
+        return negativeHostFilter != null ? Optional.of(negativeHostFilter.getStats()) : Optional.empty();
+    }
+
+    @Override
+    public Optional<URLResultCache.Stats> getResultCacheStats() {
+        return resultCache != null ? Optional.of(resultCache.getStats()) : Optional.empty();
     }
 }
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.async;
+
+import com.michellemay.URLLanguageDetector;
+import com.michellemay.mappings.LanguageRegistry;
+
+import org.reactivestreams.Processor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous facade over a detector, for callers that must not block (ex: event loops).
+ *
+ * <p>Urls are queued and detected on the executor by at most 'parallelism' workers. Each worker drains the queue
+ * in micro-batches detected with {@link URLLanguageDetector#detectAll(List, int[])}, so that profile resolution and
+ * matching run in tight loops under load, while a lone url is detected right away. Futures are completed on worker
+ * threads.</p>
+ *
+ * <p>{@link #processor()} creates a Reactive Streams processor detecting urls of a stream, in input order, with a
+ * bounded number of urls in flight.</p>
+ *
+ * @author Michel Lemay
+ */
+public class AsyncURLLanguageDetector {
+    private final URLLanguageDetector detector;
+    private final Executor executor;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private int batchSize = 64;
+    private int maxPending = 65536;
+
+    private final ConcurrentLinkedQueue<Request> queue = new ConcurrentLinkedQueue<Request>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger workers = new AtomicInteger();
+
+    /**
+     * Queued url detection.
+     */
+    abstract static class Request {
+        final CharSequence url;
+
+        Request(CharSequence url) {
+            this.url = url;
+        }
+
+        abstract void complete(int languageId);
+
+        abstract void fail(Throwable error);
+    }
+
+    private static final class FutureRequest extends Request {
+        final CompletableFuture<Optional<Locale>> future = new CompletableFuture<Optional<Locale>>();
+
+        FutureRequest(CharSequence url) {
+            super(url);
+        }
+
+        @Override
+        void complete(int languageId) { future.complete(Optional.ofNullable(LanguageRegistry.getLocale(languageId))); }
+
+        @Override
+        void fail(Throwable error) { future.completeExceptionally(error); }
+    }
+
+    /**
+     * Instantiates a new Async URL language detector running on the common fork join pool.
+     *
+     * @param detector the detector
+     */
+    public AsyncURLLanguageDetector(URLLanguageDetector detector) {
+        this(detector, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Instantiates a new Async URL language detector.
+     *
+     * @param detector the detector
+     * @param executor the executor running workers
+     */
+    public AsyncURLLanguageDetector(URLLanguageDetector detector, Executor executor) {
+        this.detector = detector;
+        this.executor = executor;
+    }
+
+    /**
+     * With parallelism.
+     *
+     * @param parallelism the maximum number of workers detecting urls concurrently (default: available processors)
+     * @return the async URL language detector
+     */
+    public AsyncURLLanguageDetector withParallelism(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive!");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * With batch size.
+     *
+     * @param batchSize the maximum number of urls detected at once by a worker (default: 64)
+     * @return the async URL language detector
+     */
+    public AsyncURLLanguageDetector withBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive!");
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * With max pending.
+     *
+     * @param maxPending the maximum number of queued {@link #detectAsync(CharSequence)} urls (default: 65536)
+     * @return the async URL language detector
+     */
+    public AsyncURLLanguageDetector withMaxPending(int maxPending) {
+        if (maxPending <= 0) {
+            throw new IllegalArgumentException("Max pending must be positive!");
+        }
+        this.maxPending = maxPending;
+        return this;
+    }
+
+    public int getParallelism() { return parallelism; }
+    public int getBatchSize() { return batchSize; }
+    public int getMaxPending() { return maxPending; }
+
+    /**
+     * Gets number of queued urls, not yet taken by a worker.
+     *
+     * @return the pending urls
+     */
+    public int getPending() { return pending.get(); }
+
+    /**
+     * Detect language of an url asynchronously.
+     *
+     * @param url the url
+     * @return the detected language, failed with a RejectedExecutionException if too many urls are pending
+     */
+    public CompletableFuture<Optional<Locale>> detectAsync(CharSequence url) {
+        FutureRequest request = new FutureRequest(url);
+        if (pending.get() >= maxPending) {
+            request.fail(new RejectedExecutionException("Too many pending detections!"));
+        } else {
+            submit(request);
+        }
+        return request.future;
+    }
+
+    /**
+     * Create a processor detecting urls in input order, with parallelism * batch size urls in flight at most.
+     *
+     * @return the processor, supporting a single subscriber
+     */
+    public Processor<CharSequence, DetectionResult> processor() {
+        return processor(parallelism * batchSize);
+    }
+
+    /**
+     * Create a processor detecting urls in input order.
+     *
+     * @param bufferSize the maximum number of urls requested from upstream and not yet published downstream
+     * @return the processor, supporting a single subscriber
+     */
+    public Processor<CharSequence, DetectionResult> processor(int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive!");
+        }
+        return new DetectionProcessor(this, bufferSize);
+    }
+
+    void submit(Request request) {
+        pending.incrementAndGet();
+        queue.offer(request);
+        schedule();
+    }
+
+    private void schedule() {
+        while (!queue.isEmpty()) {
+            int running = workers.get();
+            if (running >= parallelism) {
+                return;
+            }
+            if (workers.compareAndSet(running, running + 1)) {
+                try {
+                    executor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    workers.decrementAndGet();
+                    failQueued(e);
+                }
+                return;
+            }
+        }
+    }
+
+    private void failQueued(Throwable error) {
+        Request request;
+        while ((request = queue.poll()) != null) {
+            pending.decrementAndGet();
+            request.fail(error);
+        }
+    }
+
+    private void drain() {
+        Request[] batch = new Request[batchSize];
+        List<CharSequence> urls = new ArrayList<CharSequence>(batchSize);
+        int[] ids = new int[batchSize];
+        try {
+            while (true) {
+                int count = 0;
+                Request request;
+                while (count < batch.length && (request = queue.poll()) != null) {
+                    batch[count++] = request;
+                }
+                if (count == 0) {
+                    break;
+                }
+                pending.addAndGet(-count);
+
+                urls.clear();
+                for (int i = 0; i < count; i++) {
+                    urls.add(batch[i].url);
+                }
+                try {
+                    detector.detectAll(urls, ids);
+                } catch (RuntimeException e) {
+                    for (int i = 0; i < count; i++) {
+                        batch[i].fail(e);
+                    }
+                    Arrays.fill(batch, 0, count, null);
+                    continue;
+                }
+                for (int i = 0; i < count; i++) {
+                    batch[i].complete(ids[i]);
+                }
+                Arrays.fill(batch, 0, count, null);
+            }
+        } finally {
+            workers.decrementAndGet();
+        }
+        // Urls queued after the last poll, while this worker was still counted.
+        schedule();
+    }
+}
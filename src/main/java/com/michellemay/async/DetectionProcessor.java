@@ -0,0 +1,229 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.async;
+
+import org.reactivestreams.Processor;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Processor detecting urls with an {@link AsyncURLLanguageDetector}, publishing results in input order.
+ *
+ * <p>Upstream is asked for 'bufferSize' urls, then for one more url per result published downstream: at most
+ * 'bufferSize' urls are in flight, and their results are kept in a ring indexed by input sequence until published.
+ * Signals to the subscriber are serialized by a work-in-progress counter: whichever thread completes a detection
+ * or requests more results publishes everything that is ready.</p>
+ *
+ * @author Michel Lemay
+ */
+final class DetectionProcessor implements Processor<CharSequence, DetectionResult>, Subscription {
+    private static final Subscription CANCELLED = new Subscription() {
+        @Override
+        public void request(long n) { }
+
+        @Override
+        public void cancel() { }
+    };
+
+    private final AsyncURLLanguageDetector detector;
+    private final int bufferSize;
+    private final AtomicReferenceArray<DetectionResult> results;
+
+    private final AtomicReference<Subscription> upstream = new AtomicReference<Subscription>();
+    private final AtomicReference<Subscriber<? super DetectionResult>> downstream = new AtomicReference<Subscriber<? super DetectionResult>>();
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+    // Number of urls received, written by upstream signals only.
+    private volatile long received;
+    // Number of results published, written by the publishing thread only.
+    private volatile long published;
+    private volatile boolean done;
+    private volatile boolean cancelled;
+    private volatile Throwable error;
+
+    DetectionProcessor(AsyncURLLanguageDetector detector, int bufferSize) {
+        this.detector = detector;
+        this.bufferSize = bufferSize;
+        this.results = new AtomicReferenceArray<DetectionResult>(bufferSize);
+    }
+
+    private final class SlotRequest extends AsyncURLLanguageDetector.Request {
+        private final long sequence;
+
+        SlotRequest(CharSequence url, long sequence) {
+            super(url);
+            this.sequence = sequence;
+        }
+
+        @Override
+        void complete(int languageId) {
+            results.set((int)(sequence % bufferSize), new DetectionResult(url, languageId));
+            publish();
+        }
+
+        @Override
+        void fail(Throwable e) {
+            onFailure(e);
+        }
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+        Objects.requireNonNull(subscription);
+        if (!upstream.compareAndSet(null, subscription)) {
+            subscription.cancel();
+            return;
+        }
+        subscription.request(bufferSize);
+    }
+
+    @Override
+    public void onNext(CharSequence url) {
+        Objects.requireNonNull(url);
+        if (done || cancelled) {
+            return;
+        }
+        long sequence = received;
+        if (sequence - published >= bufferSize) {
+            onFailure(new IllegalStateException("Upstream published more urls than requested!"));
+            return;
+        }
+        received = sequence + 1;
+        detector.submit(new SlotRequest(url, sequence));
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        Objects.requireNonNull(throwable);
+        error = throwable;
+        done = true;
+        publish();
+    }
+
+    @Override
+    public void onComplete() {
+        done = true;
+        publish();
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super DetectionResult> subscriber) {
+        Objects.requireNonNull(subscriber);
+        if (!downstream.compareAndSet(null, subscriber)) {
+            subscriber.onSubscribe(CANCELLED);
+            subscriber.onError(new IllegalStateException("Processor already has a subscriber!"));
+            return;
+        }
+        subscriber.onSubscribe(this);
+        publish();
+    }
+
+    @Override
+    public void request(long n) {
+        if (n <= 0) {
+            onFailure(new IllegalArgumentException("Request must be positive!"));
+            return;
+        }
+        long current;
+        long next;
+        do {
+            current = requested.get();
+            next = current + n < 0 ? Long.MAX_VALUE : current + n;
+        } while (!requested.compareAndSet(current, next));
+        publish();
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+        cancelUpstream();
+    }
+
+    private void cancelUpstream() {
+        Subscription subscription = upstream.getAndSet(CANCELLED);
+        if (subscription != null) {
+            subscription.cancel();
+        }
+    }
+
+    private void onFailure(Throwable e) {
+        if (error == null) {
+            error = e;
+        }
+        cancelUpstream();
+        publish();
+    }
+
+    private void publish() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        while (true) {
+            Subscriber<? super DetectionResult> subscriber = downstream.get();
+            if (subscriber != null && !cancelled) {
+                long demand = requested.get();
+                long count = 0;
+                long sequence = published;
+                while (count != demand && error == null) {
+                    int slot = (int)(sequence % bufferSize);
+                    DetectionResult result = results.get(slot);
+                    if (result == null) {
+                        break;
+                    }
+                    results.set(slot, null);
+                    published = ++sequence;
+                    count++;
+                    subscriber.onNext(result);
+                    if (cancelled) {
+                        return;
+                    }
+                }
+                if (count != 0) {
+                    if (demand != Long.MAX_VALUE) {
+                        requested.addAndGet(-count);
+                    }
+                    if (!done) {
+                        upstream.get().request(count);
+                    }
+                }
+
+                Throwable e = error;
+                if (e != null) {
+                    cancelled = true;
+                    subscriber.onError(e);
+                    return;
+                }
+                if (done && sequence == received) {
+                    cancelled = true;
+                    subscriber.onComplete();
+                    return;
+                }
+            }
+            missed = wip.addAndGet(-missed);
+            if (missed == 0) {
+                return;
+            }
+        }
+    }
+}
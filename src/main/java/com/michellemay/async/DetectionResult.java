@@ -0,0 +1,63 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.async;
+
+import com.michellemay.mappings.LanguageRegistry;
+
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Language detected for an url, as published by {@link AsyncURLLanguageDetector#processor()}.
+ *
+ * @author Michel Lemay
+ */
+public final class DetectionResult {
+    private final CharSequence url;
+    private final int languageId;
+
+    DetectionResult(CharSequence url, int languageId) {
+        this.url = url;
+        this.languageId = languageId;
+    }
+
+    /**
+     * Gets url.
+     *
+     * @return the url
+     */
+    public CharSequence getUrl() { return url; }
+
+    /**
+     * Gets language id.
+     *
+     * @return the language id or {@link LanguageRegistry#NO_LANGUAGE}
+     */
+    public int getLanguageId() { return languageId; }
+
+    /**
+     * Gets language.
+     *
+     * @return the language
+     */
+    public Optional<Locale> getLanguage() { return Optional.ofNullable(LanguageRegistry.getLocale(languageId)); }
+
+    @Override
+    public String toString() {
+        return "DetectionResult{url=" + url + ", language=" + LanguageRegistry.getLanguageTag(languageId) + "}";
+    }
+}
@@ -0,0 +1,456 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.cli;
+
+import com.michellemay.URLLanguageDetector;
+import com.michellemay.URLLanguageDetectorBuilder;
+import com.michellemay.config.Config;
+import com.michellemay.config.ConfigReader;
+import com.michellemay.mappings.LanguageRegistry;
+import com.michellemay.url.ByteCharSequence;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Classifies files of urls, one per line, and writes 'url&lt;TAB&gt;lang' lines in input order.
+ *
+ * <p>Input is split in chunks of whole lines, classified on a worker pool. Plain files are memory-mapped
+ * chunk by chunk; gzip files (detected by their magic number) and standard input are read sequentially by
+ * a single reader thread. At most a few chunks per worker are in flight, so memory use does not depend on
+ * input size. Unknown languages are written as an empty string.</p>
+ *
+ * <pre>
+ * java -cp url-lang-id.jar:... com.michellemay.cli.URLFileClassifier [options] [input files or - for stdin]
+ *   --config FILE        JSON configuration (default: built-in profiles)
+ *   --output FILE        Output file (default: stdout)
+ *   --threads N          Worker threads (default: available processors)
+ *   --chunk-size BYTES   Chunk size (default: 4 MB)
+ *   --host-cache N       Host cache size (default: 100000, 0 to disable)
+ * </pre>
+ *
+ * @author Michel Lemay
+ */
+public class URLFileClassifier {
+    private static final int GZIP_MAGIC = 0x8b1f;
+
+    private final URLLanguageDetector detector;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int chunkSize = 4 << 20;
+
+    /**
+     * Statistics of a run.
+     */
+    public static final class Stats {
+        private long lines;
+        private long detected;
+        private long bytes;
+        private long nanos;
+
+        /**
+         * @return number of classified urls
+         */
+        public long getLines() { return lines; }
+
+        /**
+         * @return number of urls with a detected language
+         */
+        public long getDetected() { return detected; }
+
+        /**
+         * @return number of input bytes (uncompressed)
+         */
+        public long getBytes() { return bytes; }
+
+        /**
+         * @return elapsed time in nanoseconds
+         */
+        public long getNanos() { return nanos; }
+
+        @Override
+        public String toString() {
+            double seconds = Math.max(nanos, 1) / 1e9;
+            return String.format(Locale.ROOT, "%d urls (%d detected), %.1f MB in %.3f s: %.0f urls/s, %.1f MB/s",
+                    lines, detected, bytes / 1e6, seconds, lines / seconds, bytes / 1e6 / seconds);
+        }
+    }
+
+    /**
+     * Classified chunk.
+     */
+    private static final class ChunkResult {
+        final byte[] output;
+        final int outputLength;
+        final int lines;
+        final int detected;
+        final int bytes;
+
+        ChunkResult(byte[] output, int outputLength, int lines, int detected, int bytes) {
+            this.output = output;
+            this.outputLength = outputLength;
+            this.lines = lines;
+            this.detected = detected;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Output buffer exposing its array, to write results without copying them.
+     */
+    private static final class OutputBuffer extends ByteArrayOutputStream {
+        OutputBuffer(int size) { super(size); }
+        byte[] array() { return buf; }
+    }
+
+    /**
+     * Instantiates a new URL file classifier.
+     *
+     * @param detector the detector
+     */
+    public URLFileClassifier(URLLanguageDetector detector) {
+        this.detector = detector;
+    }
+
+    /**
+     * Gets worker threads.
+     *
+     * @return the threads
+     */
+    public int getThreads() { return threads; }
+
+    /**
+     * With worker threads.
+     *
+     * @param threads the threads
+     * @return the URL file classifier
+     */
+    public URLFileClassifier withThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is required!");
+        }
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Gets chunk size.
+     *
+     * @return the chunk size in bytes
+     */
+    public int getChunkSize() { return chunkSize; }
+
+    /**
+     * With chunk size. Chunks are extended to the end of their last line.
+     *
+     * @param chunkSize the chunk size in bytes
+     * @return the URL file classifier
+     */
+    public URLFileClassifier withChunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive!");
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * Classify files, in order.
+     *
+     * @param inputs the input files, '-' for standard input
+     * @param output the output
+     * @return the run statistics
+     * @throws IOException if an input cannot be read or the output cannot be written
+     */
+    public Stats classify(List<Path> inputs, OutputStream output) throws IOException {
+        long start = System.nanoTime();
+        Stats stats = new Stats();
+        ExecutorService workers = Executors.newFixedThreadPool(threads, (runnable) -> {
+            Thread thread = new Thread(runnable, "url-classifier-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // In flight chunks, in input order. Bounded so that the reader waits for the writer.
+        BlockingQueue<Future<ChunkResult>> pending = new ArrayBlockingQueue<Future<ChunkResult>>(threads * 4);
+        CompletableFuture<ChunkResult> endOfInput = CompletableFuture.completedFuture(null);
+
+        Thread reader = new Thread(() -> {
+            try {
+                for (Path input : inputs) {
+                    read(input, workers, pending);
+                }
+                pending.put(endOfInput);
+            } catch (InterruptedException e) {
+                // Writer is gone.
+            } catch (Exception e) {
+                CompletableFuture<ChunkResult> failure = new CompletableFuture<ChunkResult>();
+                failure.completeExceptionally(e);
+                try {
+                    pending.put(failure);
+                } catch (InterruptedException ignored) {
+                    // Writer is gone.
+                }
+            }
+        }, "url-classifier-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        try {
+            for (Future<ChunkResult> next = pending.take(); next != endOfInput; next = pending.take()) {
+                ChunkResult result = next.get();
+                output.write(result.output, 0, result.outputLength);
+                stats.lines += result.lines;
+                stats.detected += result.detected;
+                stats.bytes += result.bytes;
+            }
+            output.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted!", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException)e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            reader.interrupt();
+            workers.shutdownNow();
+        }
+        stats.nanos = System.nanoTime() - start;
+        return stats;
+    }
+
+    private void read(Path input, ExecutorService workers, BlockingQueue<Future<ChunkResult>> pending) throws IOException, InterruptedException {
+        if (input.toString().equals("-")) {
+            readStream(System.in, workers, pending);
+            return;
+        }
+        try (InputStream in = Files.newInputStream(input)) {
+            if (readShort(in) == GZIP_MAGIC) {
+                readStream(Files.newInputStream(input), workers, pending);
+                return;
+            }
+        }
+        readMapped(input, workers, pending);
+    }
+
+    private static int readShort(InputStream in) throws IOException {
+        int b0 = in.read();
+        int b1 = in.read();
+        return b0 < 0 || b1 < 0 ? -1 : (b1 << 8) | b0;
+    }
+
+    /**
+     * Memory-map chunks of whole lines of a plain file. Mappings stay valid once the channel is closed.
+     */
+    private void readMapped(Path input, ExecutorService workers, BlockingQueue<Future<ChunkResult>> pending) throws IOException, InterruptedException {
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer scan = ByteBuffer.allocate(8192);
+            for (long chunkStart = 0; chunkStart < size; ) {
+                long chunkEnd = nextLineStart(channel, Math.min(size, chunkStart + chunkSize), size, scan);
+                int length = (int)Math.min(Integer.MAX_VALUE, chunkEnd - chunkStart);
+                ByteBuffer lines = channel.map(FileChannel.MapMode.READ_ONLY, chunkStart, length);
+                pending.put(workers.submit(() -> classify(lines)));
+                chunkStart += length;
+            }
+        }
+    }
+
+    private static long nextLineStart(FileChannel channel, long position, long size, ByteBuffer scan) throws IOException {
+        while (position < size) {
+            scan.clear();
+            int read = channel.read(scan, position);
+            if (read <= 0) {
+                return size;
+            }
+            for (int i = 0; i < read; i++) {
+                if (scan.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * Read chunks of whole lines sequentially (compressed files and streams).
+     */
+    private void readStream(InputStream stream, ExecutorService workers, BlockingQueue<Future<ChunkResult>> pending) throws IOException, InterruptedException {
+        PushbackInputStream pushback = new PushbackInputStream(new BufferedInputStream(stream, 1 << 16), 2);
+        int magic = readShort(pushback);
+        if (magic >= 0) {
+            pushback.unread(new byte[] { (byte)magic, (byte)(magic >>> 8) });
+        }
+        try (InputStream in = magic == GZIP_MAGIC ? new GZIPInputStream(pushback, 1 << 16) : pushback) {
+            byte[] chunk = new byte[chunkSize];
+            int length = 0;
+            while (true) {
+                int read = in.read(chunk, length, chunk.length - length);
+                if (read > 0) {
+                    length += read;
+                }
+                if (read < 0 || length == chunk.length) {
+                    int lineEnd = length;
+                    if (read >= 0) {
+                        while (lineEnd > 0 && chunk[lineEnd - 1] != '\n') {
+                            lineEnd--;
+                        }
+                        if (lineEnd == 0) {
+                            // Line longer than chunk: grow.
+                            chunk = Arrays.copyOf(chunk, chunk.length * 2);
+                            continue;
+                        }
+                    }
+                    if (lineEnd > 0) {
+                        ByteBuffer lines = ByteBuffer.wrap(chunk, 0, lineEnd).slice();
+                        pending.put(workers.submit(() -> classify(lines)));
+                    }
+                    if (read < 0) {
+                        return;
+                    }
+                    byte[] next = new byte[Math.max(chunkSize, length - lineEnd)];
+                    System.arraycopy(chunk, lineEnd, next, 0, length - lineEnd);
+                    length -= lineEnd;
+                    chunk = next;
+                }
+            }
+        }
+    }
+
+    private ChunkResult classify(ByteBuffer chunk) {
+        int limit = chunk.limit();
+        OutputBuffer output = new OutputBuffer(limit + limit / 4);
+        byte[] line = new byte[256];
+        int lines = 0;
+        int detected = 0;
+        for (int lineStart = 0; lineStart < limit; ) {
+            int lineEnd = lineStart;
+            while (lineEnd < limit && chunk.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            int next = lineEnd + 1;
+            if (lineEnd > lineStart && chunk.get(lineEnd - 1) == '\r') {
+                lineEnd--;
+            }
+            int length = lineEnd - lineStart;
+            if (length > 0) {
+                if (line.length < length) {
+                    line = new byte[Math.max(length, line.length * 2)];
+                }
+                for (int i = 0; i < length; i++) {
+                    line[i] = chunk.get(lineStart + i);
+                }
+                int id = detector.detectId(ByteCharSequence.utf8(line, 0, length));
+                output.write(line, 0, length);
+                output.write('\t');
+                if (id != LanguageRegistry.NO_LANGUAGE) {
+                    byte[] tag = LanguageRegistry.getLanguageTag(id).getBytes(StandardCharsets.US_ASCII);
+                    output.write(tag, 0, tag.length);
+                    detected++;
+                }
+                output.write('\n');
+                lines++;
+            }
+            lineStart = next;
+        }
+        return new ChunkResult(output.array(), output.size(), lines, detected, limit);
+    }
+
+    /**
+     * Command line entry point. See class documentation for options.
+     *
+     * @param args the arguments
+     * @throws IOException if a file cannot be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        Config config = null;
+        Path outputFile = null;
+        long hostCache = 100000;
+        Integer threads = null;
+        Integer chunkSize = null;
+        List<Path> inputs = new ArrayList<Path>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.startsWith("--") && i + 1 >= args.length) {
+                usage("Missing value for " + arg);
+            }
+            switch (arg) {
+                case "--config": config = ConfigReader.read(Paths.get(args[++i])); break;
+                case "--output": outputFile = Paths.get(args[++i]); break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--chunk-size": chunkSize = Integer.parseInt(args[++i]); break;
+                case "--host-cache": hostCache = Long.parseLong(args[++i]); break;
+                default:
+                    if (arg.startsWith("--")) {
+                        usage("Unknown option " + arg);
+                    }
+                    inputs.add(Paths.get(arg));
+            }
+        }
+        if (inputs.isEmpty()) {
+            inputs.add(Paths.get("-"));
+        }
+
+        URLLanguageDetector detector = URLLanguageDetectorBuilder.create(config != null ? config : ConfigReader.readBuiltIn())
+                .withHostCache(hostCache)
+                .create();
+        URLFileClassifier classifier = new URLFileClassifier(detector);
+        if (threads != null) {
+            classifier.withThreads(threads);
+        }
+        if (chunkSize != null) {
+            classifier.withChunkSize(chunkSize);
+        }
+
+        OutputStream output = outputFile != null ? Files.newOutputStream(outputFile) : System.out;
+        try (OutputStream out = new BufferedOutputStream(output, 1 << 16)) {
+            Stats stats = classifier.classify(inputs, out);
+            System.err.println(stats);
+        }
+    }
+
+    private static void usage(String error) {
+        System.err.println(error);
+        System.err.println("Usage: URLFileClassifier [--config FILE] [--output FILE] [--threads N] [--chunk-size BYTES] [--host-cache N] [FILE|-]...");
+        System.exit(1);
+    }
+}
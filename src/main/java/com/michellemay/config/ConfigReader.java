@@ -18,6 +18,8 @@ package com.michellemay.config;
 
 import java.io.*;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -81,6 +83,21 @@ public class ConfigReader {
         return (new ObjectMapper()).readValue(inputConfig, Config.class);
     }
 
+    /**
+     * Read from a file in UTF-8.
+     *
+     * @param file Config file.
+     *
+     * @return New {@link Config} object.
+     *
+     * @throws IOException if an error occurs while reading the configuration.
+     */
+    public static Config read(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return read(in);
+        }
+    }
+
     /**
      * Load profiles configuration from the classpath in a specific directory.
      *
@@ -16,12 +16,31 @@
 
 package com.michellemay.mappings;
 
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
 /**
  * Custom mapping.
  *
+ * <p>Custom mappings built by {@link MappingsFactory} are overlays: a small table of added and overridden
+ * values on top of the shared base mappings they extend, plus the set of base languages removed by filters
+ * and overrides. Base entries are never copied: a lookup probes the overlay, then each base in order, and
+ * the first base holding the value decides. {@link #getMapping()} builds the equivalent lookup table on demand.</p>
+ *
  * @author Michel Lemay
  */
 public class CustomMapping extends Mapping {
+    // Overlay, null when built from a whole map.
+    private List<Mapping> bases;
+    private LookupTable overlayTable;
+    private BitSet excluded;
+    private volatile Map<String, Locale> materialized;
+
     /**
      * Instantiates a new Custom mapping.
      *
@@ -30,4 +49,113 @@ public class CustomMapping extends Mapping {
     public CustomMapping(String name) {
         super(name);
     }
+
+    /**
+     * With overlay over base mappings. Case sensitiveness must be set first.
+     *
+     * @param bases the base mappings, in priority order
+     * @param overlay the added and overridden values, looked up before bases
+     * @param excluded the ids of languages removed from bases
+     * @return the custom mapping
+     */
+    CustomMapping withOverlay(List<Mapping> bases, Map<String, Locale> overlay, BitSet excluded) {
+        this.bases = bases;
+        this.overlayTable = new LookupTable(overlay, getCaseSensitive());
+        this.excluded = excluded;
+        this.materialized = null;
+        return this;
+    }
+
+    /**
+     * Gets mapping. Overlays are materialized on first call.
+     *
+     * @return the mapping
+     */
+    @Override
+    public Map<String, Locale> getMapping() {
+        if (bases == null) {
+            return super.getMapping();
+        }
+        Map<String, Locale> map = materialized;
+        if (map == null) {
+            map = materialize();
+            materialized = map;
+        }
+        return map;
+    }
+
+    private Map<String, Locale> materialize() {
+        TreeMap<String, Locale> map = new TreeMap<String, Locale>(getCaseSensitive() ? null : String.CASE_INSENSITIVE_ORDER);
+        for (Mapping base : bases) {
+            for (String key : base.getMapping().keySet()) {
+                if (!map.containsKey(key)) {
+                    int id = lookupBases(bases, excluded, key, 0, key.length(), getCaseSensitive());
+                    if (id != LanguageRegistry.NO_LANGUAGE) {
+                        map.put(key, LanguageRegistry.getLocale(id));
+                    }
+                }
+            }
+        }
+        map.putAll(overlayTable);
+        return new LookupTable(map, getCaseSensitive());
+    }
+
+    @Override
+    public CustomMapping withMapping(Map<String, Locale> mapping) {
+        this.bases = null;
+        super.withMapping(mapping);
+        return this;
+    }
+
+    @Override
+    public CustomMapping withCaseSensitive(boolean caseSensitive) {
+        if (bases != null && caseSensitive != getCaseSensitive()) {
+            // Same as a whole map looked up with a different case sensitiveness.
+            withMapping(getMapping());
+        }
+        super.withCaseSensitive(caseSensitive);
+        return this;
+    }
+
+    @Override
+    public Locale lookup(CharSequence input, int start, int end) {
+        return bases == null ? super.lookup(input, start, end) : LanguageRegistry.getLocale(lookupId(input, start, end));
+    }
+
+    @Override
+    public int lookupId(CharSequence input, int start, int end) {
+        if (bases == null) {
+            return super.lookupId(input, start, end);
+        }
+        int id = overlayTable.getId(input, start, end);
+        return id != LanguageRegistry.NO_LANGUAGE ? id : lookupBases(bases, excluded, input, start, end, getCaseSensitive());
+    }
+
+    /**
+     * Lookup a value in base mappings: the first base holding the value decides.
+     *
+     * @return the language id, {@link LanguageRegistry#NO_LANGUAGE} if not found or excluded
+     */
+    static int lookupBases(List<Mapping> bases, BitSet excluded, CharSequence input, int start, int end, boolean caseSensitive) {
+        for (Mapping base : bases) {
+            int id = base.lookupId(input, start, end, caseSensitive);
+            if (id != LanguageRegistry.NO_LANGUAGE) {
+                return excluded.get(id) ? LanguageRegistry.NO_LANGUAGE : id;
+            }
+        }
+        return LanguageRegistry.NO_LANGUAGE;
+    }
+
+    @Override
+    void collectLocales(Set<Locale> locales) {
+        if (bases == null) {
+            super.collectLocales(locales);
+            return;
+        }
+        Set<Locale> baseLocales = new HashSet<Locale>();
+        bases.forEach((base) -> base.collectLocales(baseLocales));
+        baseLocales.removeIf((locale) -> excluded.get(LanguageRegistry.register(locale)));
+        locales.addAll(baseLocales);
+        locales.addAll(overlayTable.values());
+    }
 }
@@ -49,6 +49,6 @@ public class DisplayNamesMapping extends Mapping {
             }
         }
 
-        this.withMapping(map).withCaseSensitive(false);
+        this.withCaseSensitive(false).withMapping(new LookupTable(map, false));
     }
 }
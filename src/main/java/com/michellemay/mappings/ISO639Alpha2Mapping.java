@@ -46,6 +46,6 @@ public class ISO639Alpha2Mapping extends Mapping {
                 }
             }
         }
-        this.withMapping(map).withCaseSensitive(false);
+        this.withCaseSensitive(false).withMapping(new LookupTable(map, false));
     }
 }
@@ -46,6 +46,6 @@ public class ISO639Alpha3Mapping extends Mapping {
                 }
             }
         }
-        this.withMapping(map).withCaseSensitive(false);
+        this.withCaseSensitive(false).withMapping(new LookupTable(map, false));
     }
 }
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.mappings;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide registry assigning a dense, small and stable int id to each distinct language produced by
+ * mappings. Ids start at 0 and are never reused, so results can be kept in int[] or short[] columns and used
+ * as histogram indexes, and stay valid across detectors and configuration reloads.
+ *
+ * <p>Languages are registered when a mapping lookup table is built: the registry only grows with the
+ * languages of mappings in use.</p>
+ *
+ * @author Michel Lemay
+ */
+public final class LanguageRegistry {
+    /**
+     * Id of unknown language.
+     */
+    public static final int NO_LANGUAGE = -1;
+
+    private static final ConcurrentHashMap<Locale, Integer> ids = new ConcurrentHashMap<Locale, Integer>();
+    // Grown under lock, elements are written before the array is (re)published.
+    private static volatile Locale[] locales = new Locale[256];
+    private static volatile String[] tags = new String[256];
+    private static volatile int size = 0;
+
+    private LanguageRegistry() {
+    }
+
+    /**
+     * Register a language.
+     *
+     * @param locale the language
+     * @return the language id
+     */
+    public static int register(Locale locale) {
+        if (locale == null) {
+            throw new IllegalArgumentException("Null language!");
+        }
+        Integer id = ids.get(locale);
+        if (id != null) {
+            return id;
+        }
+        synchronized (LanguageRegistry.class) {
+            id = ids.get(locale);
+            if (id == null) {
+                id = size;
+                Locale[] newLocales = locales.length > id ? locales : Arrays.copyOf(locales, locales.length * 2);
+                String[] newTags = tags.length > id ? tags : Arrays.copyOf(tags, tags.length * 2);
+                newLocales[id] = locale;
+                newTags[id] = locale.toLanguageTag();
+                tags = newTags;
+                locales = newLocales;
+                size = id + 1;
+                ids.put(locale, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Gets the id of a language.
+     *
+     * @param locale the language, may be null
+     * @return the language id or {@link #NO_LANGUAGE} if null or never produced by a mapping
+     */
+    public static int getId(Locale locale) {
+        Integer id = locale != null ? ids.get(locale) : null;
+        return id != null ? id : NO_LANGUAGE;
+    }
+
+    /**
+     * Gets the language of an id.
+     *
+     * @param id the language id
+     * @return the language or null for {@link #NO_LANGUAGE}
+     */
+    public static Locale getLocale(int id) {
+        if (id == NO_LANGUAGE) {
+            return null;
+        }
+        checkId(id);
+        return locales[id];
+    }
+
+    /**
+     * Gets the BCP 47 language tag of an id.
+     *
+     * @param id the language id
+     * @return the language tag or null for {@link #NO_LANGUAGE}
+     */
+    public static String getLanguageTag(int id) {
+        if (id == NO_LANGUAGE) {
+            return null;
+        }
+        checkId(id);
+        return tags[id];
+    }
+
+    /**
+     * Gets the number of registered languages. Ids are below this value.
+     *
+     * @return the size
+     */
+    public static int size() {
+        return size;
+    }
+
+    private static void checkId(int id) {
+        if (id < 0 || id >= size) {
+            throw new IllegalArgumentException("Language id " + id + " does not exists!");
+        }
+    }
+}
@@ -18,8 +18,8 @@ package com.michellemay.mappings;
 
 import org.apache.commons.lang3.LocaleUtils;
 
+import java.util.LinkedHashMap;
 import java.util.Locale;
-import java.util.TreeMap;
 
 /**
  * Locale LanguageTags mapping.
@@ -36,8 +36,8 @@ public class LanguageTagsMapping extends Mapping {
         super(NAME);
         this.withCaseSensitive(false);
 
-        // Build reverse map.  Use a tree map to offer case insensitiveness while preserving keys case (useful for extending)
-        TreeMap<String, Locale> map = new TreeMap<String, Locale>(this.getCaseSensitive() ? null : String.CASE_INSENSITIVE_ORDER);
+        // Build reverse map.  The lookup table offers case insensitiveness while preserving keys case (useful for extending)
+        LinkedHashMap<String, Locale> map = new LinkedHashMap<String, Locale>();
         for (Locale loc : LocaleUtils.availableLocaleList()) {
             String isoCode = loc.getLanguage();
             if (isoCode.length() > 0) {
@@ -49,6 +49,6 @@ public class LanguageTagsMapping extends Mapping {
                 }
             }
         }
-        this.withMapping(map);
+        this.withMapping(new LookupTable(map, this.getCaseSensitive()));
     }
 }
@@ -0,0 +1,240 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.mappings;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Read-only open addressing hash map probed with CharSequence ranges, without allocations.
+ *
+ * <p>Keys are packed in a single char array, with their original case: case insensitive tables hash and
+ * compare folded characters, so extending mappings still see the keys as they were given. Each probe
+ * compares the cached key hash first, so lookup cost does not depend on the table size.</p>
+ *
+ * @author Michel Lemay
+ */
+class LookupTable extends AbstractMap<String, Locale> {
+    private final char[] keys;
+    // Key i is keys[keyOffsets[i]..keyOffsets[i + 1]).
+    private final int[] keyOffsets;
+    private final int[] hashes;
+    private final Locale[] values;
+    private final int[] ids;
+    private final int size;
+    // Entry index + 1 for each slot, 0 when empty.
+    private final int[] slots;
+    private final int mask;
+    private final boolean caseSensitive;
+    private Set<Map.Entry<String, Locale>> entrySet;
+
+    /**
+     * Instantiates a new Lookup table.
+     *
+     * @param mapping the mapping
+     * @param caseSensitive the case sensitive
+     */
+    LookupTable(Map<String, Locale> mapping, boolean caseSensitive) {
+        this.caseSensitive = caseSensitive;
+        int capacity = Integer.highestOneBit(Math.max(2, mapping.size() * 2) - 1) << 1;
+        this.slots = new int[capacity];
+        this.mask = capacity - 1;
+
+        int length = 0;
+        for (String key : mapping.keySet()) {
+            length += key.length();
+        }
+        char[] chars = new char[length];
+        int[] offsets = new int[mapping.size() + 1];
+        int[] keyHashes = new int[mapping.size()];
+        Locale[] locales = new Locale[mapping.size()];
+        int[] languageIds = new int[mapping.size()];
+        int count = 0;
+        for (Map.Entry<String, Locale> entry : mapping.entrySet()) {
+            String key = entry.getKey();
+            int hash = hash(key, 0, key.length());
+            int slot = hash & mask;
+            int index = slots[slot] - 1;
+            while (index >= 0 && !(keyHashes[index] == hash && regionEquals(chars, offsets[index], offsets[index + 1], key, 0, key.length()))) {
+                slot = (slot + 1) & mask;
+                index = slots[slot] - 1;
+            }
+            if (index < 0) {
+                index = count++;
+                slots[slot] = index + 1;
+                offsets[index + 1] = offsets[index] + key.length();
+                keyHashes[index] = hash;
+            } else if (!isFolded(key) || isFolded(chars, offsets[index], offsets[index + 1])) {
+                // On folding collisions, prefer the key that was already folded (ex: lower case display names).
+                continue;
+            }
+            key.getChars(0, key.length(), chars, offsets[index]);
+            locales[index] = entry.getValue();
+            languageIds[index] = LanguageRegistry.register(entry.getValue());
+        }
+        this.size = count;
+        this.keys = count < mapping.size() ? Arrays.copyOf(chars, offsets[count]) : chars;
+        this.keyOffsets = Arrays.copyOf(offsets, count + 1);
+        this.hashes = Arrays.copyOf(keyHashes, count);
+        this.values = Arrays.copyOf(locales, count);
+        this.ids = Arrays.copyOf(languageIds, count);
+    }
+
+    /**
+     * Gets case sensitive.
+     *
+     * @return the case sensitive
+     */
+    boolean getCaseSensitive() { return caseSensitive; }
+
+    /**
+     * Lookup a key.
+     *
+     * @param input the input
+     * @param start the key start offset
+     * @param end the key end offset
+     * @return the locale or null if not found
+     */
+    Locale get(CharSequence input, int start, int end) {
+        int index = find(input, start, end);
+        return index >= 0 ? values[index] : null;
+    }
+
+    /**
+     * Lookup the language id of a key.
+     *
+     * @param input the input
+     * @param start the key start offset
+     * @param end the key end offset
+     * @return the language id or {@link LanguageRegistry#NO_LANGUAGE} if not found
+     */
+    int getId(CharSequence input, int start, int end) {
+        int index = find(input, start, end);
+        return index >= 0 ? ids[index] : LanguageRegistry.NO_LANGUAGE;
+    }
+
+    @Override
+    public Locale get(Object key) {
+        return key instanceof CharSequence ? get((CharSequence)key, 0, ((CharSequence)key).length()) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof CharSequence && find((CharSequence)key, 0, ((CharSequence)key).length()) >= 0;
+    }
+
+    @Override
+    public int size() { return size; }
+
+    @Override
+    public Set<Map.Entry<String, Locale>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Map.Entry<String, Locale>>() {
+                @Override
+                public Iterator<Map.Entry<String, Locale>> iterator() {
+                    return new Iterator<Map.Entry<String, Locale>>() {
+                        private int index;
+
+                        @Override
+                        public boolean hasNext() { return index < size; }
+
+                        @Override
+                        public Map.Entry<String, Locale> next() {
+                            if (index >= size) {
+                                throw new NoSuchElementException();
+                            }
+                            String key = new String(keys, keyOffsets[index], keyOffsets[index + 1] - keyOffsets[index]);
+                            return new AbstractMap.SimpleImmutableEntry<String, Locale>(key, values[index++]);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() { return size; }
+            };
+        }
+        return entrySet;
+    }
+
+    private int find(CharSequence input, int start, int end) {
+        int hash = hash(input, start, end);
+        int slot = hash & mask;
+        for (int index = slots[slot] - 1; index >= 0; index = slots[slot] - 1) {
+            if (hashes[index] == hash && regionEquals(keys, keyOffsets[index], keyOffsets[index + 1], input, start, end)) {
+                return index;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Same per character folding as String.CASE_INSENSITIVE_ORDER, with an ASCII fast path.
+     */
+    private static char fold(char c) {
+        if (c < 128) {
+            return c >= 'A' && c <= 'Z' ? (char)(c + ('a' - 'A')) : c;
+        }
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    private static boolean isFolded(CharSequence key) {
+        for (int i = 0; i < key.length(); i++) {
+            if (fold(key.charAt(i)) != key.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isFolded(char[] chars, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (fold(chars[i]) != chars[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int hash(CharSequence s, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + (caseSensitive ? s.charAt(i) : fold(s.charAt(i)));
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private boolean regionEquals(char[] chars, int keyStart, int keyEnd, CharSequence input, int start, int end) {
+        if (keyEnd - keyStart != end - start) {
+            return false;
+        }
+        for (int i = keyStart, j = start; i < keyEnd; i++, j++) {
+            char a = chars[i];
+            char b = input.charAt(j);
+            if (a != b && (caseSensitive || fold(a) != fold(b))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
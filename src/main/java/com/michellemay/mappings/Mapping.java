@@ -16,9 +16,11 @@
 
 package com.michellemay.mappings;
 
+import java.util.Collections;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  * Base Mapping class.
@@ -29,6 +31,11 @@ public class Mapping {
     private String name;
     private Map<String, Locale> mapping;
     private boolean caseSensitive;
+    private boolean frozen;
+    // Built on first lookup.
+    private volatile LookupTable table;
+    // Built on first lookup with the other case sensitiveness, by custom mappings extending this one.
+    private volatile LookupTable foreignTable;
 
     /**
      * Gets name.
@@ -50,7 +57,7 @@ public class Mapping {
      * @param mapping the mapping
      * @return the mapping
      */
-    public Mapping withMapping(Map<String, Locale> mapping) { this.mapping = mapping; return this; }
+    public Mapping withMapping(Map<String, Locale> mapping) { checkNotFrozen(); this.mapping = mapping; this.table = null; this.foreignTable = null; return this; }
 
     /**
      * Gets case sensitive.
@@ -65,7 +72,26 @@ public class Mapping {
      * @param caseSensitive the case sensitive
      * @return the mapping
      */
-    public Mapping withCaseSensitive(boolean caseSensitive) { this.caseSensitive = caseSensitive; return this; }
+    public Mapping withCaseSensitive(boolean caseSensitive) { checkNotFrozen(); this.caseSensitive = caseSensitive; this.table = null; this.foreignTable = null; return this; }
+
+    /**
+     * Make this mapping immutable, so it can be shared.
+     *
+     * @return the mapping
+     */
+    Mapping freeze() {
+        if (!(mapping instanceof LookupTable)) {
+            this.mapping = Collections.unmodifiableMap(mapping);
+        }
+        this.frozen = true;
+        return this;
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException("Mapping '" + name + "' is immutable!");
+        }
+    }
 
     /**
      * Instantiates a new Mapping.
@@ -83,7 +109,73 @@ public class Mapping {
      * @return the optional
      */
     public Optional<Locale> detect(String rawValue) {
-        String value = caseSensitive ? rawValue : rawValue.toLowerCase();
-        return Optional.ofNullable(mapping.get(value));
+        return Optional.ofNullable(lookup(rawValue, 0, rawValue.length()));
+    }
+
+    /**
+     * Lookup locale for a range of characters, without allocations.
+     * The lookup table is built from the mapping on first use, unless the mapping is one already.
+     *
+     * @param input the input
+     * @param start the value start offset
+     * @param end the value end offset
+     * @return the locale or null if not found
+     */
+    public Locale lookup(CharSequence input, int start, int end) {
+        return getTable().get(input, start, end);
+    }
+
+    /**
+     * Lookup language id for a range of characters, without allocations.
+     *
+     * @param input the input
+     * @param start the value start offset
+     * @param end the value end offset
+     * @return the language id or {@link LanguageRegistry#NO_LANGUAGE} if not found
+     * @see LanguageRegistry
+     */
+    public int lookupId(CharSequence input, int start, int end) {
+        return getTable().getId(input, start, end);
+    }
+
+    /**
+     * Lookup language id for a range of characters with the given case sensitiveness.
+     *
+     * @param input the input
+     * @param start the value start offset
+     * @param end the value end offset
+     * @param caseSensitive the case sensitiveness of the lookup
+     * @return the language id or {@link LanguageRegistry#NO_LANGUAGE} if not found
+     */
+    int lookupId(CharSequence input, int start, int end, boolean caseSensitive) {
+        if (caseSensitive == this.caseSensitive) {
+            return lookupId(input, start, end);
+        }
+        LookupTable lookupTable = foreignTable;
+        if (lookupTable == null) {
+            lookupTable = new LookupTable(getMapping(), caseSensitive);
+            foreignTable = lookupTable;
+        }
+        return lookupTable.getId(input, start, end);
+    }
+
+    /**
+     * Collect the languages this mapping can return.
+     *
+     * @param locales receives the languages
+     */
+    void collectLocales(Set<Locale> locales) {
+        locales.addAll(getMapping().values());
+    }
+
+    private LookupTable getTable() {
+        LookupTable lookupTable = table;
+        if (lookupTable == null) {
+            // Mappings already stored as lookup tables are probed directly.
+            boolean reusable = mapping instanceof LookupTable && ((LookupTable)mapping).getCaseSensitive() == caseSensitive;
+            lookupTable = reusable ? (LookupTable)mapping : new LookupTable(mapping, caseSensitive);
+            table = lookupTable;
+        }
+        return lookupTable;
     }
 }
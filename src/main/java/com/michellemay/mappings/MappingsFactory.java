@@ -16,25 +16,55 @@
 
 package com.michellemay.mappings;
 
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import org.apache.commons.lang3.LocaleUtils;
 import org.apache.commons.lang3.StringUtils;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Mappings factory.
  *
+ * <p>Built-in mappings are process-wide immutable singletons, built on first use: only when a custom
+ * mapping extends them or when a matcher or a profile references them.</p>
+ *
  * @author Michel Lemay
  */
 public class MappingsFactory {
+    private static final Map<String, Supplier<Mapping>> BUILT_IN_MAPPINGS = ImmutableMap.of(
+            ISO639Alpha2Mapping.NAME, Suppliers.memoize(() -> new ISO639Alpha2Mapping().freeze()),
+            ISO639Alpha3Mapping.NAME, Suppliers.memoize(() -> new ISO639Alpha3Mapping().freeze()),
+            LanguageTagsMapping.NAME, Suppliers.memoize(() -> new LanguageTagsMapping().freeze()),
+            EnglishNamesMapping.NAME, Suppliers.memoize(() -> new EnglishNamesMapping().freeze()));
+
     private HashMap<String, Mapping> mappings;
+    private Set<String> builtInNames;
+    // Built-in mappings resolved through this factory.
+    private Map<String, Mapping> usedBuiltIns = new ConcurrentHashMap<String, Mapping>();
+    private Map<String, Mapping> view;
 
     /**
-     * Gets mappings.
+     * Gets mappings. Built-in mappings are built on access: iterating over values builds them all.
      *
      * @return the mappings
      */
-    public Map<String, Mapping> getMappings() { return mappings; }
+    public Map<String, Mapping> getMappings() { return view; }
+
+    /**
+     * Gets mappings built so far: custom mappings and built-in mappings used through this factory.
+     *
+     * @return the materialized mappings
+     */
+    public Map<String, Mapping> getMaterializedMappings() {
+        HashMap<String, Mapping> materialized = new HashMap<String, Mapping>(usedBuiltIns);
+        materialized.putAll(mappings);
+        return materialized;
+    }
 
     /**
      * Instantiates a new Mappings factory.
@@ -42,9 +72,7 @@ public class MappingsFactory {
      * @param mappingsConfig the mappings config
      */
     public MappingsFactory(List<MappingConfig> mappingsConfig) {
-        mappings = new HashMap<String, Mapping>();
-
-        addDefaultMappings();
+        this(BUILT_IN_MAPPINGS.keySet());
 
         if (mappingsConfig != null) {
             for (MappingConfig mappingConfig : mappingsConfig) {
@@ -53,18 +81,39 @@ public class MappingsFactory {
         }
     }
 
+    private MappingsFactory(Set<String> builtInNames) {
+        this.mappings = new HashMap<String, Mapping>();
+        this.builtInNames = builtInNames;
+        this.view = Maps.asMap(Sets.union(builtInNames, mappings.keySet()), this::resolve);
+    }
+
+    /**
+     * Create a mappings factory over already built mappings (ex: loaded from a snapshot).
+     * Default mappings are not added.
+     *
+     * @param mappings the mappings
+     * @return the mappings factory
+     */
+    public static MappingsFactory of(Collection<Mapping> mappings) {
+        MappingsFactory factory = new MappingsFactory(Collections.<String>emptySet());
+        mappings.forEach(factory::addMapping);
+        return factory;
+    }
+
     private void addMapping(Mapping mapping) {
-        if (mappings.containsKey(mapping.getName())) {
+        if (view.containsKey(mapping.getName())) {
             throw new IllegalStateException("A mapping name '" + mapping.getName() + "' already exists!");
         }
         mappings.put(mapping.getName(), mapping);
     }
 
-    private void addDefaultMappings() {
-        addMapping(new ISO639Alpha2Mapping());
-        addMapping(new ISO639Alpha3Mapping());
-        addMapping(new LanguageTagsMapping());
-        addMapping(new EnglishNamesMapping());
+    private Mapping resolve(String name) {
+        Mapping mapping = mappings.get(name);
+        if (mapping == null && builtInNames.contains(name)) {
+            mapping = BUILT_IN_MAPPINGS.get(name).get();
+            usedBuiltIns.putIfAbsent(name, mapping);
+        }
+        return mapping;
     }
 
     private Mapping createCustomMapping(MappingConfig mappingConfig) {
@@ -72,35 +121,41 @@ public class MappingsFactory {
             throw new IllegalArgumentException("Blank mapping name!");
         }
 
-        Map<String, Locale> curMap = new TreeMap<String, Locale>(mappingConfig.casesensitive ? null : String.CASE_INSENSITIVE_ORDER);
+        boolean caseSensitive = mappingConfig.casesensitive;
+        CustomMapping customMapping = new CustomMapping(mappingConfig.name.trim()).withCaseSensitive(caseSensitive);
 
-        // Inherit all mappings from bases
+        // Inherit all mappings from bases, shared as is: the first base holding a value decides.
+        List<Mapping> bases = new ArrayList<Mapping>();
         if (mappingConfig.extend != null) {
             for (String baseMappingName : mappingConfig.extend) {
-                if (StringUtils.isBlank(baseMappingName) || !mappings.containsKey(baseMappingName)) {
+                if (StringUtils.isBlank(baseMappingName) || !view.containsKey(baseMappingName)) {
                     throw new IllegalStateException("Base mapping name '" + baseMappingName + "' does not exists!");
                 }
-                Mapping baseMapping = mappings.get(baseMappingName);
-                baseMapping.getMapping().forEach(curMap::putIfAbsent);
+                bases.add(view.get(baseMappingName));
             }
         }
+        Set<Locale> baseLocales = new LinkedHashSet<Locale>();
+        bases.forEach((base) -> base.collectLocales(baseLocales));
 
-        // Filter out unwanted languages
+        // Filter out unwanted languages, by id
+        BitSet excluded = new BitSet();
         if (StringUtils.isNotBlank(mappingConfig.filter)) {
             List<Locale.LanguageRange> priorityList = Locale.LanguageRange.parse(mappingConfig.filter);
-            List<Locale> toKeep = Locale.filter(priorityList, curMap.values());
-            curMap.entrySet().removeIf(e -> !toKeep.contains(e.getValue()));
+            Set<Locale> toKeep = new HashSet<Locale>(Locale.filter(priorityList, baseLocales));
+            baseLocales.stream().filter((locale) -> !toKeep.contains(locale)).forEach((locale) -> excluded.set(LanguageRegistry.register(locale)));
         }
 
-        // Add new values
+        // Add new values, unless already mapped
+        Map<String, Locale> overlay = new TreeMap<String, Locale>(caseSensitive ? null : String.CASE_INSENSITIVE_ORDER);
         if (mappingConfig.add != null) {
             mappingConfig.add.forEach((lang, values) -> {
                 Locale langLocale = LocaleUtils.toLocale(lang);
                 String[] displayValues = values.split(",");
                 for (String value : displayValues) {
                     String cleanedValue = value.trim();
-                    if (!cleanedValue.isEmpty()) {
-                        curMap.putIfAbsent(cleanedValue, langLocale);
+                    if (!cleanedValue.isEmpty() && !overlay.containsKey(cleanedValue)
+                            && CustomMapping.lookupBases(bases, excluded, cleanedValue, 0, cleanedValue.length(), caseSensitive) == LanguageRegistry.NO_LANGUAGE) {
+                        overlay.put(cleanedValue, langLocale);
                     }
                 }
             });
@@ -113,19 +168,21 @@ public class MappingsFactory {
 
                 // Remove all existing mappings
                 String langTag = langLocale.toLanguageTag();
-                curMap.entrySet().removeIf(e -> e.getValue().toLanguageTag().equals(langTag));
+                excluded.set(LanguageRegistry.register(langLocale));
+                baseLocales.stream().filter((locale) -> locale.toLanguageTag().equals(langTag)).forEach((locale) -> excluded.set(LanguageRegistry.register(locale)));
+                overlay.values().removeIf((locale) -> locale.toLanguageTag().equals(langTag));
 
                 // Add new mappings.
                 String[] displayValues = values.split(",");
                 for (String value : displayValues) {
                     String cleanedValue = value.trim();
                     if (!cleanedValue.isEmpty()) {
-                        curMap.put(cleanedValue, langLocale);
+                        overlay.put(cleanedValue, langLocale);
                     }
                 }
             });
         }
 
-        return new CustomMapping(mappingConfig.name.trim()).withCaseSensitive(mappingConfig.casesensitive).withMapping(curMap);
+        return customMapping.withOverlay(bases, overlay, excluded);
     }
 }
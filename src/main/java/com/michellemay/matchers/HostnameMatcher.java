@@ -16,10 +16,7 @@
 
 package com.michellemay.matchers;
 
-import com.google.common.collect.ImmutableList;
-
-import java.net.URL;
-import java.util.List;
+import com.michellemay.url.URLTokenizer;
 
 /**
  * Hostname matcher.
@@ -38,8 +35,8 @@ public class HostnameMatcher extends Matcher {
     }
 
     @Override
-    protected List<String> getParts(URL url) {
-        return ImmutableList.of(url.getHost());
+    protected void getParts(URLTokenizer url, PartList parts) {
+        parts.add(url.getHostStart(), url.getHostEnd());
     }
 
     @Override
@@ -0,0 +1,323 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.matchers;
+
+import com.google.common.collect.ImmutableList;
+import com.michellemay.regex.RegexBudget;
+import com.michellemay.regex.RequiredLiteral;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Extracts the language candidate from an url part.
+ *
+ * <p>Either a regex with a 'lang' capturing group or a hand-written, regex free, extraction.
+ * Spans are returned packed in a long to avoid allocations: see {@link #span(int, int)}.</p>
+ *
+ * @author Michel Lemay
+ */
+public abstract class LangExtractor {
+    /**
+     * Returned by {@link #extract(CharSequence, int, int)} when the part does not match.
+     */
+    public static final long NO_MATCH = -1L;
+
+    static final String LANG_GROUP_NAME = "lang";
+
+    /**
+     * Extract language candidate span.
+     *
+     * @param input the input
+     * @param start the part start offset
+     * @param end the part end offset
+     * @return the packed span of the language candidate or {@link #NO_MATCH}
+     */
+    public abstract long extract(CharSequence input, int start, int end);
+
+    /**
+     * Gets the regex of plain regex extractors.
+     *
+     * @return the pattern or null for regex free extractors
+     */
+    Pattern getPattern() { return null; }
+
+    /**
+     * Gets the ASCII folded prefixes a part must start with to match, one of them at least.
+     *
+     * @return the prefixes or null if any part can match
+     */
+    List<String> getRequiredPrefixes() { return null; }
+
+    /**
+     * Pack a span in a long.
+     *
+     * @param start the start offset
+     * @param end the end offset
+     * @return the packed span
+     */
+    public static long span(int start, int end) { return ((long)start << 32) | (end & 0xFFFFFFFFL); }
+
+    /**
+     * Gets start offset of a packed span.
+     *
+     * @param span the packed span
+     * @return the start offset
+     */
+    public static int spanStart(long span) { return (int)(span >>> 32); }
+
+    /**
+     * Gets end offset of a packed span.
+     *
+     * @param span the packed span
+     * @return the end offset
+     */
+    public static int spanEnd(long span) { return (int)span; }
+
+    /**
+     * Regex extractor. The whole part must match and the language is captured by the 'lang' group.
+     *
+     * @param pattern the pattern
+     * @return the lang extractor
+     */
+    public static LangExtractor regex(Pattern pattern) { return new RegexExtractor(pattern); }
+
+    /**
+     * Hostname label extractor. Same as '(?&lt;lang&gt;[^\.]+)(\.[^\.]+){2,}' for label 0 and 3 min labels.
+     *
+     * @param label the label index (0 based, from the left)
+     * @param minLabels the minimum number of labels in hostname
+     * @return the lang extractor
+     */
+    public static LangExtractor hostLabel(int label, int minLabels) { return new HostLabelExtractor(label, minLabels); }
+
+    /**
+     * Path segment extractor. Same as '/(?&lt;lang&gt;[^/]+)(/.*)?' for segment 0.
+     *
+     * @param segment the segment index (0 based)
+     * @return the lang extractor
+     */
+    public static LangExtractor pathSegment(int segment) { return new PathSegmentExtractor(segment); }
+
+    /**
+     * Query parameter extractor. Same as 'lang(uage)?=(?&lt;lang&gt;.*)' for names 'lang' and 'language'.
+     *
+     * @param names the parameter names
+     * @param caseSensitive the parameter names case sensitiveness
+     * @return the lang extractor
+     */
+    public static LangExtractor queryParameters(Collection<String> names, boolean caseSensitive) {
+        return new QueryParametersExtractor(names, caseSensitive);
+    }
+
+    /**
+     * Whole part extractor, for parts already selected (ex: path segments). Same as '(?&lt;lang&gt;.+)'.
+     *
+     * @return the lang extractor
+     */
+    public static LangExtractor whole() { return WHOLE; }
+
+    private static final LangExtractor WHOLE = new LangExtractor() {
+        @Override
+        public long extract(CharSequence input, int start, int end) {
+            return start < end && !containsLineTerminator(input, start, end) ? span(start, end) : NO_MATCH;
+        }
+
+        @Override
+        public String toString() { return "whole"; }
+    };
+
+    /**
+     * Same characters as '.' without DOTALL flag.
+     */
+    static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    static boolean containsLineTerminator(CharSequence input, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (isLineTerminator(input.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class RegexExtractor extends LangExtractor {
+        private final Pattern pattern;
+        private final List<String> prefixes;
+
+        RegexExtractor(Pattern pattern) {
+            this.pattern = pattern;
+            String prefix = RequiredLiteral.prefixOf(pattern);
+            this.prefixes = prefix != null ? ImmutableList.of(prefix) : null;
+        }
+
+        @Override
+        public long extract(CharSequence input, int start, int end) {
+            RegexBudget budget = RegexBudget.get();
+            java.util.regex.Matcher regexMatcher = pattern.matcher(budget.wrap(input)).region(start, end);
+            if (budget.matches(regexMatcher) && regexMatcher.start(LANG_GROUP_NAME) >= 0) {
+                return span(regexMatcher.start(LANG_GROUP_NAME), regexMatcher.end(LANG_GROUP_NAME));
+            }
+            return NO_MATCH;
+        }
+
+        @Override
+        Pattern getPattern() { return pattern; }
+
+        @Override
+        List<String> getRequiredPrefixes() { return prefixes; }
+
+        @Override
+        public String toString() { return "regex:" + pattern.pattern(); }
+    }
+
+    private static final class HostLabelExtractor extends LangExtractor {
+        private final int label;
+        private final int minLabels;
+
+        HostLabelExtractor(int label, int minLabels) {
+            this.label = label;
+            this.minLabels = minLabels;
+        }
+
+        @Override
+        public long extract(CharSequence input, int start, int end) {
+            int labels = 0;
+            int labelStart = start;
+            long result = NO_MATCH;
+            for (int i = start; i <= end; i++) {
+                if (i == end || input.charAt(i) == '.') {
+                    if (i == labelStart) {
+                        // Empty labels are not valid
+                        return NO_MATCH;
+                    }
+                    if (labels++ == label) {
+                        result = span(labelStart, i);
+                    }
+                    labelStart = i + 1;
+                }
+            }
+            return labels >= minLabels ? result : NO_MATCH;
+        }
+
+        @Override
+        public String toString() { return "label:" + label + ",minlabels:" + minLabels; }
+    }
+
+    private static final class PathSegmentExtractor extends LangExtractor {
+        private final int segment;
+
+        PathSegmentExtractor(int segment) {
+            this.segment = segment;
+        }
+
+        @Override
+        public long extract(CharSequence input, int start, int end) {
+            int segmentStart = start;
+            for (int n = 0; n <= segment; n++) {
+                if (segmentStart >= end || input.charAt(segmentStart) != '/') {
+                    return NO_MATCH;
+                }
+                int segmentEnd = ++segmentStart;
+                while (segmentEnd < end && input.charAt(segmentEnd) != '/') {
+                    segmentEnd++;
+                }
+                if (segmentEnd == segmentStart) {
+                    // Empty segments are not valid, same as SegmentSelector.isIndexed
+                    return NO_MATCH;
+                }
+                if (n == segment) {
+                    return containsLineTerminator(input, segmentEnd, end) ? NO_MATCH : span(segmentStart, segmentEnd);
+                }
+                segmentStart = segmentEnd;
+            }
+            return NO_MATCH;
+        }
+
+        @Override
+        public String toString() { return "segment:" + segment; }
+    }
+
+    private static final class QueryParametersExtractor extends LangExtractor {
+        private final List<String> names;
+        private final boolean caseSensitive;
+
+        QueryParametersExtractor(Collection<String> names, boolean caseSensitive) {
+            this.names = ImmutableList.copyOf(names);
+            this.caseSensitive = caseSensitive;
+            for (String name : names) {
+                if (name.indexOf('=') >= 0) {
+                    throw new IllegalArgumentException("Invalid parameter name '" + name + "'!");
+                }
+            }
+        }
+
+        @Override
+        public long extract(CharSequence input, int start, int end) {
+            int eq = start;
+            while (eq < end && input.charAt(eq) != '=') {
+                eq++;
+            }
+            if (eq == end || !isParameterName(input, start, eq) || containsLineTerminator(input, eq + 1, end)) {
+                return NO_MATCH;
+            }
+            return span(eq + 1, end);
+        }
+
+        private boolean isParameterName(CharSequence input, int start, int end) {
+            for (String name : names) {
+                if (name.length() == end - start && regionMatches(name, input, start)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean regionMatches(String name, CharSequence input, int start) {
+            for (int i = 0; i < name.length(); i++) {
+                char a = name.charAt(i);
+                char b = input.charAt(start + i);
+                if (a != b && (caseSensitive || foldAscii(a) != foldAscii(b))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static char foldAscii(char c) {
+            return c >= 'A' && c <= 'Z' ? (char)(c + ('a' - 'A')) : c;
+        }
+
+        @Override
+        List<String> getRequiredPrefixes() {
+            return names.stream().map((name) -> {
+                StringBuilder prefix = new StringBuilder(name.length() + 1);
+                for (int i = 0; i < name.length(); i++) {
+                    prefix.append(foldAscii(name.charAt(i)));
+                }
+                return prefix.append('=').toString();
+            }).collect(Collectors.toList());
+        }
+
+        @Override
+        public String toString() { return "parameters:" + names; }
+    }
+}
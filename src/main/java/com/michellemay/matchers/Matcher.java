@@ -16,20 +16,28 @@
 
 package com.michellemay.matchers;
 
+import com.michellemay.mappings.LanguageRegistry;
 import com.michellemay.mappings.Mapping;
+import com.michellemay.regex.AhoCorasick;
+import com.michellemay.regex.MultiPattern;
+import com.michellemay.regex.RequiredLiteral;
+import com.michellemay.url.URLTokenizer;
 
-import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 /**
  * Base class for all matchers.
  * @author Michel Lemay
  */
 public abstract class Matcher {
-    private static String LANG_GROUP_NAME = "lang";
+    private static final ThreadLocal<Scratch> SCRATCHES = ThreadLocal.withInitial(Scratch::new);
 
     /**
      * The enum Url part.
@@ -52,6 +60,14 @@ public abstract class Matcher {
     private String name;
     private Matcher.UrlPart urlPart;
     private List<Pattern> patterns;
+    private List<LangExtractor> extractors;
+    // Regex extractors compiled in a single automaton, and their index in it (-1 when matched individually).
+    private MultiPattern automaton;
+    private int[] automatonSlots;
+    // Literal required by each regex extractor (null when none), used by profiles to skip extractors.
+    private String[] requiredLiterals;
+    // Extractors each part can satisfy given its first characters (null when all parts are candidates).
+    private PrefixIndex prefixIndex;
     private Optional<Mapping> mapping;
     private boolean caseSensitive;
     private boolean patternOrder;
@@ -78,12 +94,82 @@ public abstract class Matcher {
     public List<Pattern> getPatterns() { return patterns; }
 
     /**
-     * With patterns.
+     * With patterns. Also resets extractors to plain regex extractors.
      *
      * @param patterns the patterns
      * @return the matcher
      */
-    public Matcher withPatterns(List<Pattern> patterns) { this.patterns = patterns; return this; }
+    public Matcher withPatterns(List<Pattern> patterns) {
+        return withPatterns(patterns, patterns.stream().map(LangExtractor::regex).collect(Collectors.toList()));
+    }
+
+    /**
+     * With patterns and the extractors replacing them, compiled once.
+     *
+     * @param patterns the patterns
+     * @param extractors the extractors
+     * @return the matcher
+     */
+    public Matcher withPatterns(List<Pattern> patterns, List<LangExtractor> extractors) {
+        this.patterns = patterns;
+        return withExtractors(extractors);
+    }
+
+    /**
+     * Gets extractors. Either specialized or regex extractors for each pattern, or a regex free extractor.
+     *
+     * @return the extractors
+     */
+    public List<LangExtractor> getExtractors() { return extractors; }
+
+    /**
+     * With extractors. Regex extractors are compiled in a single automaton whenever possible.
+     *
+     * @param extractors the extractors
+     * @return the matcher
+     */
+    public Matcher withExtractors(List<LangExtractor> extractors) {
+        this.extractors = extractors;
+        this.automaton = null;
+        this.automatonSlots = new int[extractors.size()];
+        Arrays.fill(automatonSlots, -1);
+
+        this.requiredLiterals = new String[extractors.size()];
+        this.prefixIndex = PrefixIndex.build(extractors);
+
+        List<Pattern> regexes = new ArrayList<Pattern>();
+        List<Integer> regexExtractors = new ArrayList<Integer>();
+        for (int i = 0; i < extractors.size(); i++) {
+            if (extractors.get(i).getPattern() != null) {
+                requiredLiterals[i] = RequiredLiteral.of(extractors.get(i).getPattern());
+                regexes.add(extractors.get(i).getPattern());
+                regexExtractors.add(i);
+            }
+        }
+        MultiPattern compiled = MultiPattern.compile(regexes, LangExtractor.LANG_GROUP_NAME);
+        int supported = 0;
+        for (int i = 0; i < regexes.size(); i++) {
+            if (compiled.isSupported(i)) {
+                automatonSlots[regexExtractors.get(i)] = i;
+                supported++;
+            }
+        }
+        if (supported < 2) {
+            // Not worth it: java.util.regex is faster for a single pattern.
+            Arrays.fill(automatonSlots, -1);
+        } else {
+            this.automaton = compiled;
+        }
+        return this;
+    }
+
+    /**
+     * Gets the literal that must occur in a part for an extractor to match.
+     *
+     * @param extractorIdx the extractor index
+     * @return the ASCII folded literal or null if the extractor must always run
+     */
+    public String getRequiredLiteral(int extractorIdx) { return requiredLiterals[extractorIdx]; }
 
     /**
      * Gets mapping.
@@ -144,50 +230,155 @@ public abstract class Matcher {
     /**
      * Analyze URL and detect language..
      *
-     * @param url the url
+     * @param url the tokenized url
      * @return the optional
      */
-    public Optional<Locale> detect(URL url) {
-        Optional<Locale> lang = Optional.empty();
-
-        search: {
-            List<String> parts = getParts(url);
-            if (patternOrder) {
-                for (Pattern p : getPatterns()) {
-                    for (String part : parts) {
-                        java.util.regex.Matcher regexMatcher = p.matcher(part);
-                        if (regexMatcher.matches()) {
-                            lang = mapping.get().detect(regexMatcher.group(LANG_GROUP_NAME));
-                            if (lang.isPresent()) {
-                                break search;
-                            }
-                        }
+    public Optional<Locale> detect(URLTokenizer url) {
+        return detect(url, null);
+    }
+
+    /**
+     * Analyze URL and detect language, counting language candidates unknown to the mapping.
+     *
+     * @param url the tokenized url
+     * @param mappingMisses incremented for each candidate not found in mapping, may be null
+     * @return the optional
+     */
+    public Optional<Locale> detect(URLTokenizer url, LongAdder mappingMisses) {
+        return Optional.ofNullable(LanguageRegistry.getLocale(detectId(url, mappingMisses)));
+    }
+
+    /**
+     * Analyze URL and detect language id, without allocations.
+     *
+     * @param url the tokenized url
+     * @param mappingMisses incremented for each candidate not found in mapping, may be null
+     * @return the language id or {@link LanguageRegistry#NO_LANGUAGE}
+     */
+    public int detectId(URLTokenizer url, LongAdder mappingMisses) {
+        return detectId(url, mappingMisses, null, null);
+    }
+
+    /**
+     * Analyze URL and detect language id, skipping extractors whose required literal is absent from the url.
+     *
+     * @param url the tokenized url
+     * @param mappingMisses incremented for each candidate not found in mapping, may be null
+     * @param foundLiterals the literals found in the url (see {@link AhoCorasick}), null to run all extractors
+     * @param literalIds the id of each extractor required literal, negative when none
+     * @return the language id or {@link LanguageRegistry#NO_LANGUAGE}
+     */
+    public int detectId(URLTokenizer url, LongAdder mappingMisses, long[] foundLiterals, int[] literalIds) {
+        if (foundLiterals != null) {
+            boolean skipAll = true;
+            for (int e = 0; e < extractors.size() && skipAll; e++) {
+                skipAll = skip(e, foundLiterals, literalIds);
+            }
+            if (skipAll) {
+                return LanguageRegistry.NO_LANGUAGE;
+            }
+        }
+
+        Scratch scratch = SCRATCHES.get();
+        PartList parts = scratch.parts;
+        parts.clear();
+        getParts(url, parts);
+        CharSequence input = url.getInput();
+        scratch.prepare(parts.size(), automaton != null ? automaton.size() : 0);
+        long[] candidates = scratch.candidates;
+        for (int p = 0; p < parts.size(); p++) {
+            candidates[p] = prefixIndex != null ? prefixIndex.candidates(input, parts.start(p), parts.end(p)) : -1L;
+        }
+
+        if (patternOrder) {
+            for (int e = 0; e < extractors.size(); e++) {
+                if (foundLiterals != null && skip(e, foundLiterals, literalIds)) {
+                    continue;
+                }
+                for (int p = 0; p < parts.size(); p++) {
+                    if ((candidates[p] & (1L << e)) == 0) {
+                        continue;
+                    }
+                    int id = detectId(e, input, scratch, p, mappingMisses);
+                    if (id != LanguageRegistry.NO_LANGUAGE) {
+                        return id;
                     }
                 }
-            } else {
-                for (String part : parts) {
-                    for (Pattern p : getPatterns()) {
-                        java.util.regex.Matcher regexMatcher = p.matcher(part);
-                        if (regexMatcher.matches()) {
-                            lang = mapping.get().detect(regexMatcher.group(LANG_GROUP_NAME));
-                            if (lang.isPresent()) {
-                                break search;
-                            }
-                        }
+            }
+        } else {
+            for (int p = 0; p < parts.size(); p++) {
+                for (int e = 0; e < extractors.size(); e++) {
+                    if ((foundLiterals != null && skip(e, foundLiterals, literalIds)) || (candidates[p] & (1L << e)) == 0) {
+                        continue;
+                    }
+                    int id = detectId(e, input, scratch, p, mappingMisses);
+                    if (id != LanguageRegistry.NO_LANGUAGE) {
+                        return id;
                     }
                 }
             }
         }
-        return lang;
+        return LanguageRegistry.NO_LANGUAGE;
+    }
+
+    private static boolean skip(int extractorIdx, long[] foundLiterals, int[] literalIds) {
+        return literalIds[extractorIdx] >= 0 && !AhoCorasick.isFound(foundLiterals, literalIds[extractorIdx]);
+    }
+
+    private int detectId(int extractorIdx, CharSequence input, Scratch scratch, int partIdx, LongAdder mappingMisses) {
+        int start = scratch.parts.start(partIdx);
+        int end = scratch.parts.end(partIdx);
+        long span;
+        int slot = automatonSlots[extractorIdx];
+        if (slot >= 0) {
+            // Automaton results, computed once per part on first use.
+            int offset = partIdx * automaton.size();
+            if (!scratch.matched[partIdx]) {
+                automaton.match(input, start, end, scratch.spans, offset);
+                scratch.matched[partIdx] = true;
+            }
+            span = scratch.spans[offset + slot];
+        } else {
+            span = extractors.get(extractorIdx).extract(input, start, end);
+        }
+        if (span == LangExtractor.NO_MATCH) {
+            return LanguageRegistry.NO_LANGUAGE;
+        }
+        int id = mapping.get().lookupId(input, LangExtractor.spanStart(span), LangExtractor.spanEnd(span));
+        if (id == LanguageRegistry.NO_LANGUAGE && mappingMisses != null) {
+            mappingMisses.increment();
+        }
+        return id;
     }
 
     /**
-     * Gets parts.
+     * Gets parts, as offsets in the tokenized url input.
      *
-     * @param url the url
-     * @return the parts
+     * @param url the tokenized url
+     * @param parts receives the parts
      */
-    protected abstract List<String> getParts(URL url);
+    protected abstract void getParts(URLTokenizer url, PartList parts);
+
+    /**
+     * Per thread detection buffers, shared by all matchers.
+     */
+    private static final class Scratch {
+        final PartList parts = new PartList();
+        long[] candidates = new long[16];
+        long[] spans = new long[16];
+        boolean[] matched = new boolean[16];
+
+        void prepare(int partCount, int automatonSize) {
+            if (candidates.length < partCount) {
+                candidates = new long[Math.max(partCount, candidates.length * 2)];
+                matched = new boolean[candidates.length];
+            }
+            Arrays.fill(matched, 0, partCount, false);
+            if (spans.length < partCount * automatonSize) {
+                spans = new long[Math.max(partCount * automatonSize, spans.length * 2)];
+            }
+        }
+    }
 
     /**
      * Shallow copy with mapping.
@@ -197,8 +388,15 @@ public abstract class Matcher {
      * @return the matcher
      */
     public Matcher shallowCopyWithMapping(Optional<Mapping> newMapping) {
-        return this.cloneInstance()
-                .withPatterns(this.patterns)
+        // Compiled extractors are immutable: share them instead of compiling them again.
+        Matcher copy = this.cloneInstance();
+        copy.patterns = this.patterns;
+        copy.extractors = this.extractors;
+        copy.automaton = this.automaton;
+        copy.automatonSlots = this.automatonSlots;
+        copy.requiredLiterals = this.requiredLiterals;
+        copy.prefixIndex = this.prefixIndex;
+        return copy
                 .withCaseSensitive(this.caseSensitive)
                 .withPatternOrder(this.patternOrder)
                 .withMapping(newMapping);
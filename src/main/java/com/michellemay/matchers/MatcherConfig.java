@@ -48,5 +48,31 @@ public class MatcherConfig {
      * Pattern order
      */
     public boolean patternorder = true;
+    /**
+     * Hostname label to extract (0 based), instead of patterns.
+     */
+    public Integer label;
+    /**
+     * Minimum number of hostname labels when extracting a label (default = label + 1).
+     */
+    public Integer minlabels;
+    /**
+     * Path segment to extract (0 based), instead of patterns. With patterns, they are applied to this segment only.
+     */
+    public Integer segment;
+    /**
+     * Number of leading path segments to extract, each one a language candidate. With patterns, they are
+     * applied to each of these segments.
+     */
+    public Integer segments;
+    /**
+     * Path segment after which to extract the next segment. ex: 'docs' selects 'en' in /site/docs/en/...
+     * With patterns, they are applied to the selected segment.
+     */
+    public String after;
+    /**
+     * Query string parameter names to extract values from, instead of patterns.
+     */
+    public List<String> parameters;
 
 }
@@ -19,6 +19,7 @@ package com.michellemay.matchers;
 import com.google.common.collect.Lists;
 import com.michellemay.mappings.Mapping;
 import com.michellemay.mappings.MappingsFactory;
+import com.michellemay.regex.RegexSafety;
 import org.apache.commons.lang3.StringUtils;
 
 import java.util.*;
@@ -30,6 +31,16 @@ import java.util.regex.Pattern;
  * @author Michel Lemay
  */
 public class MatchersFactory {
+    // Built-in shapes with hand-written extractors. ex: (?<lang>[^\.]+)(\.[^\.]+){2,}
+    private static final Pattern HOST_LABEL_SHAPE = Pattern.compile(
+            "\\(\\?<lang>\\[\\^\\\\?\\.\\]\\+\\)\\((?:\\?:)?\\\\\\.\\[\\^\\\\?\\.\\]\\+\\)(?:\\{(\\d+),\\}|(\\+)|(\\*))");
+    // ex: /(?<lang>[^/]+)(/.*)?
+    private static final Pattern PATH_SEGMENT_SHAPE = Pattern.compile(
+            "/\\(\\?<lang>\\[\\^/\\]\\+\\)\\((?:\\?:)?/\\.\\*\\)\\?");
+    // ex: lang(uage)?=(?<lang>.*)
+    private static final String QUERY_PARAMETER_SUFFIX = "=(?<lang>.*)";
+    private static final int MAX_PARAMETER_NAMES = 64;
+
     private MappingsFactory mappingsFactory;
     private HashMap<String, Matcher> matchers;
 
@@ -81,27 +92,197 @@ public class MatchersFactory {
             mapping = Optional.of(mappingsFactory.getMappings().get(matcherConfig.mapping));
         }
 
-        if (matcherConfig.patterns == null || matcherConfig.patterns.isEmpty()) {
+        boolean hasPatterns = matcherConfig.patterns != null && !matcherConfig.patterns.isEmpty();
+        Optional<LangExtractor> configExtractor = createConfigExtractor(matcherConfig, hasPatterns);
+        Optional<SegmentSelector> segmentSelector = createSegmentSelector(matcherConfig, hasPatterns);
+        if (!hasPatterns && !configExtractor.isPresent()) {
             throw new IllegalArgumentException("Matcher must have non-empty patterns list!");
         }
+        if (hasPatterns && configExtractor.isPresent()) {
+            throw new IllegalArgumentException("Matcher must have either patterns or an extractor (label or parameters), not both!");
+        }
 
         int flags = matcherConfig.casesensitive ? 0 : Pattern.CASE_INSENSITIVE;
         ArrayList<Pattern> patterns = Lists.newArrayList();
-        matcherConfig.patterns.forEach((patternStr) -> {
-            // Must contain a capturing group named 'lang'. ex: (?<lang>\w+)
-            if (!patternStr.contains("(?<lang>")) {
-                throw new IllegalArgumentException("Matcher pattern '" + patternStr + "' must have a capturing group named 'lang'!");
-            }
-            patterns.add(Pattern.compile(patternStr, flags));
-        });
+        ArrayList<LangExtractor> extractors = Lists.newArrayList();
+        if (hasPatterns) {
+            matcherConfig.patterns.forEach((patternStr) -> {
+                // Must contain a capturing group named 'lang'. ex: (?<lang>\w+)
+                if (!patternStr.contains("(?<lang>")) {
+                    throw new IllegalArgumentException("Matcher pattern '" + patternStr + "' must have a capturing group named 'lang'!");
+                }
+                Pattern pattern = Pattern.compile(patternStr, flags);
+                String unsafe = RegexSafety.check(pattern);
+                if (unsafe != null) {
+                    throw new IllegalArgumentException("Matcher pattern '" + patternStr + "' is unsafe: " + unsafe + "!");
+                }
+                patterns.add(pattern);
 
-        return createMatcher(matcherConfig.name, matcherConfig.urlpart)
-                .withPatterns(patterns)
+                // Swap in a hand-written extractor for well known shapes. Shapes describe whole parts, not segments.
+                Optional<LangExtractor> recognized = segmentSelector.isPresent()
+                        ? Optional.empty()
+                        : recognizeExtractor(patternStr, matcherConfig.urlpart, matcherConfig.casesensitive);
+                extractors.add(recognized.orElse(LangExtractor.regex(pattern)));
+            });
+        } else {
+            extractors.add(configExtractor.get());
+        }
+
+        Matcher matcher = createMatcher(matcherConfig.name, matcherConfig.urlpart);
+        if (segmentSelector.isPresent()) {
+            ((PathMatcher)matcher).withSegmentSelector(segmentSelector.get());
+        }
+        return matcher
+                .withPatterns(patterns, extractors)
                 .withCaseSensitive(matcherConfig.casesensitive)
                 .withMapping(mapping)
                 .withPatternOrder(matcherConfig.patternorder);
     }
 
+    private Optional<LangExtractor> createConfigExtractor(MatcherConfig matcherConfig, boolean hasPatterns) {
+        if (matcherConfig.minlabels != null && matcherConfig.label == null) {
+            throw new IllegalArgumentException("Matcher minlabels requires a label!");
+        }
+        int selectors = (matcherConfig.label != null ? 1 : 0) + (matcherConfig.segment != null ? 1 : 0) + (matcherConfig.parameters != null ? 1 : 0)
+                + (matcherConfig.segments != null ? 1 : 0) + (matcherConfig.after != null ? 1 : 0);
+        if (selectors > 1) {
+            throw new IllegalArgumentException("Matcher must have only one of label, segment, segments, after or parameters!");
+        }
+
+        if (matcherConfig.label != null) {
+            int minLabels = matcherConfig.minlabels != null ? matcherConfig.minlabels : matcherConfig.label + 1;
+            if (matcherConfig.urlpart != Matcher.UrlPart.hostname || matcherConfig.label < 0 || minLabels <= matcherConfig.label) {
+                throw new IllegalArgumentException("Invalid label extractor for matcher '" + matcherConfig.name + "'!");
+            }
+            return Optional.of(LangExtractor.hostLabel(matcherConfig.label, minLabels));
+        }
+        if (matcherConfig.segment != null || matcherConfig.segments != null || matcherConfig.after != null) {
+            if (matcherConfig.urlpart != Matcher.UrlPart.path
+                    || (matcherConfig.segment != null && matcherConfig.segment < 0)
+                    || (matcherConfig.segments != null && matcherConfig.segments < 1)
+                    || (matcherConfig.after != null && (StringUtils.isBlank(matcherConfig.after) || matcherConfig.after.contains("/")))) {
+                throw new IllegalArgumentException("Invalid segment extractor for matcher '" + matcherConfig.name + "'!");
+            }
+            if (hasPatterns) {
+                // Patterns are applied to selected segments.
+                return Optional.empty();
+            }
+            return Optional.of(matcherConfig.segment != null ? LangExtractor.pathSegment(matcherConfig.segment) : LangExtractor.whole());
+        }
+        if (matcherConfig.parameters != null) {
+            if (matcherConfig.urlpart != Matcher.UrlPart.querystring || matcherConfig.parameters.isEmpty()
+                    || matcherConfig.parameters.stream().anyMatch((name) -> StringUtils.isBlank(name) || name.contains("="))) {
+                throw new IllegalArgumentException("Invalid parameters extractor for matcher '" + matcherConfig.name + "'!");
+            }
+            return Optional.of(LangExtractor.queryParameters(matcherConfig.parameters, matcherConfig.casesensitive));
+        }
+        return Optional.empty();
+    }
+
+    private static Optional<SegmentSelector> createSegmentSelector(MatcherConfig matcherConfig, boolean hasPatterns) {
+        if (matcherConfig.segments != null) {
+            return Optional.of(SegmentSelector.first(matcherConfig.segments));
+        }
+        if (matcherConfig.after != null) {
+            return Optional.of(SegmentSelector.after(matcherConfig.after, matcherConfig.casesensitive));
+        }
+        if (matcherConfig.segment != null && hasPatterns) {
+            return Optional.of(SegmentSelector.index(matcherConfig.segment));
+        }
+        // A single segment without patterns has its own extractor.
+        return Optional.empty();
+    }
+
+    private static Optional<LangExtractor> recognizeExtractor(String patternStr, Matcher.UrlPart urlpart, boolean caseSensitive) {
+        switch (urlpart) {
+            case hostname:
+                java.util.regex.Matcher hostShape = HOST_LABEL_SHAPE.matcher(patternStr);
+                if (hostShape.matches()) {
+                    int minRepeat = hostShape.group(1) != null ? Integer.parseInt(hostShape.group(1)) : (hostShape.group(2) != null ? 1 : 0);
+                    return Optional.of(LangExtractor.hostLabel(0, minRepeat + 1));
+                }
+                break;
+            case path:
+                if (PATH_SEGMENT_SHAPE.matcher(patternStr).matches()) {
+                    return Optional.of(LangExtractor.pathSegment(0));
+                }
+                break;
+            case querystring:
+                if (patternStr.endsWith(QUERY_PARAMETER_SUFFIX)) {
+                    List<String> names = expandParameterNames(patternStr.substring(0, patternStr.length() - QUERY_PARAMETER_SUFFIX.length()));
+                    if (names != null) {
+                        return Optional.of(LangExtractor.queryParameters(names, caseSensitive));
+                    }
+                }
+                break;
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Expand a parameter name regex made of literals and optional literal groups. ex: (cv_)?lang(uage)?
+     *
+     * @return the list of names or null if the regex is not made of such simple constructs
+     */
+    private static List<String> expandParameterNames(String regex) {
+        List<String> names = Lists.newArrayList("");
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '(') {
+                int groupStart = regex.startsWith("?:", i + 1) ? i + 3 : i + 1;
+                int groupEnd = regex.indexOf(')', groupStart);
+                if (groupEnd < 0 || !regex.startsWith(")?", groupEnd)
+                        || (groupEnd + 2 < regex.length() && "?+*{".indexOf(regex.charAt(groupEnd + 2)) >= 0)) {
+                    return null;
+                }
+                String optional = expandLiteral(regex.substring(groupStart, groupEnd));
+                if (optional == null) {
+                    return null;
+                }
+                List<String> expanded = Lists.newArrayList();
+                names.forEach((name) -> { expanded.add(name); expanded.add(name + optional); });
+                names = expanded;
+                if (names.size() > MAX_PARAMETER_NAMES) {
+                    return null;
+                }
+                i = groupEnd + 2;
+            } else {
+                int literalEnd = i;
+                while (literalEnd < regex.length() && regex.charAt(literalEnd) != '(') {
+                    literalEnd++;
+                }
+                String literal = expandLiteral(regex.substring(i, literalEnd));
+                if (literal == null) {
+                    return null;
+                }
+                names.replaceAll((name) -> name + literal);
+                i = literalEnd;
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Unescape a parameter name literal.
+     *
+     * @return the literal or null if it contains any special construct
+     */
+    private static String expandLiteral(String regex) {
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\' && i + 1 < regex.length() && !Character.isLetterOrDigit(regex.charAt(i + 1)) && regex.charAt(i + 1) != '=') {
+                literal.append(regex.charAt(++i));
+            } else if (Character.isLetterOrDigit(c) || c == '_' || c == '-') {
+                literal.append(c);
+            } else {
+                return null;
+            }
+        }
+        return literal.toString();
+    }
+
     private Matcher createMatcher(String name, Matcher.UrlPart urlpart) {
         Matcher matcher = null;
         switch (urlpart) {
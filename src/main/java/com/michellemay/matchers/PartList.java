@@ -0,0 +1,72 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.matchers;
+
+import java.util.Arrays;
+
+/**
+ * Reusable list of parts of an url, as (start, end) offsets in the tokenized input.
+ *
+ * @author Michel Lemay
+ */
+public final class PartList {
+    private int[] bounds = new int[16];
+    private int size;
+
+    /**
+     * Add a part.
+     *
+     * @param start the part start offset
+     * @param end the part end offset
+     */
+    public void add(int start, int end) {
+        if (2 * size + 2 > bounds.length) {
+            bounds = Arrays.copyOf(bounds, bounds.length * 2);
+        }
+        bounds[2 * size] = start;
+        bounds[2 * size + 1] = end;
+        size++;
+    }
+
+    /**
+     * Gets number of parts.
+     *
+     * @return the size
+     */
+    public int size() { return size; }
+
+    /**
+     * Gets start offset of a part.
+     *
+     * @param part the part index
+     * @return the start offset
+     */
+    public int start(int part) { return bounds[2 * part]; }
+
+    /**
+     * Gets end offset of a part.
+     *
+     * @param part the part index
+     * @return the end offset
+     */
+    public int end(int part) { return bounds[2 * part + 1]; }
+
+    /**
+     * Remove all parts.
+     */
+    public void clear() { size = 0; }
+}
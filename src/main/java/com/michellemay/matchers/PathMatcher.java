@@ -16,10 +16,7 @@
 
 package com.michellemay.matchers;
 
-import com.google.common.collect.ImmutableList;
-
-import java.net.URL;
-import java.util.List;
+import com.michellemay.url.URLTokenizer;
 
 /**
  * Path matcher.
@@ -27,6 +24,8 @@ import java.util.List;
  * @author Michel Lemay
  */
 public class PathMatcher extends Matcher {
+    private SegmentSelector segmentSelector;
+
     /**
      * Instantiates a new Path matcher.
      *
@@ -36,13 +35,32 @@ public class PathMatcher extends Matcher {
         super(name, UrlPart.hostname);
     }
 
+    /**
+     * Gets segment selector.
+     *
+     * @return the segment selector or null when matching the whole path
+     */
+    public SegmentSelector getSegmentSelector() { return segmentSelector; }
+
+    /**
+     * With segment selector. Extractors are then applied to each selected segment instead of the whole path.
+     *
+     * @param segmentSelector the segment selector, null to match the whole path
+     * @return the path matcher
+     */
+    public PathMatcher withSegmentSelector(SegmentSelector segmentSelector) { this.segmentSelector = segmentSelector; return this; }
+
     @Override
-    protected List<String> getParts(URL url) {
-        return url.getPath() != null ? ImmutableList.of(url.getPath()) : ImmutableList.of();
+    protected void getParts(URLTokenizer url, PartList parts) {
+        if (segmentSelector != null) {
+            segmentSelector.select(url, parts);
+        } else {
+            parts.add(url.getPathStart(), url.getPathEnd());
+        }
     }
 
     @Override
     protected Matcher cloneInstance() {
-        return new PathMatcher(this.getName());
+        return new PathMatcher(this.getName()).withSegmentSelector(this.segmentSelector);
     }
 }
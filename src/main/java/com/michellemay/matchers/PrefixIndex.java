@@ -0,0 +1,123 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.matchers;
+
+import com.michellemay.regex.RequiredLiteral;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Index of the prefixes extractors require, to find the extractors a part can satisfy from its first
+ * characters. For query strings, prefixes are parameter names: parameters of other names are never matched.
+ *
+ * <p>Prefixes are bucketed by their first ASCII folded character. Supports up to 64 extractors.</p>
+ *
+ * @author Michel Lemay
+ */
+final class PrefixIndex {
+    /**
+     * Maximum number of extractors.
+     */
+    static final int MAX_EXTRACTORS = 64;
+
+    // Extractors without required prefix.
+    private final long always;
+    // Per first character (ASCII folded, 128 for others): prefixes and their extractor.
+    private final String[][] prefixes = new String[129][];
+    private final int[][] extractors = new int[129][];
+
+    private PrefixIndex(List<LangExtractor> extractorList) {
+        long anyPart = 0;
+        List<List<String>> bucketPrefixes = new ArrayList<List<String>>();
+        List<List<Integer>> bucketExtractors = new ArrayList<List<Integer>>();
+        for (int b = 0; b < prefixes.length; b++) {
+            bucketPrefixes.add(new ArrayList<String>());
+            bucketExtractors.add(new ArrayList<Integer>());
+        }
+        for (int e = 0; e < extractorList.size(); e++) {
+            List<String> required = extractorList.get(e).getRequiredPrefixes();
+            if (required == null || required.isEmpty()) {
+                anyPart |= 1L << e;
+                continue;
+            }
+            for (String prefix : required) {
+                int bucket = bucket(prefix.charAt(0));
+                bucketPrefixes.get(bucket).add(prefix);
+                bucketExtractors.get(bucket).add(e);
+            }
+        }
+        this.always = anyPart;
+        for (int b = 0; b < prefixes.length; b++) {
+            prefixes[b] = bucketPrefixes.get(b).toArray(new String[0]);
+            extractors[b] = bucketExtractors.get(b).stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    /**
+     * Build an index.
+     *
+     * @param extractors the extractors
+     * @return the index or null if it would not skip any extractor (or there are too many extractors)
+     */
+    static PrefixIndex build(List<LangExtractor> extractors) {
+        if (extractors.size() > MAX_EXTRACTORS || extractors.stream().allMatch((e) -> e.getRequiredPrefixes() == null)) {
+            return null;
+        }
+        return new PrefixIndex(extractors);
+    }
+
+    private static int bucket(char c) {
+        char folded = RequiredLiteral.fold(c);
+        return folded < 128 ? folded : 128;
+    }
+
+    /**
+     * Find the extractors a part can satisfy.
+     *
+     * @param input the input
+     * @param start the part start offset
+     * @param end the part end offset
+     * @return the candidate extractors, as a bit mask
+     */
+    long candidates(CharSequence input, int start, int end) {
+        if (start == end) {
+            return always;
+        }
+        long candidates = always;
+        int bucket = bucket(input.charAt(start));
+        String[] bucketPrefixes = prefixes[bucket];
+        for (int i = 0; i < bucketPrefixes.length; i++) {
+            if (startsWith(input, start, end, bucketPrefixes[i])) {
+                candidates |= 1L << extractors[bucket][i];
+            }
+        }
+        return candidates;
+    }
+
+    private static boolean startsWith(CharSequence input, int start, int end, String prefix) {
+        if (end - start < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (RequiredLiteral.fold(input.charAt(start + i)) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
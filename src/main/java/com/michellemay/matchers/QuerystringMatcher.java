@@ -16,10 +16,7 @@
 
 package com.michellemay.matchers;
 
-import com.google.common.collect.ImmutableList;
-
-import java.net.URL;
-import java.util.List;
+import com.michellemay.url.URLTokenizer;
 
 /**
  * The type Querystring matcher.
@@ -35,13 +32,13 @@ public class QuerystringMatcher extends Matcher {
         super(name, UrlPart.hostname);
     }
 
+    /**
+     * Parts are the 'name=value' query parameters, split once per url and shared by all querystring matchers.
+     */
     @Override
-    protected List<String> getParts(URL url) {
-        String queryPart = url.getQuery();
-        if (queryPart != null) {
-            return ImmutableList.copyOf(queryPart.split("&"));
-        } else {
-            return ImmutableList.of();
+    protected void getParts(URLTokenizer url, PartList parts) {
+        for (int i = 0; i < url.getQueryParameterCount(); i++) {
+            parts.add(url.getQueryParameterStart(i), url.getQueryParameterEnd(i));
         }
     }
 
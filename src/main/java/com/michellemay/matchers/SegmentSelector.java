@@ -0,0 +1,166 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.matchers;
+
+import com.michellemay.url.URLTokenizer;
+
+/**
+ * Selects path segments so that patterns are applied to the selected segments only.
+ *
+ * <p>Segments are the '/' separated parts of the path, without slashes (see {@link URLTokenizer#hasPathSegment(int)}).
+ * Like path segment extractors, segment indexes only go up to the first empty segment (see {@link #isIndexed}),
+ * and empty segments are never selected. Segments are shared by all matchers of a detection and only
+ * scanned up to the last selected one: selection cost does not depend on the path length.</p>
+ *
+ * @author Michel Lemay
+ */
+public abstract class SegmentSelector {
+    /**
+     * Add the selected segments of a path.
+     *
+     * @param url the tokenized url
+     * @param parts receives the selected segments
+     */
+    public abstract void select(URLTokenizer url, PartList parts);
+
+    /**
+     * Select a single segment.
+     *
+     * @param segment the segment index (0 based)
+     * @return the segment selector
+     */
+    public static SegmentSelector index(int segment) { return new IndexSelector(segment); }
+
+    /**
+     * Select the first segments.
+     *
+     * @param count the number of segments
+     * @return the segment selector
+     */
+    public static SegmentSelector first(int count) { return new FirstSelector(count); }
+
+    /**
+     * Select the segment following the first segment equal to a literal. ex: 'docs' selects 'en' in /site/docs/en/...
+     *
+     * @param literal the literal segment
+     * @param caseSensitive the literal case sensitiveness (ASCII only)
+     * @return the segment selector
+     */
+    public static SegmentSelector after(String literal, boolean caseSensitive) { return new AfterSelector(literal, caseSensitive); }
+
+    /**
+     * Is a segment reachable by index: it and all the segments before it are not empty. Same as the
+     * '/[^/]+' steps of path segment patterns, see {@link LangExtractor#pathSegment(int)}.
+     *
+     * @param url the tokenized url
+     * @param segment the segment index (0 based)
+     * @return true if the segment is reachable
+     */
+    static boolean isIndexed(URLTokenizer url, int segment) {
+        for (int n = 0; n <= segment; n++) {
+            if (!url.hasPathSegment(n) || url.getPathSegmentEnd(n) == url.getPathSegmentStart(n)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Add a segment if not empty.
+     */
+    static void addSegment(URLTokenizer url, int segment, PartList parts) {
+        if (url.getPathSegmentEnd(segment) > url.getPathSegmentStart(segment)) {
+            parts.add(url.getPathSegmentStart(segment), url.getPathSegmentEnd(segment));
+        }
+    }
+
+    private static final class IndexSelector extends SegmentSelector {
+        private final int segment;
+
+        IndexSelector(int segment) {
+            this.segment = segment;
+        }
+
+        @Override
+        public void select(URLTokenizer url, PartList parts) {
+            if (isIndexed(url, segment)) {
+                addSegment(url, segment, parts);
+            }
+        }
+
+        @Override
+        public String toString() { return "segment:" + segment; }
+    }
+
+    private static final class FirstSelector extends SegmentSelector {
+        private final int count;
+
+        FirstSelector(int count) {
+            this.count = count;
+        }
+
+        @Override
+        public void select(URLTokenizer url, PartList parts) {
+            // Stop at the first empty segment, see isIndexed
+            for (int n = 0; n < count && url.hasPathSegment(n) && url.getPathSegmentEnd(n) > url.getPathSegmentStart(n); n++) {
+                addSegment(url, n, parts);
+            }
+        }
+
+        @Override
+        public String toString() { return "segments:" + count; }
+    }
+
+    private static final class AfterSelector extends SegmentSelector {
+        private final String literal;
+        private final boolean caseSensitive;
+
+        AfterSelector(String literal, boolean caseSensitive) {
+            this.literal = literal;
+            this.caseSensitive = caseSensitive;
+        }
+
+        @Override
+        public void select(URLTokenizer url, PartList parts) {
+            for (int n = 0; url.hasPathSegment(n + 1); n++) {
+                int start = url.getPathSegmentStart(n);
+                if (url.getPathSegmentEnd(n) - start == literal.length() && regionMatches(url.getInput(), start)) {
+                    addSegment(url, n + 1, parts);
+                    return;
+                }
+            }
+        }
+
+        private boolean regionMatches(CharSequence input, int start) {
+            for (int i = 0; i < literal.length(); i++) {
+                char a = literal.charAt(i);
+                char b = input.charAt(start + i);
+                if (a != b && (caseSensitive || foldAscii(a) != foldAscii(b))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static char foldAscii(char c) {
+            return c >= 'A' && c <= 'Z' ? (char)(c + ('a' - 'A')) : c;
+        }
+
+        @Override
+        public String toString() { return "after:" + literal; }
+    }
+}
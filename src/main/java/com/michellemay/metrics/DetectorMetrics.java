@@ -0,0 +1,225 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.metrics;
+
+import com.michellemay.matchers.Matcher;
+import com.michellemay.profiles.Profile;
+
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live detection counters and latency histograms, for detectors built with metrics enabled.
+ *
+ * <p>All counters are striped (LongAdder) to avoid contention between detecting threads. Snapshots
+ * taken while detections are running are not atomic across counters.</p>
+ *
+ * @author Michel Lemay
+ */
+public final class DetectorMetrics {
+    private final LongAdder detections = new LongAdder();
+    private final LongAdder malformed = new LongAdder();
+    private final LongAdder noProfile = new LongAdder();
+    private final LongAdder regexAborts = new LongAdder();
+    private final LongAdder skippedHosts = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final Map<Profile, ProfileMetrics> profiles;
+    private final ProfileMetrics[] orderedProfiles;
+
+    /**
+     * Instantiates new Detector metrics.
+     *
+     * @param profiles the profiles, in declaration order
+     */
+    public DetectorMetrics(List<Profile> profiles) {
+        this.profiles = new IdentityHashMap<Profile, ProfileMetrics>();
+        this.orderedProfiles = new ProfileMetrics[profiles.size()];
+        for (int i = 0; i < profiles.size(); i++) {
+            orderedProfiles[i] = new ProfileMetrics(profiles.get(i));
+            this.profiles.put(profiles.get(i), orderedProfiles[i]);
+        }
+    }
+
+    /**
+     * Record a detection.
+     *
+     * @param nanos the detection latency
+     */
+    public void recordDetection(long nanos) {
+        detections.increment();
+        latency.record(nanos);
+    }
+
+    /**
+     * Record a malformed url.
+     */
+    public void recordMalformed() { malformed.increment(); }
+
+    /**
+     * Record an url whose host matches no profile.
+     */
+    public void recordNoProfile() { noProfile.increment(); }
+
+    /**
+     * Record regex matches aborted because the regex budget of an url was spent.
+     *
+     * @param aborts the number of aborted matches
+     */
+    public void recordRegexAborts(long aborts) { regexAborts.add(aborts); }
+
+    /**
+     * Record an url skipped because its host yielded no language lately.
+     */
+    public void recordSkippedHost() { skippedHosts.increment(); }
+
+    /**
+     * Gets metrics of a profile.
+     *
+     * @param profile the profile
+     * @return the profile metrics
+     */
+    public ProfileMetrics getProfileMetrics(Profile profile) {
+        ProfileMetrics metrics = profiles.get(profile);
+        if (metrics == null) {
+            throw new IllegalArgumentException("Profile '" + profile.getName() + "' does not exists!");
+        }
+        return metrics;
+    }
+
+    /**
+     * Take a snapshot of all counters.
+     *
+     * @return the snapshot
+     */
+    public MetricsSnapshot snapshot() { return snapshot(false); }
+
+    /**
+     * Take a snapshot of all counters and reset them, so that the next snapshot only covers new detections.
+     *
+     * @return the snapshot
+     */
+    public MetricsSnapshot snapshotAndReset() { return snapshot(true); }
+
+    /**
+     * Reset all counters.
+     */
+    public void reset() { snapshot(true); }
+
+    private MetricsSnapshot snapshot(boolean reset) {
+        Map<String, MetricsSnapshot.ProfileSnapshot> profileSnapshots = new LinkedHashMap<String, MetricsSnapshot.ProfileSnapshot>();
+        for (ProfileMetrics profileMetrics : orderedProfiles) {
+            profileSnapshots.put(profileMetrics.name, profileMetrics.snapshot(reset));
+        }
+        return new MetricsSnapshot(
+                sum(detections, reset),
+                sum(malformed, reset),
+                sum(noProfile, reset),
+                sum(regexAborts, reset),
+                sum(skippedHosts, reset),
+                latency.snapshot(reset),
+                profileSnapshots);
+    }
+
+    private static long sum(LongAdder adder, boolean reset) {
+        return reset ? adder.sumThenReset() : adder.sum();
+    }
+
+    /**
+     * Live counters of a profile.
+     */
+    public static final class ProfileMetrics {
+        private final String name;
+        private final LongAdder resolutions = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final MatcherMetrics[] matchers;
+
+        ProfileMetrics(Profile profile) {
+            this.name = profile.getName();
+            List<Matcher> profileMatchers = profile.getMatchers();
+            this.matchers = new MatcherMetrics[profileMatchers.size()];
+            for (int i = 0; i < matchers.length; i++) {
+                matchers[i] = new MatcherMetrics(profileMatchers.get(i).getName());
+            }
+        }
+
+        /**
+         * Record an url resolved to this profile.
+         */
+        public void recordResolution() { resolutions.increment(); }
+
+        /**
+         * Record matchers execution latency.
+         *
+         * @param nanos the latency
+         */
+        public void recordLatency(long nanos) { latency.record(nanos); }
+
+        /**
+         * Gets metrics of a matcher.
+         *
+         * @param matcherIdx the matcher index in profile
+         * @return the matcher metrics
+         */
+        public MatcherMetrics getMatcherMetrics(int matcherIdx) { return matchers[matcherIdx]; }
+
+        MetricsSnapshot.ProfileSnapshot snapshot(boolean reset) {
+            MetricsSnapshot.MatcherSnapshot[] matcherSnapshots = new MetricsSnapshot.MatcherSnapshot[matchers.length];
+            for (int i = 0; i < matchers.length; i++) {
+                matcherSnapshots[i] = matchers[i].snapshot(reset);
+            }
+            return new MetricsSnapshot.ProfileSnapshot(name, sum(resolutions, reset), latency.snapshot(reset), matcherSnapshots);
+        }
+    }
+
+    /**
+     * Live counters of a matcher in a profile.
+     */
+    public static final class MatcherMetrics {
+        private final String name;
+        private final LongAdder attempts = new LongAdder();
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder mappingMisses = new LongAdder();
+
+        MatcherMetrics(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Record a matcher attempt.
+         */
+        public void recordAttempt() { attempts.increment(); }
+
+        /**
+         * Record a matcher detecting a language.
+         */
+        public void recordHit() { hits.increment(); }
+
+        /**
+         * Gets the counter of language candidates not found in the matcher mapping.
+         *
+         * @return the mapping misses counter
+         */
+        public LongAdder getMappingMisses() { return mappingMisses; }
+
+        MetricsSnapshot.MatcherSnapshot snapshot(boolean reset) {
+            return new MetricsSnapshot.MatcherSnapshot(name, sum(attempts, reset), sum(hits, reset), sum(mappingMisses, reset));
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent latency histogram with power of two buckets.
+ *
+ * <p>Bucket i counts latencies in [2^(i-1), 2^i) nanoseconds (bucket 0 counts zeros). Counters are striped
+ * so concurrent recording does not contend.</p>
+ *
+ * @author Michel Lemay
+ */
+public final class LatencyHistogram {
+    private static final int BUCKETS = 64;
+
+    private final LongAdder[] buckets;
+    private final LongAdder totalNanos;
+
+    /**
+     * Instantiates a new Latency histogram.
+     */
+    public LatencyHistogram() {
+        this.buckets = new LongAdder[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+        this.totalNanos = new LongAdder();
+    }
+
+    /**
+     * Record a latency.
+     *
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets[BUCKETS - Long.numberOfLeadingZeros(value)].increment();
+        totalNanos.add(value);
+    }
+
+    /**
+     * Take a snapshot.
+     *
+     * @param reset also reset counters
+     * @return the snapshot
+     */
+    public Snapshot snapshot(boolean reset) {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = reset ? buckets[i].sumThenReset() : buckets[i].sum();
+        }
+        return new Snapshot(counts, reset ? totalNanos.sumThenReset() : totalNanos.sum());
+    }
+
+    /**
+     * Latency histogram snapshot.
+     */
+    public static final class Snapshot {
+        private final long[] buckets;
+        private final long count;
+        private final long totalNanos;
+
+        Snapshot(long[] buckets, long totalNanos) {
+            this.buckets = buckets;
+            this.totalNanos = totalNanos;
+            long sum = 0;
+            for (long bucket : buckets) {
+                sum += bucket;
+            }
+            this.count = sum;
+        }
+
+        public long getCount() { return count; }
+        public long getTotalNanos() { return totalNanos; }
+
+        /**
+         * Gets bucket counts. Bucket i counts latencies in [2^(i-1), 2^i) nanoseconds.
+         *
+         * @return a copy of the bucket counts
+         */
+        public long[] getBuckets() { return buckets.clone(); }
+
+        /**
+         * Gets mean latency.
+         *
+         * @return the mean in nanoseconds, 0 if empty
+         */
+        public double getMeanNanos() { return count == 0 ? 0 : (double)totalNanos / count; }
+
+        /**
+         * Gets an upper bound of a latency percentile.
+         *
+         * @param percentile the percentile, between 0 and 100
+         * @return the upper bound of the bucket holding the percentile, in nanoseconds, 0 if empty
+         */
+        public long getPercentileNanos(double percentile) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("Percentile must be between 0 and 100!");
+            }
+            long rank = (long)Math.ceil(count * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank && seen > 0) {
+                    return i == 0 ? 0 : (i == 63 ? Long.MAX_VALUE : (1L << i) - 1);
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return "LatencyHistogram.Snapshot{count=" + count + ", mean=" + (long)getMeanNanos()
+                    + "ns, p50=" + getPercentileNanos(50) + "ns, p99=" + getPercentileNanos(99) + "ns}";
+        }
+    }
+}
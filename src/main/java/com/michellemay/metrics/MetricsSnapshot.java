@@ -0,0 +1,195 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.metrics;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Point in time copy of detector metrics.
+ *
+ * @author Michel Lemay
+ */
+public final class MetricsSnapshot {
+    private final long detections;
+    private final long malformed;
+    private final long noProfile;
+    private final long regexAborts;
+    private final long skippedHosts;
+    private final LatencyHistogram.Snapshot latency;
+    private final Map<String, ProfileSnapshot> profiles;
+
+    MetricsSnapshot(long detections, long malformed, long noProfile, long regexAborts, long skippedHosts, LatencyHistogram.Snapshot latency, Map<String, ProfileSnapshot> profiles) {
+        this.detections = detections;
+        this.malformed = malformed;
+        this.noProfile = noProfile;
+        this.regexAborts = regexAborts;
+        this.skippedHosts = skippedHosts;
+        this.latency = latency;
+        this.profiles = ImmutableMap.copyOf(profiles);
+    }
+
+    /**
+     * Gets number of single url detections.
+     *
+     * @return the detections
+     */
+    public long getDetections() { return detections; }
+
+    /**
+     * Gets number of malformed urls.
+     *
+     * @return the malformed urls
+     */
+    public long getMalformed() { return malformed; }
+
+    /**
+     * Gets number of urls whose host matches no profile.
+     *
+     * @return the urls without profile
+     */
+    public long getNoProfile() { return noProfile; }
+
+    /**
+     * Gets number of regex matches aborted, and reported as not matching, because the regex budget of an url was spent.
+     *
+     * @return the regex aborts
+     */
+    public long getRegexAborts() { return regexAborts; }
+
+    /**
+     * Gets number of urls skipped because their host yielded no language lately.
+     *
+     * @return the skipped urls
+     */
+    public long getSkippedHosts() { return skippedHosts; }
+
+    /**
+     * Gets single url detection latency.
+     *
+     * @return the latency histogram
+     */
+    public LatencyHistogram.Snapshot getLatency() { return latency; }
+
+    /**
+     * Gets profiles metrics, in declaration order.
+     *
+     * @return the profiles by name
+     */
+    public Map<String, ProfileSnapshot> getProfiles() { return profiles; }
+
+    @Override
+    public String toString() {
+        return "MetricsSnapshot{detections=" + detections + ", malformed=" + malformed + ", noProfile=" + noProfile
+                + ", regexAborts=" + regexAborts + ", skippedHosts=" + skippedHosts + ", latency=" + latency + ", profiles=" + profiles.values() + "}";
+    }
+
+    /**
+     * Profile metrics.
+     */
+    public static final class ProfileSnapshot {
+        private final String name;
+        private final long resolutions;
+        private final LatencyHistogram.Snapshot latency;
+        private final List<MatcherSnapshot> matchers;
+
+        ProfileSnapshot(String name, long resolutions, LatencyHistogram.Snapshot latency, MatcherSnapshot[] matchers) {
+            this.name = name;
+            this.resolutions = resolutions;
+            this.latency = latency;
+            this.matchers = ImmutableList.copyOf(matchers);
+        }
+
+        public String getName() { return name; }
+
+        /**
+         * Gets number of urls resolved to this profile.
+         *
+         * @return the resolutions
+         */
+        public long getResolutions() { return resolutions; }
+
+        /**
+         * Gets matchers execution latency.
+         *
+         * @return the latency histogram
+         */
+        public LatencyHistogram.Snapshot getLatency() { return latency; }
+
+        /**
+         * Gets matchers metrics, in profile order.
+         *
+         * @return the matchers metrics
+         */
+        public List<MatcherSnapshot> getMatchers() { return matchers; }
+
+        @Override
+        public String toString() {
+            return "ProfileSnapshot{name=" + name + ", resolutions=" + resolutions + ", latency=" + latency
+                    + ", matchers=" + matchers + "}";
+        }
+    }
+
+    /**
+     * Matcher metrics.
+     */
+    public static final class MatcherSnapshot {
+        private final String name;
+        private final long attempts;
+        private final long hits;
+        private final long mappingMisses;
+
+        MatcherSnapshot(String name, long attempts, long hits, long mappingMisses) {
+            this.name = name;
+            this.attempts = attempts;
+            this.hits = hits;
+            this.mappingMisses = mappingMisses;
+        }
+
+        public String getName() { return name; }
+
+        /**
+         * Gets number of urls given to the matcher.
+         *
+         * @return the attempts
+         */
+        public long getAttempts() { return attempts; }
+
+        /**
+         * Gets number of languages detected by the matcher.
+         *
+         * @return the hits
+         */
+        public long getHits() { return hits; }
+
+        /**
+         * Gets number of language candidates extracted but not found in the mapping.
+         *
+         * @return the mapping misses
+         */
+        public long getMappingMisses() { return mappingMisses; }
+
+        @Override
+        public String toString() {
+            return "MatcherSnapshot{name=" + name + ", attempts=" + attempts + ", hits=" + hits
+                    + ", mappingMisses=" + mappingMisses + "}";
+        }
+    }
+}
@@ -0,0 +1,380 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.profiles;
+
+import com.michellemay.regex.RegexBudget;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compiled index of all profiles domain patterns.
+ *
+ * <p>Domain patterns are sorted in three buckets:</p>
+ * <ul>
+ *     <li>Literal hosts (ex: 'stuff\.com') go in a hash table.</li>
+ *     <li>Plain suffixes (ex: '.*\.stuff\.com', '(.*\.)?stuff\.com', '.*') go in a reversed suffix trie.</li>
+ *     <li>Everything else is combined in a single alternation regex. Patterns that cannot be safely
+ *     combined (backreferences, named groups, non default flags) are kept aside and tried individually.</li>
+ * </ul>
+ *
+ * <p>Each entry remembers the index of the first profile declaring it, so the lowest index found
+ * across the three buckets is the first declared profile matching the host.</p>
+ *
+ * @author Michel Lemay
+ */
+class DomainIndex {
+    private static final int NONE = Integer.MAX_VALUE;
+    private static final String GROUP_PREFIX = "domainIndexProfile";
+
+    private final List<Profile> profiles;
+    private final LiteralTable literals;
+    private final TrieNode suffixes;
+    private final Pattern combined;
+    private final int[] combinedProfiles;
+    private final int combinedFirst;
+    private final List<Pattern> standalone;
+    private final int[] standaloneProfiles;
+
+    /**
+     * Instantiates a new Domain index.
+     *
+     * @param profiles the profiles in declaration order
+     */
+    DomainIndex(List<Profile> profiles) {
+        this.profiles = new ArrayList<Profile>(profiles);
+
+        List<String> literalHosts = new ArrayList<String>();
+        List<Integer> literalProfiles = new ArrayList<Integer>();
+        StringBuilder combinedRegex = new StringBuilder();
+        List<Integer> regexProfiles = new ArrayList<Integer>();
+        this.standalone = new ArrayList<Pattern>();
+        List<Integer> standaloneProfilesList = new ArrayList<Integer>();
+        this.suffixes = new TrieNode();
+
+        for (int profileIdx = 0; profileIdx < profiles.size(); profileIdx++) {
+            for (Pattern domain : profiles.get(profileIdx).getDomains()) {
+                if (domain.flags() != Pattern.CASE_INSENSITIVE || !isCombinable(domain.pattern())) {
+                    standalone.add(domain);
+                    standaloneProfilesList.add(profileIdx);
+                } else if (!indexSimplePattern(domain.pattern(), profileIdx, literalHosts, literalProfiles)) {
+                    if (combinedRegex.length() > 0) {
+                        combinedRegex.append('|');
+                    }
+                    combinedRegex.append("(?<").append(GROUP_PREFIX).append(regexProfiles.size()).append('>')
+                            .append(domain.pattern()).append(')');
+                    regexProfiles.add(profileIdx);
+                }
+            }
+        }
+
+        this.literals = new LiteralTable(literalHosts, literalProfiles);
+        this.combined = regexProfiles.isEmpty() ? null : Pattern.compile(combinedRegex.toString(), Pattern.CASE_INSENSITIVE);
+        this.combinedProfiles = regexProfiles.stream().mapToInt(Integer::intValue).toArray();
+        this.combinedFirst = regexProfiles.isEmpty() ? NONE : combinedProfiles[0];
+        this.standaloneProfiles = standaloneProfilesList.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Find first declared profile matching host.
+     *
+     * @param input the input
+     * @param start the host start offset
+     * @param end the host end offset
+     * @return the profile index or -1 if none
+     */
+    int find(CharSequence input, int start, int end) {
+        if (containsLineTerminator(input, start, end)) {
+            // '.' does not match line terminators: let regexes sort out these weird hosts.
+            return findLinear(input, start, end);
+        }
+
+        int best = Math.min(literals.find(input, start, end), suffixes.find(input, start, end));
+        RegexBudget budget = RegexBudget.get();
+        if (combinedFirst < best) {
+            Matcher m = combined.matcher(budget.wrap(input)).region(start, end);
+            if (budget.matches(m)) {
+                for (int i = 0; i < combinedProfiles.length && combinedProfiles[i] < best; i++) {
+                    if (m.start(GROUP_PREFIX + i) >= 0) {
+                        best = combinedProfiles[i];
+                        break;
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < standaloneProfiles.length && standaloneProfiles[i] < best; i++) {
+            if (budget.matches(standalone.get(i).matcher(budget.wrap(input)).region(start, end))) {
+                best = standaloneProfiles[i];
+            }
+        }
+        return best == NONE ? -1 : best;
+    }
+
+    private int findLinear(CharSequence input, int start, int end) {
+        for (int i = 0; i < profiles.size(); i++) {
+            if (profiles.get(i).match(input, start, end)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Can the regex be wrapped in a named group of the combined regex without changing its meaning.
+     */
+    private static boolean isCombinable(String regex) {
+        for (int i = 0; i < regex.length() - 1; i++) {
+            char c = regex.charAt(i);
+            char next = regex.charAt(i + 1);
+            if (c == '\\') {
+                if ((next >= '1' && next <= '9') || next == 'k') {
+                    // Backreferences would be renumbered
+                    return false;
+                }
+                if (next == 'Q') {
+                    // An unterminated quote would swallow the closing parenthesis
+                    return false;
+                }
+                i++;
+            } else if (c == '(' && next == '?' && hasCommentsFlag(regex, i + 2)) {
+                // Comments would swallow the closing parenthesis
+                return false;
+            } else if (c == '(' && regex.startsWith("?<", i + 1) && i + 3 < regex.length() && Character.isLetter(regex.charAt(i + 3))) {
+                // Named groups may collide with other patterns
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasCommentsFlag(String regex, int start) {
+        for (int i = start; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == 'x') {
+                return true;
+            }
+            if ("idmsuU-".indexOf(c) < 0) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private boolean indexSimplePattern(String regex, int profileIdx, List<String> literalHosts, List<Integer> literalProfiles) {
+        int start = 0;
+        int end = regex.length();
+        if (end > start && regex.charAt(start) == '^') {
+            start++;
+        }
+        if (end > start + 1 && regex.charAt(end - 1) == '$' && regex.charAt(end - 2) != '\\') {
+            end--;
+        }
+
+        String[][] prefixes = {
+                // prefix, prepended to suffix, min prefix length, also literal
+                { "(.*\\.)?", ".", "0", "true" },
+                { "(?:.*\\.)?", ".", "0", "true" },
+                { "(.+\\.)?", ".", "1", "true" },
+                { "(?:.+\\.)?", ".", "1", "true" },
+                { ".*", "", "0", "false" },
+                { ".+", "", "1", "false" },
+                { "", "", "", "true" }
+        };
+        for (String[] prefix : prefixes) {
+            if (!regex.startsWith(prefix[0], start)) {
+                continue;
+            }
+            String literal = parseLiteral(regex, start + prefix[0].length(), end);
+            if (literal == null) {
+                return false;
+            }
+            if (!prefix[2].isEmpty()) {
+                suffixes.add(prefix[1] + literal, prefix[2].equals("1"), profileIdx);
+            }
+            if (prefix[3].equals("true")) {
+                literalHosts.add(literal);
+                literalProfiles.add(profileIdx);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Parse an escaped literal, folding ASCII case.
+     *
+     * @return the literal or null if the regex contains any special construct
+     */
+    private static String parseLiteral(String regex, int start, int end) {
+        StringBuilder literal = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (++i == end) {
+                    return null;
+                }
+                c = regex.charAt(i);
+                if (Character.isLetterOrDigit(c)) {
+                    // Character class, backreference, quoting, etc.
+                    return null;
+                }
+            } else if ("^$.|?*+()[]{}".indexOf(c) >= 0) {
+                return null;
+            }
+            literal.append(fold(c));
+        }
+        return literal.toString();
+    }
+
+    private static boolean containsLineTerminator(CharSequence input, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = input.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Same case folding as Pattern.CASE_INSENSITIVE without Pattern.UNICODE_CASE.
+     */
+    private static char fold(char c) {
+        return c >= 'A' && c <= 'Z' ? (char)(c + ('a' - 'A')) : c;
+    }
+
+    /**
+     * Open addressing hash table of case folded literal hosts.
+     */
+    private static class LiteralTable {
+        private final String[] keys;
+        private final int[] values;
+        private final int mask;
+
+        LiteralTable(List<String> hosts, List<Integer> profileIdx) {
+            int capacity = Integer.highestOneBit(Math.max(2, hosts.size() * 2) - 1) << 1;
+            this.keys = new String[capacity];
+            this.values = new int[capacity];
+            this.mask = capacity - 1;
+            for (int i = 0; i < hosts.size(); i++) {
+                String host = hosts.get(i);
+                int slot = hash(host, 0, host.length()) & mask;
+                while (keys[slot] != null && !keys[slot].equals(host)) {
+                    slot = (slot + 1) & mask;
+                }
+                if (keys[slot] == null) {
+                    // First declaration wins
+                    keys[slot] = host;
+                    values[slot] = profileIdx.get(i);
+                }
+            }
+        }
+
+        int find(CharSequence input, int start, int end) {
+            int slot = hash(input, start, end) & mask;
+            for (String key = keys[slot]; key != null; key = keys[slot]) {
+                if (equalsFolded(key, input, start, end)) {
+                    return values[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return NONE;
+        }
+
+        private static int hash(CharSequence s, int start, int end) {
+            int h = 0;
+            for (int i = start; i < end; i++) {
+                h = 31 * h + fold(s.charAt(i));
+            }
+            return h ^ (h >>> 16);
+        }
+
+        private static boolean equalsFolded(String key, CharSequence input, int start, int end) {
+            if (key.length() != end - start) {
+                return false;
+            }
+            for (int i = 0; i < key.length(); i++) {
+                if (key.charAt(i) != fold(input.charAt(start + i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Suffix trie node. Children are keyed by characters read from the end of the host.
+     */
+    private static class TrieNode {
+        private char[] labels = new char[0];
+        private TrieNode[] children = new TrieNode[0];
+        // Lowest profile index of suffixes ending here, with any prefix or with a non-empty prefix.
+        private int anyPrefix = NONE;
+        private int nonEmptyPrefix = NONE;
+
+        void add(String suffix, boolean nonEmptyPrefixOnly, int profileIdx) {
+            TrieNode node = this;
+            for (int i = suffix.length() - 1; i >= 0; i--) {
+                node = node.getOrCreateChild(suffix.charAt(i));
+            }
+            if (nonEmptyPrefixOnly) {
+                node.nonEmptyPrefix = Math.min(node.nonEmptyPrefix, profileIdx);
+            } else {
+                node.anyPrefix = Math.min(node.anyPrefix, profileIdx);
+            }
+        }
+
+        int find(CharSequence input, int start, int end) {
+            int best = NONE;
+            TrieNode node = this;
+            for (int i = end; node != null; i--) {
+                best = Math.min(best, node.anyPrefix);
+                if (i > start) {
+                    best = Math.min(best, node.nonEmptyPrefix);
+                    node = node.getChild(fold(input.charAt(i - 1)));
+                } else {
+                    node = null;
+                }
+            }
+            return best;
+        }
+
+        private TrieNode getChild(char c) {
+            for (int i = 0; i < labels.length; i++) {
+                if (labels[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        private TrieNode getOrCreateChild(char c) {
+            TrieNode child = getChild(c);
+            if (child == null) {
+                child = new TrieNode();
+                labels = Arrays.copyOf(labels, labels.length + 1);
+                children = Arrays.copyOf(children, children.length + 1);
+                labels[labels.length - 1] = c;
+                children[children.length - 1] = child;
+            }
+            return child;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.profiles;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import java.util.Optional;
+
+/**
+ * Bounded concurrent cache of host to profile resolutions.
+ *
+ * <p>Backed by a Caffeine cache (W-TinyLFU eviction) so hosts seen only once do not flush frequently
+ * seen ones. Hosts matching no profile are cached as well.</p>
+ *
+ * @author Michel Lemay
+ */
+public class HostProfileCache {
+    // Lookups go through a view over the input: keys are only copied when a host is added.
+    private static final ThreadLocal<HostKey> LOOKUP_KEYS = ThreadLocal.withInitial(HostKey::new);
+
+    private final ProfilesFactory profilesFactory;
+    private final Cache<HostKey, Optional<Profile>> cache;
+
+    /**
+     * Instantiates a new Host profile cache.
+     *
+     * @param profilesFactory the profiles factory
+     * @param maximumSize the maximum number of hosts in cache
+     */
+    public HostProfileCache(ProfilesFactory profilesFactory, long maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Host cache size must be positive!");
+        }
+        this.profilesFactory = profilesFactory;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Find profile for host, using cached resolution if available.
+     *
+     * @param input the input
+     * @param hostStart the host start offset
+     * @param hostEnd the host end offset
+     * @return the profile
+     */
+    public Optional<Profile> findProfileForHost(CharSequence input, int hostStart, int hostEnd) {
+        HostKey lookup = LOOKUP_KEYS.get().wrap(input, hostStart, hostEnd);
+        try {
+            Optional<Profile> profile = cache.getIfPresent(lookup);
+            if (profile == null) {
+                // Resolution has no side effect: racing threads may both resolve, the first one is kept.
+                profile = profilesFactory.findProfileForHost(input, hostStart, hostEnd);
+                Optional<Profile> raced = cache.asMap().putIfAbsent(lookup.copy(), profile);
+                if (raced != null) {
+                    profile = raced;
+                }
+            }
+            return profile;
+        } finally {
+            lookup.wrap(null, 0, 0);
+        }
+    }
+
+    /**
+     * Gets a snapshot of cache statistics.
+     *
+     * @return the stats
+     */
+    public Stats getStats() {
+        return new Stats(cache.stats(), cache.estimatedSize());
+    }
+
+    /**
+     * Discard all cached resolutions. Statistics are kept.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Host as a cache key. Domains are matched case insensitively: entries are shared between host spellings.
+     */
+    private static final class HostKey {
+        private CharSequence input;
+        private int start;
+        private int end;
+        private int hash;
+
+        HostKey wrap(CharSequence input, int start, int end) {
+            this.input = input;
+            this.start = start;
+            this.end = end;
+            int h = 0;
+            for (int i = start; i < end; i++) {
+                h = 31 * h + foldAscii(input.charAt(i));
+            }
+            this.hash = h;
+            return this;
+        }
+
+        HostKey copy() {
+            char[] folded = new char[end - start];
+            for (int i = 0; i < folded.length; i++) {
+                folded[i] = foldAscii(input.charAt(start + i));
+            }
+            return new HostKey().wrap(new String(folded), 0, folded.length);
+        }
+
+        private static char foldAscii(char c) {
+            return c >= 'A' && c <= 'Z' ? (char)(c + ('a' - 'A')) : c;
+        }
+
+        @Override
+        public int hashCode() { return hash; }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof HostKey)) {
+                return false;
+            }
+            HostKey other = (HostKey)o;
+            if (hash != other.hash || end - start != other.end - other.start) {
+                return false;
+            }
+            for (int i = 0; i < end - start; i++) {
+                if (foldAscii(input.charAt(start + i)) != foldAscii(other.input.charAt(other.start + i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() { return input.subSequence(start, end).toString(); }
+    }
+
+    /**
+     * Host cache statistics snapshot.
+     */
+    public static class Stats {
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+        private final long estimatedSize;
+
+        Stats(CacheStats stats, long estimatedSize) {
+            this.hitCount = stats.hitCount();
+            this.missCount = stats.missCount();
+            this.evictionCount = stats.evictionCount();
+            this.estimatedSize = estimatedSize;
+        }
+
+        public long getHitCount() { return hitCount; }
+        public long getMissCount() { return missCount; }
+        public long getEvictionCount() { return evictionCount; }
+        public long getEstimatedSize() { return estimatedSize; }
+
+        /**
+         * Gets hit rate.
+         *
+         * @return the ratio of lookups found in cache, 1.0 if no lookups yet
+         */
+        public double getHitRate() {
+            long requests = hitCount + missCount;
+            return requests == 0 ? 1.0 : (double)hitCount / requests;
+        }
+
+        @Override
+        public String toString() {
+            return "HostProfileCache.Stats{hits=" + hitCount + ", misses=" + missCount
+                    + ", evictions=" + evictionCount + ", size=" + estimatedSize + "}";
+        }
+    }
+}
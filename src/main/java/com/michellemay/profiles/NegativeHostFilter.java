@@ -0,0 +1,331 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.profiles;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Adaptive filter of hosts that never yield a language, so that detectors can skip them.
+ *
+ * <p>Consecutive misses are counted per host in a fixed size table of (fingerprint, count) slots. Once a host
+ * reaches the miss threshold, it is added to a scalable Bloom filter: stages of growing capacity and tightening
+ * false positive rate, so the overall rate stays within budget however many hosts are added. Hosts cannot be
+ * removed from a Bloom filter, so the filter is aged instead: each period, a new generation starts and the
+ * one before the previous is dropped. Hosts that start yielding languages are thus retried after at most
+ * two periods.</p>
+ *
+ * <p>Lookups never block: they read the generations and their bits without locks.</p>
+ *
+ * @author Michel Lemay
+ */
+public class NegativeHostFilter {
+    private static final int MISS_SLOTS = 1 << 14;
+    private static final long COUNT_MASK = 0xFFFFFFL;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int missThreshold;
+    private final double falsePositiveRate;
+    private final long agingPeriodNanos;
+    // High 40 bits: host fingerprint, low 24 bits: consecutive misses.
+    private final AtomicLongArray misses = new AtomicLongArray(MISS_SLOTS);
+    private volatile Generation current;
+    private volatile Generation previous;
+    private volatile long agingStart;
+    private final LongAdder skipped = new LongAdder();
+
+    /**
+     * Instantiates a new Negative host filter.
+     *
+     * @param missThreshold the number of consecutive urls without language before a host is skipped
+     * @param falsePositiveRate the ratio of other hosts wrongly skipped, at most
+     * @param agingPeriod the period after which skipped hosts may be retried
+     * @param unit the aging period unit
+     */
+    public NegativeHostFilter(int missThreshold, double falsePositiveRate, long agingPeriod, TimeUnit unit) {
+        validate(missThreshold, falsePositiveRate, agingPeriod, unit);
+        this.missThreshold = missThreshold;
+        this.falsePositiveRate = falsePositiveRate;
+        this.agingPeriodNanos = unit.toNanos(agingPeriod);
+        this.current = newGeneration();
+        this.previous = newGeneration();
+        this.agingStart = System.nanoTime();
+    }
+
+    /**
+     * Validate filter arguments, without allocating a filter.
+     *
+     * @param missThreshold the number of consecutive urls without language before a host is skipped
+     * @param falsePositiveRate the ratio of other hosts wrongly skipped, at most
+     * @param agingPeriod the period after which skipped hosts may be retried
+     * @param unit the aging period unit
+     */
+    public static void validate(int missThreshold, double falsePositiveRate, long agingPeriod, TimeUnit unit) {
+        if (missThreshold <= 0 || missThreshold > COUNT_MASK) {
+            throw new IllegalArgumentException("Negative host filter threshold must be positive!");
+        }
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("Negative host filter false positive rate must be between 0 and 1!");
+        }
+        if (agingPeriod <= 0) {
+            throw new IllegalArgumentException("Negative host filter aging period must be positive!");
+        }
+    }
+
+    /**
+     * Check whether a host is filtered: its urls yielded no language lately. Counted as skipped when true.
+     *
+     * @param input the input
+     * @param hostStart the host start offset
+     * @param hostEnd the host end offset
+     * @return true if the host should be skipped
+     */
+    public boolean shouldSkip(CharSequence input, int hostStart, int hostEnd) {
+        if (System.nanoTime() - agingStart >= agingPeriodNanos) {
+            ageIfDue();
+        }
+        long hash = hostHash(input, hostStart, hostEnd);
+        if (current.mightContain(hash) || previous.mightContain(hash)) {
+            skipped.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Record the outcome of an url detection.
+     *
+     * @param input the input
+     * @param hostStart the host start offset
+     * @param hostEnd the host end offset
+     * @param found whether a language was detected
+     */
+    public void record(CharSequence input, int hostStart, int hostEnd, boolean found) {
+        long hash = hostHash(input, hostStart, hostEnd);
+        int slot = (int)hash & (MISS_SLOTS - 1);
+        long fingerprint = hash & ~COUNT_MASK;
+        while (true) {
+            long entry = misses.get(slot);
+            boolean sameHost = (entry & ~COUNT_MASK) == fingerprint;
+            if (found) {
+                // Only consecutive misses count.
+                if (!sameHost || (entry & COUNT_MASK) == 0 || misses.compareAndSet(slot, entry, fingerprint)) {
+                    return;
+                }
+                continue;
+            }
+            long count = sameHost ? (entry & COUNT_MASK) + 1 : 1;
+            if (count >= missThreshold) {
+                if (misses.compareAndSet(slot, entry, fingerprint)) {
+                    current.add(hash);
+                    return;
+                }
+            } else if (misses.compareAndSet(slot, entry, fingerprint | count)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Start a new generation now: hosts filtered before the previous generation are retried.
+     */
+    public synchronized void age() {
+        agingStart = System.nanoTime();
+        previous = current;
+        current = newGeneration();
+    }
+
+    /**
+     * Re-checked under the lock: only the first of the threads past the deadline starts a new generation.
+     */
+    private synchronized void ageIfDue() {
+        if (System.nanoTime() - agingStart >= agingPeriodNanos) {
+            age();
+        }
+    }
+
+    /**
+     * Discard all filtered hosts and miss counts. Statistics are kept.
+     */
+    public synchronized void invalidateAll() {
+        for (int i = 0; i < MISS_SLOTS; i++) {
+            misses.set(i, 0);
+        }
+        agingStart = System.nanoTime();
+        previous = newGeneration();
+        current = newGeneration();
+    }
+
+    /**
+     * Gets a snapshot of filter statistics.
+     *
+     * @return the stats
+     */
+    public Stats getStats() {
+        Generation cur = current;
+        Generation prev = previous;
+        return new Stats(skipped.sum(), cur.size() + prev.size(), cur.stages.length + prev.stages.length);
+    }
+
+    private Generation newGeneration() {
+        // Both generations are probed: each gets half of the budget.
+        return new Generation(falsePositiveRate / 2);
+    }
+
+    /**
+     * 64 bits hash of the host as written (FNV-1a, finalized with the MurmurHash3 mixer). Hosts are not case
+     * folded: case sensitive matchers may find a language for one spelling only.
+     */
+    static long hostHash(CharSequence input, int start, int end) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i++) {
+            h = (h ^ input.charAt(i)) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+
+    /**
+     * Scalable Bloom filter: when a stage is full, a new one with twice the capacity and half the false positive
+     * rate is added, so that the generation false positive rate stays below twice the first stage rate.
+     */
+    private static final class Generation {
+        private final double falsePositiveRate;
+        private volatile Stage[] stages;
+
+        Generation(double falsePositiveRate) {
+            this.falsePositiveRate = falsePositiveRate;
+            this.stages = new Stage[] { new Stage(INITIAL_CAPACITY, falsePositiveRate / 2) };
+        }
+
+        boolean mightContain(long hash) {
+            for (Stage stage : stages) {
+                if (stage.mightContain(hash)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void add(long hash) {
+            if (mightContain(hash)) {
+                return;
+            }
+            Stage[] s = stages;
+            Stage last = s[s.length - 1];
+            if (!last.tryAdd(hash)) {
+                synchronized (this) {
+                    s = stages;
+                    last = s[s.length - 1];
+                    if (!last.tryAdd(hash)) {
+                        Stage[] grown = Arrays.copyOf(s, s.length + 1);
+                        grown[s.length] = new Stage(last.capacity * 2, falsePositiveRate / (2L << s.length));
+                        grown[s.length].tryAdd(hash);
+                        stages = grown;
+                    }
+                }
+            }
+        }
+
+        long size() {
+            long size = 0;
+            for (Stage stage : stages) {
+                size += stage.count.get();
+            }
+            return size;
+        }
+    }
+
+    private static final class Stage {
+        private final int capacity;
+        private final int hashes;
+        private final int bitMask;
+        private final AtomicLongArray bits;
+        private final AtomicInteger count = new AtomicInteger();
+
+        Stage(int capacity, double falsePositiveRate) {
+            this.capacity = capacity;
+            double ln2 = Math.log(2);
+            long optimalBits = (long)Math.ceil(-capacity * Math.log(falsePositiveRate) / (ln2 * ln2));
+            int bitCount = Integer.highestOneBit((int)Math.min(1L << 30, Math.max(64, optimalBits)) - 1) << 1;
+            this.hashes = Math.max(1, (int)Math.ceil(-Math.log(falsePositiveRate) / ln2));
+            this.bitMask = bitCount - 1;
+            this.bits = new AtomicLongArray(bitCount >>> 6);
+        }
+
+        boolean mightContain(long hash) {
+            int h1 = (int)hash;
+            int h2 = (int)(hash >>> 32) | 1;
+            for (int i = 0; i < hashes; i++) {
+                int bit = (h1 + i * h2) & bitMask;
+                if ((bits.get(bit >>> 6) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Add a hash unless the stage is full.
+         */
+        boolean tryAdd(long hash) {
+            if (count.incrementAndGet() > capacity) {
+                count.decrementAndGet();
+                return false;
+            }
+            int h1 = (int)hash;
+            int h2 = (int)(hash >>> 32) | 1;
+            for (int i = 0; i < hashes; i++) {
+                int bit = (h1 + i * h2) & bitMask;
+                long mask = 1L << bit;
+                bits.accumulateAndGet(bit >>> 6, mask, (a, b) -> a | b);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Negative host filter statistics snapshot.
+     */
+    public static class Stats {
+        private final long skippedCount;
+        private final long filteredHosts;
+        private final int stageCount;
+
+        Stats(long skippedCount, long filteredHosts, int stageCount) {
+            this.skippedCount = skippedCount;
+            this.filteredHosts = filteredHosts;
+            this.stageCount = stageCount;
+        }
+
+        public long getSkippedCount() { return skippedCount; }
+        public long getFilteredHosts() { return filteredHosts; }
+        public int getStageCount() { return stageCount; }
+
+        @Override
+        public String toString() {
+            return "NegativeHostFilter.Stats{skipped=" + skippedCount + ", hosts=" + filteredHosts
+                    + ", stages=" + stageCount + "}";
+        }
+    }
+}
@@ -16,13 +16,20 @@
 
 package com.michellemay.profiles;
 
+import com.michellemay.mappings.LanguageRegistry;
 import com.michellemay.matchers.Matcher;
+import com.michellemay.regex.AhoCorasick;
+import com.michellemay.regex.RegexBudget;
+import com.michellemay.url.URLTokenizer;
 
-import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Pattern;
 
 /**
@@ -32,6 +39,11 @@ public class Profile {
     private String name;
     private List<Pattern> domains;
     private List<Matcher> matchers;
+    // Literals required by matchers extractors, found in a single pass to skip extractors (null when none).
+    private AhoCorasick literals;
+    private int[][] literalIds;
+    // Found literals of the url being detected, reused by each thread.
+    private ThreadLocal<long[]> foundLiterals;
 
     public String getName() { return name; }
 
@@ -39,24 +51,84 @@ public class Profile {
     public Profile withDomains(List<Pattern> domains) { this.domains = domains; return this; }
 
     public List<Matcher> getMatchers() { return matchers; }
-    public Profile withMatchers(ArrayList<Matcher> matchers) { this.matchers = matchers; return this; }
+    public Profile withMatchers(ArrayList<Matcher> matchers) {
+        this.matchers = matchers;
+
+        Map<String, Integer> ids = new LinkedHashMap<String, Integer>();
+        this.literalIds = new int[matchers.size()][];
+        for (int m = 0; m < matchers.size(); m++) {
+            Matcher matcher = matchers.get(m);
+            literalIds[m] = new int[matcher.getExtractors().size()];
+            for (int e = 0; e < literalIds[m].length; e++) {
+                String literal = matcher.getRequiredLiteral(e);
+                literalIds[m][e] = literal != null ? ids.computeIfAbsent(literal, (l) -> ids.size()) : -1;
+            }
+        }
+        this.literals = ids.isEmpty() ? null : new AhoCorasick(new ArrayList<String>(ids.keySet()));
+        this.foundLiterals = literals == null ? null : ThreadLocal.withInitial(literals::newFoundSet);
+        return this;
+    }
 
     protected Profile(String name) {
         this.name = name;
     }
 
-    public Optional<Locale> detect(URL url) {
-        return matchers
-                .stream()
-                .map((matcher) -> matcher.detect(url))
-                .filter(Optional::isPresent)
-                .map(Optional::get)
-                .findFirst();
+    public Optional<Locale> detect(URLTokenizer url) {
+        return Optional.ofNullable(LanguageRegistry.getLocale(detectId(url)));
+    }
+
+    public int detectId(URLTokenizer url) {
+        long[] found = findLiterals(url);
+        for (int i = 0; i < matchers.size(); i++) {
+            int id = detectId(url, i, found, null);
+            if (id != LanguageRegistry.NO_LANGUAGE) {
+                return id;
+            }
+        }
+        return LanguageRegistry.NO_LANGUAGE;
+    }
+
+    /**
+     * Find literals required by matchers in the whole url.
+     *
+     * @param url the tokenized url
+     * @return the found literals, valid until the next call from the same thread, or null when no matcher has required literals
+     */
+    public long[] findLiterals(URLTokenizer url) {
+        if (literals == null) {
+            return null;
+        }
+        long[] found = foundLiterals.get();
+        Arrays.fill(found, 0L);
+        literals.scan(url.getInput(), 0, url.getInput().length(), found);
+        return found;
+    }
+
+    /**
+     * Execute a single matcher, skipping its extractors whose required literal was not found.
+     *
+     * @param url the tokenized url
+     * @param matcherIdx the matcher index
+     * @param foundLiterals the literals found by {@link #findLiterals(URLTokenizer)}
+     * @param mappingMisses incremented for each candidate not found in mapping, may be null
+     * @return the language id or {@link LanguageRegistry#NO_LANGUAGE}
+     */
+    public int detectId(URLTokenizer url, int matcherIdx, long[] foundLiterals, LongAdder mappingMisses) {
+        return matchers.get(matcherIdx).detectId(url, mappingMisses, foundLiterals, literalIds[matcherIdx]);
+    }
+
+    public boolean match(CharSequence host) {
+        return match(host, 0, host.length());
     }
 
-    public boolean match(String host) {
-        return domains
-                .stream()
-                .anyMatch((p) -> p.matcher(host).matches());
+    public boolean match(CharSequence input, int hostStart, int hostEnd) {
+        RegexBudget budget = RegexBudget.get();
+        CharSequence budgetedInput = budget.wrap(input);
+        for (Pattern p : domains) {
+            if (budget.matches(p.matcher(budgetedInput).region(hostStart, hostEnd))) {
+                return true;
+            }
+        }
+        return false;
     }
 }
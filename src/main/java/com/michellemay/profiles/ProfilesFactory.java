@@ -20,6 +20,7 @@ import com.michellemay.mappings.Mapping;
 import com.michellemay.mappings.MappingsFactory;
 import com.michellemay.matchers.Matcher;
 import com.michellemay.matchers.MatchersFactory;
+import com.michellemay.regex.RegexSafety;
 
 import com.google.common.collect.Lists;
 
@@ -38,6 +39,8 @@ public class ProfilesFactory {
 
     private HashMap<String, Profile> profilesByName;
     private List<Profile> profiles;
+    private DomainIndex domainIndex;
+    private List<Optional<Profile>> indexedProfiles;
 
     public Map<String, Profile> getProfilesByName() { return profilesByName; }
     public List<Profile> getProfiles() { return profiles; }
@@ -53,6 +56,11 @@ public class ProfilesFactory {
                 addProfile(createProfile(profileConfig));
             }
         }
+
+        // Compile all domain patterns in a single index
+        this.domainIndex = new DomainIndex(profiles);
+        this.indexedProfiles = Lists.newArrayList();
+        profiles.forEach((p) -> indexedProfiles.add(Optional.of(p)));
     }
 
     private void addProfile(Profile profile) {
@@ -84,7 +92,12 @@ public class ProfilesFactory {
         ArrayList<Pattern> domains = Lists.newArrayList();
         profileConfig.domains.forEach((patternStr) -> {
             // Domain names are case insensitive.
-            domains.add(Pattern.compile(patternStr, Pattern.CASE_INSENSITIVE));
+            Pattern pattern = Pattern.compile(patternStr, Pattern.CASE_INSENSITIVE);
+            String unsafe = RegexSafety.check(pattern);
+            if (unsafe != null) {
+                throw new IllegalArgumentException("Profile domain '" + patternStr + "' is unsafe: " + unsafe + "!");
+            }
+            domains.add(pattern);
         });
 
         ArrayList<Matcher> matchers = Lists.newArrayList();
@@ -117,7 +130,12 @@ public class ProfilesFactory {
         return new Profile(profileConfig.name).withDomains(domains).withMatchers(matchers);
     }
 
-    public Optional<Profile> findProfileForHost(String host) {
-        return profiles.stream().filter((p) -> p.match(host)).findFirst();
+    public Optional<Profile> findProfileForHost(CharSequence host) {
+        return findProfileForHost(host, 0, host.length());
+    }
+
+    public Optional<Profile> findProfileForHost(CharSequence input, int hostStart, int hostEnd) {
+        int profileIdx = domainIndex.find(input, hostStart, hostEnd);
+        return profileIdx >= 0 ? indexedProfiles.get(profileIdx) : Optional.empty();
     }
 }
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.regex;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Aho-Corasick automaton finding which of several literals occur in an input, in a single pass.
+ *
+ * <p>Literals and input are compared after ASCII folding (see {@link RequiredLiteral#fold(char)}). The
+ * automaton is compiled to a dense transition table over the characters used by the literals.</p>
+ *
+ * @author Michel Lemay
+ */
+public final class AhoCorasick {
+    private final int literalCount;
+    // Character class of ASCII characters, 0 for characters absent from literals.
+    private final int[] asciiClasses = new int[128];
+    // Sorted non ASCII characters used by literals, their class is their index + 1 + ASCII classes.
+    private final char[] otherChars;
+    private final int otherBase;
+    private final int classCount;
+    private final int[] transitions;
+    private final int[][] outputs;
+
+    /**
+     * Instantiates a new Aho-Corasick automaton.
+     *
+     * @param literals the literals, their index is their id
+     */
+    public AhoCorasick(List<String> literals) {
+        this.literalCount = literals.size();
+
+        // Alphabet
+        TreeSet<Character> others = new TreeSet<Character>();
+        int asciiClassCount = 1;
+        for (String literal : literals) {
+            if (literal.isEmpty()) {
+                throw new IllegalArgumentException("Empty literal!");
+            }
+            for (int i = 0; i < literal.length(); i++) {
+                char c = RequiredLiteral.fold(literal.charAt(i));
+                if (c < 128) {
+                    if (asciiClasses[c] == 0) {
+                        asciiClasses[c] = asciiClassCount++;
+                    }
+                } else {
+                    others.add(c);
+                }
+            }
+        }
+        for (char c = 'A'; c <= 'Z'; c++) {
+            asciiClasses[c] = asciiClasses[RequiredLiteral.fold(c)];
+        }
+        this.otherChars = new char[others.size()];
+        int n = 0;
+        for (char c : others) {
+            otherChars[n++] = c;
+        }
+        this.otherBase = asciiClassCount;
+        this.classCount = asciiClassCount + otherChars.length;
+
+        // Trie
+        List<int[]> trie = new ArrayList<int[]>();
+        List<List<Integer>> trieOutputs = new ArrayList<List<Integer>>();
+        trie.add(newState());
+        trieOutputs.add(new ArrayList<Integer>());
+        for (int id = 0; id < literals.size(); id++) {
+            String literal = literals.get(id);
+            int state = 0;
+            for (int i = 0; i < literal.length(); i++) {
+                int cls = classOf(RequiredLiteral.fold(literal.charAt(i)));
+                if (trie.get(state)[cls] < 0) {
+                    trie.get(state)[cls] = trie.size();
+                    trie.add(newState());
+                    trieOutputs.add(new ArrayList<Integer>());
+                }
+                state = trie.get(state)[cls];
+            }
+            trieOutputs.get(state).add(id);
+        }
+
+        // Failure links, breadth first, turning the trie in a complete transition table.
+        int states = trie.size();
+        this.transitions = new int[states * classCount];
+        this.outputs = new int[states][];
+        int[] failures = new int[states];
+        ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+        for (int cls = 0; cls < classCount; cls++) {
+            int child = trie.get(0)[cls];
+            transitions[cls] = child < 0 ? 0 : child;
+            if (child > 0) {
+                failures[child] = 0;
+                queue.add(child);
+            }
+        }
+        outputs[0] = toArray(trieOutputs.get(0));
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            List<Integer> stateOutputs = trieOutputs.get(state);
+            for (int id : outputs[failures[state]]) {
+                stateOutputs.add(id);
+            }
+            outputs[state] = toArray(stateOutputs);
+            for (int cls = 0; cls < classCount; cls++) {
+                int child = trie.get(state)[cls];
+                int fallback = transitions[failures[state] * classCount + cls];
+                if (child < 0) {
+                    transitions[state * classCount + cls] = fallback;
+                } else {
+                    transitions[state * classCount + cls] = child;
+                    failures[child] = fallback;
+                    queue.add(child);
+                }
+            }
+        }
+    }
+
+    private int[] newState() {
+        int[] state = new int[classCount];
+        Arrays.fill(state, -1);
+        return state;
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        return values.stream().mapToInt(Integer::intValue).distinct().toArray();
+    }
+
+    private int classOf(char c) {
+        if (c < 128) {
+            return asciiClasses[c];
+        }
+        int idx = Arrays.binarySearch(otherChars, c);
+        return idx >= 0 ? otherBase + idx : 0;
+    }
+
+    /**
+     * Gets number of literals.
+     *
+     * @return the number of literals
+     */
+    public int size() { return literalCount; }
+
+    /**
+     * Allocate a set of found literals, for {@link #scan(CharSequence, int, int, long[])}.
+     *
+     * @return the empty set
+     */
+    public long[] newFoundSet() { return new long[(literalCount + 63) >>> 6]; }
+
+    /**
+     * Is a literal in a found set.
+     *
+     * @param found the found set
+     * @param id the literal id
+     * @return true if found
+     */
+    public static boolean isFound(long[] found, int id) { return (found[id >>> 6] & (1L << id)) != 0; }
+
+    /**
+     * Find the literals occurring in a region.
+     *
+     * @param input the input
+     * @param start the region start offset
+     * @param end the region end offset
+     * @param found receives the ids of the literals found (bits are only set)
+     */
+    public void scan(CharSequence input, int start, int end, long[] found) {
+        int state = 0;
+        for (int i = start; i < end; i++) {
+            char c = input.charAt(i);
+            state = transitions[state * classCount + (c < 128 ? asciiClasses[c] : classOf(c))];
+            for (int id : outputs[state]) {
+                found[id >>> 6] |= 1L << id;
+            }
+        }
+    }
+}
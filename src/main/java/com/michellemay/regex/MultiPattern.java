@@ -0,0 +1,469 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.regex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Several regexes compiled in a single automaton, matched against a whole region in one pass.
+ *
+ * <p>The automaton is simulated as a Pike VM: threads are kept in priority order (the order a backtracking
+ * engine would try them) and deduplicated by program counter, so the first thread reaching the end of the
+ * region for a given pattern carries the same capture as java.util.regex {@code matches()} would report.</p>
+ *
+ * <p>Only a subset of the syntax is supported (see {@link #isSupported(int)}). Callers are expected to keep
+ * using java.util.regex for unsupported patterns.</p>
+ *
+ * @author Michel Lemay
+ */
+public final class MultiPattern {
+    /**
+     * Reported for patterns not matching, or matching without the capturing group.
+     */
+    public static final long NO_MATCH = -1L;
+
+    // Keep expanded counted repeats within reason.
+    private static final int MAX_PATTERN_SIZE = 2000;
+
+    private static final int CHAR = 0;
+    private static final int CHAR_FOLDED = 1;
+    private static final int ANY = 2;
+    private static final int CLASS = 3;
+    private static final int CLASS_FOLDED = 4;
+    private static final int SPLIT = 5;
+    private static final int JMP = 6;
+    private static final int SAVE = 7;
+    private static final int MATCH = 8;
+
+    private final int[] ops;
+    private final int[] args;
+    private final int[] args2;
+    private final RegexNode.CharSet[] sets;
+    private final int[] entries;
+    private final ThreadLocal<Scratch> scratches;
+
+    private MultiPattern(Builder builder, int[] entries) {
+        this.ops = builder.ops.stream().mapToInt(Integer::intValue).toArray();
+        this.args = builder.args.stream().mapToInt(Integer::intValue).toArray();
+        this.args2 = builder.args2.stream().mapToInt(Integer::intValue).toArray();
+        this.sets = builder.sets.toArray(new RegexNode.CharSet[0]);
+        this.entries = entries;
+        this.scratches = ThreadLocal.withInitial(() -> new Scratch(ops.length, entries.length));
+    }
+
+    /**
+     * Compile patterns in a single automaton.
+     *
+     * @param patterns the patterns, in priority order
+     * @param groupName the name of the capturing group to report
+     * @return the multi pattern
+     */
+    public static MultiPattern compile(List<Pattern> patterns, String groupName) {
+        Builder builder = new Builder(groupName);
+        int[] entries = new int[patterns.size()];
+        for (int i = 0; i < patterns.size(); i++) {
+            entries[i] = builder.add(patterns.get(i), i);
+        }
+        return new MultiPattern(builder, entries);
+    }
+
+    /**
+     * Gets number of patterns.
+     *
+     * @return the number of patterns
+     */
+    public int size() { return entries.length; }
+
+    /**
+     * Is pattern compiled in the automaton.
+     *
+     * @param patternIdx the pattern index
+     * @return true if supported, false if the pattern must be matched with java.util.regex
+     */
+    public boolean isSupported(int patternIdx) { return entries[patternIdx] >= 0; }
+
+    /**
+     * Match all supported patterns against the whole region.
+     *
+     * @param input the input
+     * @param start the region start offset
+     * @param end the region end offset
+     * @param spans receives, for each pattern, the capture span packed as (start &lt;&lt; 32 | end) or {@link #NO_MATCH}
+     */
+    public void match(CharSequence input, int start, int end, long[] spans) {
+        match(input, start, end, spans, 0);
+    }
+
+    /**
+     * Match all supported patterns against the whole region.
+     *
+     * @param input the input
+     * @param start the region start offset
+     * @param end the region end offset
+     * @param spans receives, from offset, the capture span of each pattern packed as (start &lt;&lt; 32 | end) or {@link #NO_MATCH}
+     * @param offset the offset of the first pattern span
+     */
+    public void match(CharSequence input, int start, int end, long[] spans, int offset) {
+        Arrays.fill(spans, offset, offset + entries.length, NO_MATCH);
+        Scratch scratch = scratches.get();
+        ThreadList current = scratch.current;
+        ThreadList next = scratch.next;
+
+        current.clear();
+        scratch.newGeneration();
+        for (int entry : entries) {
+            if (entry >= 0) {
+                addThread(scratch, current, entry, -1, -1, start);
+            }
+        }
+
+        // Step by code point, like java.util.regex does for '.' and negated classes.
+        for (int pos = start, width; pos < end && current.size > 0; pos += width) {
+            int c = Character.codePointAt(input, pos);
+            width = Character.charCount(c);
+            if (pos + width > end) {
+                // Surrogate pair straddling the end of the region
+                current.clear();
+                break;
+            }
+            next.clear();
+            scratch.newGeneration();
+            for (int t = 0; t < current.size; t++) {
+                int pc = current.pcs[t];
+                boolean step;
+                switch (ops[pc]) {
+                    case CHAR:
+                        step = c == args[pc];
+                        break;
+                    case CHAR_FOLDED:
+                        step = c <= Character.MAX_VALUE && RegexNode.toLower((char)c) == args[pc];
+                        break;
+                    case ANY:
+                        step = c != '\n' && c != '\r' && c != '\u0085' && c != '\u2028' && c != '\u2029';
+                        break;
+                    case CLASS:
+                        step = sets[args[pc]].matches(c, false);
+                        break;
+                    case CLASS_FOLDED:
+                        step = sets[args[pc]].matches(c, true);
+                        break;
+                    default:
+                        // MATCH before the end of the region
+                        step = false;
+                        break;
+                }
+                if (step) {
+                    addThread(scratch, next, pc + 1, current.starts[t], current.ends[t], pos + width);
+                }
+            }
+            ThreadList swap = current;
+            current = next;
+            next = swap;
+        }
+
+        // At the end of the region, the first thread of each pattern in priority order wins.
+        boolean[] decided = scratch.decided;
+        Arrays.fill(decided, false);
+        for (int t = 0; t < current.size; t++) {
+            int pc = current.pcs[t];
+            if (ops[pc] == MATCH && !decided[args[pc]]) {
+                decided[args[pc]] = true;
+                if (current.starts[t] >= 0 && current.ends[t] >= 0) {
+                    spans[offset + args[pc]] = ((long)current.starts[t] << 32) | (current.ends[t] & 0xFFFFFFFFL);
+                }
+            }
+        }
+        scratch.current = current;
+        scratch.next = next;
+    }
+
+    /**
+     * Follow epsilon transitions depth first, in priority order.
+     */
+    private void addThread(Scratch scratch, ThreadList list, int pc, int captureStart, int captureEnd, int pos) {
+        int top = scratch.push(0, pc, captureStart, captureEnd);
+        while (top > 0) {
+            top--;
+            pc = scratch.stackPcs[top];
+            captureStart = scratch.stackStarts[top];
+            captureEnd = scratch.stackEnds[top];
+            if (scratch.visited[pc] == scratch.generation) {
+                continue;
+            }
+            scratch.visited[pc] = scratch.generation;
+            switch (ops[pc]) {
+                case JMP:
+                    top = scratch.push(top, args[pc], captureStart, captureEnd);
+                    break;
+                case SPLIT:
+                    top = scratch.push(top, args2[pc], captureStart, captureEnd);
+                    top = scratch.push(top, args[pc], captureStart, captureEnd);
+                    break;
+                case SAVE:
+                    if (args[pc] == 0) {
+                        top = scratch.push(top, pc + 1, pos, captureEnd);
+                    } else {
+                        top = scratch.push(top, pc + 1, captureStart, pos);
+                    }
+                    break;
+                default:
+                    list.add(pc, captureStart, captureEnd);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Per thread matching state.
+     */
+    private static final class Scratch {
+        ThreadList current;
+        ThreadList next;
+        final int[] visited;
+        int generation;
+        int[] stackPcs;
+        int[] stackStarts;
+        int[] stackEnds;
+        final boolean[] decided;
+
+        Scratch(int programSize, int patterns) {
+            this.current = new ThreadList(programSize);
+            this.next = new ThreadList(programSize);
+            this.visited = new int[programSize];
+            this.stackPcs = new int[16];
+            this.stackStarts = new int[16];
+            this.stackEnds = new int[16];
+            this.decided = new boolean[patterns];
+        }
+
+        void newGeneration() {
+            if (++generation == Integer.MAX_VALUE) {
+                Arrays.fill(visited, 0);
+                generation = 1;
+            }
+        }
+
+        int push(int top, int pc, int start, int end) {
+            if (top == stackPcs.length) {
+                stackPcs = Arrays.copyOf(stackPcs, top * 2);
+                stackStarts = Arrays.copyOf(stackStarts, top * 2);
+                stackEnds = Arrays.copyOf(stackEnds, top * 2);
+            }
+            stackPcs[top] = pc;
+            stackStarts[top] = start;
+            stackEnds[top] = end;
+            return top + 1;
+        }
+    }
+
+    /**
+     * Threads in priority order. At most one thread per program counter.
+     */
+    private static final class ThreadList {
+        final int[] pcs;
+        final int[] starts;
+        final int[] ends;
+        int size;
+
+        ThreadList(int programSize) {
+            this.pcs = new int[programSize];
+            this.starts = new int[programSize];
+            this.ends = new int[programSize];
+        }
+
+        void clear() { size = 0; }
+
+        void add(int pc, int start, int end) {
+            pcs[size] = pc;
+            starts[size] = start;
+            ends[size] = end;
+            size++;
+        }
+    }
+
+    /**
+     * Program builder.
+     */
+    private static final class Builder {
+        private final String groupName;
+        final List<Integer> ops = new ArrayList<Integer>();
+        final List<Integer> args = new ArrayList<Integer>();
+        final List<Integer> args2 = new ArrayList<Integer>();
+        final List<RegexNode.CharSet> sets = new ArrayList<RegexNode.CharSet>();
+        private int entry;
+        private boolean folded;
+        private boolean hasGroup;
+
+        Builder(String groupName) {
+            this.groupName = groupName;
+        }
+
+        /**
+         * Add a pattern to the program.
+         *
+         * @return the pattern entry point or -1 if not supported
+         */
+        int add(Pattern pattern, int patternIdx) {
+            if ((pattern.flags() & ~Pattern.CASE_INSENSITIVE) != 0) {
+                return -1;
+            }
+            RegexNode node = RegexParser.parse(pattern.pattern());
+            if (node == null || !isSafe(node)) {
+                return -1;
+            }
+
+            entry = ops.size();
+            int setsSize = sets.size();
+            folded = (pattern.flags() & Pattern.CASE_INSENSITIVE) != 0;
+            hasGroup = false;
+            emit(node);
+            emit(MATCH, patternIdx, 0);
+            if (!hasGroup || ops.size() - entry > MAX_PATTERN_SIZE) {
+                // Roll back
+                truncate(ops, entry);
+                truncate(args, entry);
+                truncate(args2, entry);
+                truncate(sets, setsSize);
+                return -1;
+            }
+            return entry;
+        }
+
+        private static void truncate(List<?> list, int size) {
+            list.subList(size, list.size()).clear();
+        }
+
+        /**
+         * Repeating a sub-expression that can match the empty string has engine specific semantics: leave these
+         * to java.util.regex.
+         */
+        private static boolean isSafe(RegexNode node) {
+            if (node instanceof RegexNode.Concat) {
+                return ((RegexNode.Concat)node).nodes.stream().allMatch(Builder::isSafe);
+            } else if (node instanceof RegexNode.Alt) {
+                return ((RegexNode.Alt)node).nodes.stream().allMatch(Builder::isSafe);
+            } else if (node instanceof RegexNode.Group) {
+                return isSafe(((RegexNode.Group)node).node);
+            } else if (node instanceof RegexNode.Repeat) {
+                RegexNode.Repeat repeat = (RegexNode.Repeat)node;
+                return isSafe(repeat.node) && (repeat.max == 1 || !isNullable(repeat.node));
+            }
+            return true;
+        }
+
+        private static boolean isNullable(RegexNode node) {
+            if (node instanceof RegexNode.Concat) {
+                return ((RegexNode.Concat)node).nodes.stream().allMatch(Builder::isNullable);
+            } else if (node instanceof RegexNode.Alt) {
+                return ((RegexNode.Alt)node).nodes.stream().anyMatch(Builder::isNullable);
+            } else if (node instanceof RegexNode.Group) {
+                return isNullable(((RegexNode.Group)node).node);
+            } else if (node instanceof RegexNode.Repeat) {
+                return ((RegexNode.Repeat)node).min == 0 || isNullable(((RegexNode.Repeat)node).node);
+            }
+            return node instanceof RegexNode.Anchor;
+        }
+
+        private int emit(int op, int arg, int arg2) {
+            ops.add(op);
+            args.add(arg);
+            args2.add(arg2);
+            return ops.size() - 1;
+        }
+
+        private void emit(RegexNode node) {
+            if (ops.size() - entry > MAX_PATTERN_SIZE) {
+                // Stop early on huge counted repeats, the pattern is rolled back anyway.
+                return;
+            }
+            if (node instanceof RegexNode.Char) {
+                char c = ((RegexNode.Char)node).c;
+                if (folded && c < 128) {
+                    emit(CHAR_FOLDED, RegexNode.toLower(c), 0);
+                } else {
+                    emit(CHAR, c, 0);
+                }
+            } else if (node instanceof RegexNode.Any) {
+                emit(ANY, 0, 0);
+            } else if (node instanceof RegexNode.Class) {
+                sets.add(((RegexNode.Class)node).set);
+                emit(folded ? CLASS_FOLDED : CLASS, sets.size() - 1, 0);
+            } else if (node instanceof RegexNode.Concat) {
+                ((RegexNode.Concat)node).nodes.forEach(this::emit);
+            } else if (node instanceof RegexNode.Alt) {
+                emitAlt(((RegexNode.Alt)node).nodes);
+            } else if (node instanceof RegexNode.Repeat) {
+                emitRepeat((RegexNode.Repeat)node);
+            } else if (node instanceof RegexNode.Group) {
+                RegexNode.Group group = (RegexNode.Group)node;
+                boolean capture = groupName.equals(group.name);
+                hasGroup |= capture;
+                if (capture) {
+                    emit(SAVE, 0, 0);
+                }
+                emit(group.node);
+                if (capture) {
+                    emit(SAVE, 1, 0);
+                }
+            }
+            // Anchors are no-ops: only accepted at the very beginning or end of patterns.
+        }
+
+        private void emitAlt(List<RegexNode> alternatives) {
+            List<Integer> jumps = new ArrayList<Integer>();
+            for (int i = 0; i < alternatives.size() - 1; i++) {
+                int split = emit(SPLIT, 0, 0);
+                args.set(split, ops.size());
+                emit(alternatives.get(i));
+                jumps.add(emit(JMP, 0, 0));
+                args2.set(split, ops.size());
+            }
+            emit(alternatives.get(alternatives.size() - 1));
+            jumps.forEach((jump) -> args.set(jump, ops.size()));
+        }
+
+        private void emitRepeat(RegexNode.Repeat repeat) {
+            for (int i = 0; i < repeat.min; i++) {
+                emit(repeat.node);
+            }
+            if (repeat.max < 0) {
+                // loop: split(body, out); body; jmp loop
+                int split = emit(SPLIT, 0, 0);
+                emit(repeat.node);
+                emit(JMP, split, 0);
+                setSplit(split, split + 1, ops.size(), repeat.greedy);
+            } else {
+                // x{0,3} is (x(x(x)?)?)?
+                List<Integer> splits = new ArrayList<Integer>();
+                for (int i = repeat.min; i < repeat.max; i++) {
+                    int split = emit(SPLIT, 0, 0);
+                    splits.add(split);
+                    emit(repeat.node);
+                }
+                splits.forEach((split) -> setSplit(split, split + 1, ops.size(), repeat.greedy));
+            }
+        }
+
+        private void setSplit(int split, int body, int out, boolean greedy) {
+            args.set(split, greedy ? body : out);
+            args2.set(split, greedy ? out : body);
+        }
+    }
+}
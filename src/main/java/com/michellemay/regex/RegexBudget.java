@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.regex;
+
+/**
+ * Per thread budget of characters that java.util.regex matchers may read, bounding backtracking cost.
+ *
+ * <p>Detectors reset the budget for each url. Regexes are then matched against a view of the input
+ * counting character reads: once the budget is spent, matching is aborted and reported as no match.
+ * Reads are shared by all regexes executed for the url, giving a hard upper bound on its detection cost.
+ * Outside of detectors, the budget is unlimited.</p>
+ *
+ * @author Michel Lemay
+ */
+public final class RegexBudget {
+    private static final ThreadLocal<RegexBudget> BUDGETS = ThreadLocal.withInitial(RegexBudget::new);
+    private static final Exceeded EXCEEDED = new Exceeded();
+
+    private static final class Exceeded extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Exceeded() { super("Regex budget exceeded", null, false, false); }
+    }
+
+    private long remaining;
+    private boolean limited;
+    private long aborts;
+    private final Budgeted budgeted = new Budgeted();
+
+    private RegexBudget() {
+    }
+
+    /**
+     * Gets the budget of the current thread.
+     *
+     * @return the regex budget
+     */
+    public static RegexBudget get() { return BUDGETS.get(); }
+
+    /**
+     * Reset budget and aborts count.
+     *
+     * @param maxReads the maximum number of characters read, 0 for unlimited
+     */
+    public void reset(long maxReads) {
+        if (maxReads < 0) {
+            throw new IllegalArgumentException("Regex budget must be positive!");
+        }
+        this.remaining = maxReads;
+        this.limited = maxReads > 0;
+        this.aborts = 0;
+    }
+
+    /**
+     * Gets remaining number of characters reads.
+     *
+     * @return the remaining reads or Long.MAX_VALUE if unlimited
+     */
+    public long getRemaining() { return limited ? Math.max(remaining, 0) : Long.MAX_VALUE; }
+
+    /**
+     * Gets number of aborted matches since last reset.
+     *
+     * @return the aborts
+     */
+    public long getAborts() { return aborts; }
+
+    /**
+     * Wrap an input so that its character reads are charged to this budget. The view is reused by the next
+     * call: matchers over the previous view must be done.
+     *
+     * @param input the input
+     * @return the budgeted input, or input itself if unlimited
+     */
+    public CharSequence wrap(CharSequence input) {
+        if (!limited || input == budgeted) {
+            return input;
+        }
+        budgeted.input = input;
+        return budgeted;
+    }
+
+    /**
+     * Match a whole region, aborting when the budget is spent.
+     *
+     * @param matcher the matcher over a {@link #wrap(CharSequence) wrapped} input
+     * @return true if the region matches, false if not or aborted
+     */
+    public boolean matches(java.util.regex.Matcher matcher) {
+        if (limited && remaining <= 0) {
+            aborts++;
+            return false;
+        }
+        try {
+            return matcher.matches();
+        } catch (Exceeded e) {
+            aborts++;
+            return false;
+        }
+    }
+
+    private final class Budgeted implements CharSequence {
+        private CharSequence input;
+
+        @Override
+        public char charAt(int index) {
+            if (--remaining < 0) {
+                throw EXCEEDED;
+            }
+            return input.charAt(index);
+        }
+
+        @Override
+        public int length() { return input.length(); }
+
+        @Override
+        public CharSequence subSequence(int start, int end) { return input.subSequence(start, end); }
+
+        @Override
+        public String toString() { return input.toString(); }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.regex;
+
+import java.util.List;
+
+/**
+ * Regex syntax tree, as produced by {@link RegexParser}.
+ *
+ * @author Michel Lemay
+ */
+abstract class RegexNode {
+    /**
+     * Literal character.
+     */
+    static final class Char extends RegexNode {
+        final char c;
+        Char(char c) { this.c = c; }
+    }
+
+    /**
+     * Any character but line terminators ('.').
+     */
+    static final class Any extends RegexNode {
+    }
+
+    /**
+     * Character class.
+     */
+    static final class Class extends RegexNode {
+        final CharSet set;
+        Class(CharSet set) { this.set = set; }
+    }
+
+    /**
+     * Sequence of nodes.
+     */
+    static final class Concat extends RegexNode {
+        final List<RegexNode> nodes;
+        Concat(List<RegexNode> nodes) { this.nodes = nodes; }
+    }
+
+    /**
+     * Alternatives, in priority order.
+     */
+    static final class Alt extends RegexNode {
+        final List<RegexNode> nodes;
+        Alt(List<RegexNode> nodes) { this.nodes = nodes; }
+    }
+
+    /**
+     * Repetition of a node. max = -1 means unbounded.
+     */
+    static final class Repeat extends RegexNode {
+        final RegexNode node;
+        final int min;
+        final int max;
+        final boolean greedy;
+        Repeat(RegexNode node, int min, int max, boolean greedy) {
+            this.node = node;
+            this.min = min;
+            this.max = max;
+            this.greedy = greedy;
+        }
+    }
+
+    /**
+     * Group, capturing or not.
+     */
+    static final class Group extends RegexNode {
+        final RegexNode node;
+        final String name;
+        Group(RegexNode node, String name) {
+            this.node = node;
+            this.name = name;
+        }
+    }
+
+    /**
+     * Beginning ('^') or end ('$') of input.
+     */
+    static final class Anchor extends RegexNode {
+        final boolean start;
+        Anchor(boolean start) { this.start = start; }
+    }
+
+    /**
+     * Set of characters with java.util.regex semantics (ASCII only case insensitiveness).
+     */
+    static final class CharSet {
+        private final char[] ranges;
+        private final CharSet[] predefined;
+        private final boolean negated;
+
+        /**
+         * @param ranges pairs of inclusive bounds
+         * @param predefined predefined classes (ex: \w), not affected by case insensitiveness
+         * @param negated the negated
+         */
+        CharSet(char[] ranges, CharSet[] predefined, boolean negated) {
+            this.ranges = ranges;
+            this.predefined = predefined;
+            this.negated = negated;
+        }
+
+        boolean matches(char c, boolean caseInsensitive) {
+            boolean found = inRanges(c);
+            if (!found && caseInsensitive && c < 128) {
+                found = inRanges(toLower(c)) || inRanges(toUpper(c));
+            }
+            for (int i = 0; !found && i < predefined.length; i++) {
+                found = predefined[i].matches(c, false);
+            }
+            return found != negated;
+        }
+
+        /**
+         * Match a code point. Ranges never include surrogates, so supplementary code points only match negated sets.
+         */
+        boolean matches(int codePoint, boolean caseInsensitive) {
+            if (codePoint <= Character.MAX_VALUE) {
+                return matches((char)codePoint, caseInsensitive);
+            }
+            boolean found = false;
+            for (int i = 0; !found && i < predefined.length; i++) {
+                found = predefined[i].matches(codePoint, false);
+            }
+            return found != negated;
+        }
+
+        private boolean inRanges(char c) {
+            for (int i = 0; i < ranges.length; i += 2) {
+                if (c >= ranges[i] && c <= ranges[i + 1]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    static char toLower(char c) {
+        return c >= 'A' && c <= 'Z' ? (char)(c + ('a' - 'A')) : c;
+    }
+
+    static char toUpper(char c) {
+        return c >= 'a' && c <= 'z' ? (char)(c - ('a' - 'A')) : c;
+    }
+}
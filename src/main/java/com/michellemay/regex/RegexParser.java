@@ -0,0 +1,401 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.regex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parser for the subset of java.util.regex syntax supported by {@link MultiPattern}.
+ *
+ * <p>Supported: literals, escapes, '.', character classes with ranges and predefined classes (\d, \w, \s),
+ * capturing, named and non-capturing groups, alternation, greedy and lazy quantifiers, leading '^' and
+ * trailing '$'. Anything else (backreferences, lookarounds, inline flags, possessive quantifiers,
+ * nested classes, boundaries, quoting, unicode properties...) is reported as unsupported.</p>
+ *
+ * <p>Patterns are expected to be valid: callers compile them with java.util.regex first.</p>
+ *
+ * @author Michel Lemay
+ */
+final class RegexParser {
+    private static final RegexNode.CharSet DIGITS = new RegexNode.CharSet(new char[] { '0', '9' }, new RegexNode.CharSet[0], false);
+    private static final RegexNode.CharSet WORDS = new RegexNode.CharSet(new char[] { 'a', 'z', 'A', 'Z', '_', '_', '0', '9' }, new RegexNode.CharSet[0], false);
+    private static final RegexNode.CharSet SPACES = new RegexNode.CharSet(new char[] { ' ', ' ', '\t', '\r', '\u000B', '\u000C' }, new RegexNode.CharSet[0], false);
+
+    private static final class UnsupportedException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedException() { super(null, null, false, false); }
+    }
+
+    private final String regex;
+    private int pos;
+
+    private RegexParser(String regex) {
+        this.regex = regex;
+    }
+
+    /**
+     * Parse a regex.
+     *
+     * @param regex the regex
+     * @return the syntax tree or null if the regex uses unsupported constructs
+     */
+    static RegexNode parse(String regex) {
+        if (hasSurrogate(regex, 0, regex.length())) {
+            // java.util.regex reads surrogate pairs of the pattern as code points
+            return null;
+        }
+        RegexParser parser = new RegexParser(regex);
+        try {
+            RegexNode node = parser.parseAlt();
+            if (parser.pos != regex.length() || !checkAnchors(node)) {
+                return null;
+            }
+            return node;
+        } catch (UnsupportedException e) {
+            return null;
+        }
+    }
+
+    private static boolean hasSurrogate(CharSequence s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (Character.isSurrogate(s.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Only accept anchors where they are no-ops for a whole input match: '^' first and '$' last.
+     */
+    private static boolean checkAnchors(RegexNode node) {
+        List<RegexNode> nodes = node instanceof RegexNode.Concat ? ((RegexNode.Concat)node).nodes : java.util.Collections.singletonList(node);
+        for (int i = 0; i < nodes.size(); i++) {
+            RegexNode n = nodes.get(i);
+            if (n instanceof RegexNode.Anchor) {
+                boolean start = ((RegexNode.Anchor)n).start;
+                if ((start && i != 0) || (!start && i != nodes.size() - 1)) {
+                    return false;
+                }
+            } else if (containsAnchor(n)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean containsAnchor(RegexNode node) {
+        if (node instanceof RegexNode.Anchor) {
+            return true;
+        } else if (node instanceof RegexNode.Concat) {
+            return ((RegexNode.Concat)node).nodes.stream().anyMatch(RegexParser::containsAnchor);
+        } else if (node instanceof RegexNode.Alt) {
+            return ((RegexNode.Alt)node).nodes.stream().anyMatch(RegexParser::containsAnchor);
+        } else if (node instanceof RegexNode.Repeat) {
+            return containsAnchor(((RegexNode.Repeat)node).node);
+        } else if (node instanceof RegexNode.Group) {
+            return containsAnchor(((RegexNode.Group)node).node);
+        }
+        return false;
+    }
+
+    private boolean more() {
+        return pos < regex.length();
+    }
+
+    private char peek() {
+        return regex.charAt(pos);
+    }
+
+    private RegexNode parseAlt() throws UnsupportedException {
+        List<RegexNode> alternatives = new ArrayList<RegexNode>();
+        alternatives.add(parseConcat());
+        while (more() && peek() == '|') {
+            pos++;
+            alternatives.add(parseConcat());
+        }
+        return alternatives.size() == 1 ? alternatives.get(0) : new RegexNode.Alt(alternatives);
+    }
+
+    private RegexNode parseConcat() throws UnsupportedException {
+        List<RegexNode> nodes = new ArrayList<RegexNode>();
+        while (more() && peek() != '|' && peek() != ')') {
+            nodes.add(parseRepeat());
+        }
+        return nodes.size() == 1 ? nodes.get(0) : new RegexNode.Concat(nodes);
+    }
+
+    private RegexNode parseRepeat() throws UnsupportedException {
+        RegexNode atom = parseAtom();
+        if (!more()) {
+            return atom;
+        }
+
+        int min;
+        int max;
+        char c = peek();
+        if (c == '*') {
+            min = 0;
+            max = -1;
+            pos++;
+        } else if (c == '+') {
+            min = 1;
+            max = -1;
+            pos++;
+        } else if (c == '?') {
+            min = 0;
+            max = 1;
+            pos++;
+        } else if (c == '{') {
+            pos++;
+            min = parseInt();
+            max = min;
+            if (more() && peek() == ',') {
+                pos++;
+                max = more() && peek() == '}' ? -1 : parseInt();
+            }
+            expect('}');
+        } else {
+            return atom;
+        }
+
+        if (atom instanceof RegexNode.Anchor) {
+            throw new UnsupportedException();
+        }
+
+        boolean greedy = true;
+        if (more() && peek() == '?') {
+            greedy = false;
+            pos++;
+        } else if (more() && peek() == '+') {
+            // Possessive
+            throw new UnsupportedException();
+        }
+        if (more() && "*+?{".indexOf(peek()) >= 0) {
+            throw new UnsupportedException();
+        }
+        return new RegexNode.Repeat(atom, min, max, greedy);
+    }
+
+    private int parseInt() throws UnsupportedException {
+        int start = pos;
+        while (more() && peek() >= '0' && peek() <= '9') {
+            pos++;
+        }
+        if (start == pos || pos - start > 6) {
+            throw new UnsupportedException();
+        }
+        return Integer.parseInt(regex.substring(start, pos));
+    }
+
+    private void expect(char c) throws UnsupportedException {
+        if (!more() || peek() != c) {
+            throw new UnsupportedException();
+        }
+        pos++;
+    }
+
+    private RegexNode parseAtom() throws UnsupportedException {
+        char c = regex.charAt(pos++);
+        switch (c) {
+            case '(':
+                return parseGroup();
+            case '[':
+                return new RegexNode.Class(parseClass());
+            case '.':
+                return new RegexNode.Any();
+            case '^':
+                return new RegexNode.Anchor(true);
+            case '$':
+                return new RegexNode.Anchor(false);
+            case '\\':
+                RegexNode.CharSet predefined = parsePredefined();
+                if (predefined != null) {
+                    return new RegexNode.Class(predefined);
+                }
+                return new RegexNode.Char(parseEscape());
+            case '*':
+            case '+':
+            case '?':
+            case '{':
+                throw new UnsupportedException();
+            default:
+                return new RegexNode.Char(c);
+        }
+    }
+
+    private RegexNode parseGroup() throws UnsupportedException {
+        String name = null;
+        if (more() && peek() == '?') {
+            pos++;
+            if (more() && peek() == ':') {
+                pos++;
+            } else if (more() && peek() == '<' && pos + 1 < regex.length() && Character.isLetter(regex.charAt(pos + 1))) {
+                int end = regex.indexOf('>', pos);
+                if (end < 0) {
+                    throw new UnsupportedException();
+                }
+                name = regex.substring(pos + 1, end);
+                pos = end + 1;
+            } else {
+                // Lookarounds, atomic groups, inline flags
+                throw new UnsupportedException();
+            }
+        } else {
+            name = "";
+        }
+        RegexNode node = parseAlt();
+        expect(')');
+        return new RegexNode.Group(node, name);
+    }
+
+    private RegexNode.CharSet parseClass() throws UnsupportedException {
+        boolean negated = false;
+        if (more() && peek() == '^') {
+            negated = true;
+            pos++;
+        }
+        if (more() && peek() == ']') {
+            throw new UnsupportedException();
+        }
+
+        StringBuilder ranges = new StringBuilder();
+        List<RegexNode.CharSet> predefined = new ArrayList<RegexNode.CharSet>();
+        while (true) {
+            if (!more()) {
+                throw new UnsupportedException();
+            }
+            char c = regex.charAt(pos++);
+            if (c == ']') {
+                break;
+            }
+            if (c == '[' || (c == '&' && more() && peek() == '&')) {
+                // Nested classes and intersections
+                throw new UnsupportedException();
+            }
+
+            char low = c;
+            if (c == '\\') {
+                RegexNode.CharSet set = parsePredefined();
+                if (set != null) {
+                    predefined.add(set);
+                    continue;
+                }
+                low = parseEscape();
+            }
+
+            char high = low;
+            if (more() && peek() == '-' && pos + 1 < regex.length() && regex.charAt(pos + 1) != ']') {
+                pos++;
+                high = regex.charAt(pos++);
+                if (high == '[') {
+                    throw new UnsupportedException();
+                }
+                if (high == '\\') {
+                    if (more() && "dDwWsS".indexOf(peek()) >= 0) {
+                        throw new UnsupportedException();
+                    }
+                    high = parseEscape();
+                }
+                if (high < low) {
+                    throw new UnsupportedException();
+                }
+                if (low <= Character.MAX_SURROGATE && high >= Character.MIN_SURROGATE) {
+                    // Ranges over surrogates would match halves of surrogate pairs
+                    throw new UnsupportedException();
+                }
+            }
+            ranges.append(low).append(high);
+        }
+        return new RegexNode.CharSet(ranges.toString().toCharArray(), predefined.toArray(new RegexNode.CharSet[0]), negated);
+    }
+
+    /**
+     * Parse predefined class after a backslash.
+     *
+     * @return the set or null if not a predefined class (position unchanged)
+     */
+    private RegexNode.CharSet parsePredefined() throws UnsupportedException {
+        if (!more()) {
+            throw new UnsupportedException();
+        }
+        RegexNode.CharSet set;
+        switch (peek()) {
+            case 'd': set = DIGITS; break;
+            case 'w': set = WORDS; break;
+            case 's': set = SPACES; break;
+            case 'D': set = negate(DIGITS); break;
+            case 'W': set = negate(WORDS); break;
+            case 'S': set = negate(SPACES); break;
+            default: return null;
+        }
+        pos++;
+        return set;
+    }
+
+    private static RegexNode.CharSet negate(RegexNode.CharSet set) {
+        return new RegexNode.CharSet(new char[0], new RegexNode.CharSet[] { set }, true);
+    }
+
+    /**
+     * Parse a single character escape after a backslash.
+     */
+    private char parseEscape() throws UnsupportedException {
+        if (!more()) {
+            throw new UnsupportedException();
+        }
+        char c = regex.charAt(pos++);
+        switch (c) {
+            case 't': return '\t';
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 'f': return '\f';
+            case 'a': return '\u0007';
+            case 'e': return '\u001B';
+            case 'x': return parseHex(2);
+            case 'u':
+                char u = parseHex(4);
+                if (Character.isSurrogate(u)) {
+                    throw new UnsupportedException();
+                }
+                return u;
+            default:
+                if (Character.isLetterOrDigit(c)) {
+                    // Backreferences, boundaries, quoting, properties...
+                    throw new UnsupportedException();
+                }
+                return c;
+        }
+    }
+
+    private char parseHex(int digits) throws UnsupportedException {
+        if (pos + digits > regex.length()) {
+            throw new UnsupportedException();
+        }
+        int value = 0;
+        for (int i = 0; i < digits; i++) {
+            int digit = Character.digit(regex.charAt(pos++), 16);
+            if (digit < 0) {
+                throw new UnsupportedException();
+            }
+            value = value * 16 + digit;
+        }
+        return (char)value;
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.regex;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Detects regex shapes with exponential backtracking in java.util.regex.
+ *
+ * <p>A quantified group is unsafe when an input can be split between its iterations in many ways:</p>
+ * <ul>
+ *     <li>Nested quantifiers: the group ends with a quantifier able to consume the first character of the
+ *     next iteration (ex: '(a+)+', '(\w+\d*)*'). Delimited repetitions such as '(\.[^\.]+)+' are safe.</li>
+ *     <li>Overlapping alternatives: quantified alternatives matching the same input, or a prefix of each other
+ *     (ex: '(a|ab)*', '(\w|\d)+'). Alternatives told apart by a character, such as '(en|es)+', are safe.</li>
+ * </ul>
+ *
+ * <p>Counted quantifiers of at most {@value #MAX_SAFE_COUNT} iterations only backtrack polynomially (ex: '(a+){2}'): they are safe.</p>
+ *
+ * <p>Patterns outside of the {@link MultiPattern} syntax (backreferences, lookarounds...) are not analyzed:
+ * they are only bounded by {@link RegexBudget} at runtime.</p>
+ *
+ * @author Michel Lemay
+ */
+public final class RegexSafety {
+    private static final int CHARS = Character.MAX_VALUE + 1;
+    private static final int MAX_SAFE_COUNT = 3;
+    // Longest alternative compared character by character.
+    private static final int MAX_SEQUENCE_LENGTH = 32;
+
+    private final boolean caseInsensitive;
+
+    private RegexSafety(boolean caseInsensitive) {
+        this.caseInsensitive = caseInsensitive;
+    }
+
+    /**
+     * Check a pattern.
+     *
+     * @param pattern the pattern
+     * @return the unsafe shape description or null if none found
+     */
+    public static String check(Pattern pattern) {
+        RegexNode node = RegexParser.parse(pattern.pattern());
+        return node != null ? new RegexSafety((pattern.flags() & Pattern.CASE_INSENSITIVE) != 0).check(node) : null;
+    }
+
+    private String check(RegexNode node) {
+        if (node instanceof RegexNode.Concat) {
+            return checkAll(((RegexNode.Concat)node).nodes);
+        } else if (node instanceof RegexNode.Alt) {
+            return checkAll(((RegexNode.Alt)node).nodes);
+        } else if (node instanceof RegexNode.Group) {
+            return check(((RegexNode.Group)node).node);
+        } else if (node instanceof RegexNode.Repeat) {
+            RegexNode.Repeat repeat = (RegexNode.Repeat)node;
+            if (repeat.max < 0 || repeat.max > MAX_SAFE_COUNT) {
+                String unsafe = checkIterations(repeat.node);
+                if (unsafe != null) {
+                    return unsafe;
+                }
+            }
+            return check(repeat.node);
+        }
+        return null;
+    }
+
+    private String checkAll(List<RegexNode> nodes) {
+        for (RegexNode node : nodes) {
+            String unsafe = check(node);
+            if (unsafe != null) {
+                return unsafe;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Check the body of a quantifier that may iterate more than once.
+     */
+    private String checkIterations(RegexNode body) {
+        BitSet first = first(body);
+
+        List<RegexNode.Repeat> tails = new ArrayList<RegexNode.Repeat>();
+        tailRepeats(body, tails);
+        for (RegexNode.Repeat tail : tails) {
+            if (tail.min != tail.max && first(tail.node).intersects(first)) {
+                return "nested quantifiers";
+            }
+        }
+
+        RegexNode inner = body;
+        while (inner instanceof RegexNode.Group) {
+            inner = ((RegexNode.Group)inner).node;
+        }
+        if (inner instanceof RegexNode.Alt) {
+            List<RegexNode> alternatives = ((RegexNode.Alt)inner).nodes;
+            List<BitSet> firsts = new ArrayList<BitSet>();
+            List<List<BitSet>> sequences = new ArrayList<List<BitSet>>();
+            for (RegexNode alternative : alternatives) {
+                firsts.add(first(alternative));
+                sequences.add(sequence(alternative));
+            }
+            for (int i = 0; i < alternatives.size(); i++) {
+                for (int j = 0; j < i; j++) {
+                    if (firsts.get(i).intersects(firsts.get(j)) && !distinct(sequences.get(i), sequences.get(j))) {
+                        return "overlapping alternatives";
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Are fixed sequences told apart by a character: neither matches the input, or a prefix of the input, of the
+     * other. Iterations of pairwise distinct alternatives can be split in a single way.
+     */
+    private static boolean distinct(List<BitSet> a, List<BitSet> b) {
+        if (a == null || b == null) {
+            return false;
+        }
+        for (int i = 0; i < Math.min(a.size(), b.size()); i++) {
+            if (!a.get(i).intersects(b.get(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Characters matched at each position of a fixed length node.
+     *
+     * @return the character sets or null if the node length varies or is too long
+     */
+    private List<BitSet> sequence(RegexNode node) {
+        List<BitSet> sequence = new ArrayList<BitSet>();
+        return appendSequence(node, sequence) ? sequence : null;
+    }
+
+    private boolean appendSequence(RegexNode node, List<BitSet> sequence) {
+        if (node instanceof RegexNode.Char || node instanceof RegexNode.Any || node instanceof RegexNode.Class) {
+            sequence.add(first(node));
+        } else if (node instanceof RegexNode.Group) {
+            return appendSequence(((RegexNode.Group)node).node, sequence);
+        } else if (node instanceof RegexNode.Concat) {
+            for (RegexNode n : ((RegexNode.Concat)node).nodes) {
+                if (!appendSequence(n, sequence)) {
+                    return false;
+                }
+            }
+        } else if (node instanceof RegexNode.Repeat) {
+            RegexNode.Repeat repeat = (RegexNode.Repeat)node;
+            if (repeat.min != repeat.max) {
+                return false;
+            }
+            for (int i = 0; i < repeat.min; i++) {
+                if (!appendSequence(repeat.node, sequence)) {
+                    return false;
+                }
+            }
+        } else if (!(node instanceof RegexNode.Anchor)) {
+            return false;
+        }
+        return sequence.size() <= MAX_SEQUENCE_LENGTH;
+    }
+
+    /**
+     * Collect quantifiers that can end a match of the node.
+     */
+    private static void tailRepeats(RegexNode node, List<RegexNode.Repeat> tails) {
+        if (node instanceof RegexNode.Repeat) {
+            tails.add((RegexNode.Repeat)node);
+        } else if (node instanceof RegexNode.Group) {
+            tailRepeats(((RegexNode.Group)node).node, tails);
+        } else if (node instanceof RegexNode.Alt) {
+            for (RegexNode alternative : ((RegexNode.Alt)node).nodes) {
+                tailRepeats(alternative, tails);
+            }
+        } else if (node instanceof RegexNode.Concat) {
+            List<RegexNode> nodes = ((RegexNode.Concat)node).nodes;
+            for (int i = nodes.size() - 1; i >= 0; i--) {
+                tailRepeats(nodes.get(i), tails);
+                if (!nullable(nodes.get(i))) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private static boolean nullable(RegexNode node) {
+        if (node instanceof RegexNode.Anchor) {
+            return true;
+        } else if (node instanceof RegexNode.Repeat) {
+            return ((RegexNode.Repeat)node).min == 0 || nullable(((RegexNode.Repeat)node).node);
+        } else if (node instanceof RegexNode.Group) {
+            return nullable(((RegexNode.Group)node).node);
+        } else if (node instanceof RegexNode.Alt) {
+            return ((RegexNode.Alt)node).nodes.stream().anyMatch(RegexSafety::nullable);
+        } else if (node instanceof RegexNode.Concat) {
+            return ((RegexNode.Concat)node).nodes.stream().allMatch(RegexSafety::nullable);
+        }
+        return false;
+    }
+
+    /**
+     * Characters that can start a match of the node.
+     */
+    private BitSet first(RegexNode node) {
+        BitSet set = new BitSet(CHARS);
+        if (node instanceof RegexNode.Char) {
+            char c = ((RegexNode.Char)node).c;
+            set.set(c);
+            if (caseInsensitive) {
+                set.set(RegexNode.toLower(c));
+                set.set(RegexNode.toUpper(c));
+            }
+        } else if (node instanceof RegexNode.Any) {
+            set.set(0, CHARS);
+            for (char c : new char[] { '\n', '\r', '\u0085', '\u2028', '\u2029' }) {
+                set.clear(c);
+            }
+        } else if (node instanceof RegexNode.Class) {
+            RegexNode.CharSet charSet = ((RegexNode.Class)node).set;
+            for (int c = 0; c < CHARS; c++) {
+                if (charSet.matches((char)c, caseInsensitive)) {
+                    set.set(c);
+                }
+            }
+        } else if (node instanceof RegexNode.Repeat) {
+            if (((RegexNode.Repeat)node).max != 0) {
+                set.or(first(((RegexNode.Repeat)node).node));
+            }
+        } else if (node instanceof RegexNode.Group) {
+            set.or(first(((RegexNode.Group)node).node));
+        } else if (node instanceof RegexNode.Alt) {
+            for (RegexNode alternative : ((RegexNode.Alt)node).nodes) {
+                set.or(first(alternative));
+            }
+        } else if (node instanceof RegexNode.Concat) {
+            for (RegexNode n : ((RegexNode.Concat)node).nodes) {
+                set.or(first(n));
+                if (!nullable(n)) {
+                    break;
+                }
+            }
+        }
+        return set;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.regex;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts a literal that must occur in any match of a regex, to skip the regex when the literal is absent.
+ *
+ * <p>Groups are transparent, repeats with a minimum of one contribute their own required literals, and
+ * anything else (classes, '.', optional parts, alternations) breaks literal runs. The longest run is kept.
+ * Literals are folded to ASCII lower case: match them with ASCII folded input.</p>
+ *
+ * @author Michel Lemay
+ */
+public final class RequiredLiteral {
+    // Shorter literals occur almost everywhere: not worth filtering on.
+    private static final int MIN_LENGTH = 2;
+
+    private RequiredLiteral() {
+    }
+
+    /**
+     * Extract the longest literal required by a pattern.
+     *
+     * @param pattern the pattern
+     * @return the ASCII folded literal or null if the pattern has no usable required literal
+     */
+    public static String of(Pattern pattern) {
+        if ((pattern.flags() & ~Pattern.CASE_INSENSITIVE) != 0) {
+            return null;
+        }
+        RegexNode node = RegexParser.parse(pattern.pattern());
+        if (node == null) {
+            return null;
+        }
+        Runs runs = new Runs();
+        collect(node, runs);
+        runs.breakRun();
+        return runs.best.length() >= MIN_LENGTH ? runs.best : null;
+    }
+
+    /**
+     * Extract the literal every match of a pattern starts with.
+     *
+     * @param pattern the pattern
+     * @return the ASCII folded prefix or null if the pattern has no literal prefix
+     */
+    public static String prefixOf(Pattern pattern) {
+        if ((pattern.flags() & ~Pattern.CASE_INSENSITIVE) != 0) {
+            return null;
+        }
+        RegexNode node = RegexParser.parse(pattern.pattern());
+        if (node == null) {
+            return null;
+        }
+        StringBuilder prefix = new StringBuilder();
+        collectPrefix(node, prefix);
+        return prefix.length() > 0 ? prefix.toString() : null;
+    }
+
+    /**
+     * ASCII lower case, the folding applied to literals and to scanned input.
+     *
+     * @param c the character
+     * @return the folded character
+     */
+    public static char fold(char c) {
+        return RegexNode.toLower(c);
+    }
+
+    private static final class Runs {
+        final StringBuilder current = new StringBuilder();
+        String best = "";
+
+        void append(char c) {
+            current.append(fold(c));
+        }
+
+        void breakRun() {
+            if (current.length() > best.length()) {
+                best = current.toString();
+            }
+            current.setLength(0);
+        }
+    }
+
+    /**
+     * Append the leading literal of a node.
+     *
+     * @return true if the whole node is a literal, so that the prefix goes on with the next node
+     */
+    private static boolean collectPrefix(RegexNode node, StringBuilder prefix) {
+        if (node instanceof RegexNode.Char) {
+            prefix.append(fold(((RegexNode.Char)node).c));
+            return true;
+        } else if (node instanceof RegexNode.Anchor) {
+            return true;
+        } else if (node instanceof RegexNode.Group) {
+            return collectPrefix(((RegexNode.Group)node).node, prefix);
+        } else if (node instanceof RegexNode.Concat) {
+            for (RegexNode n : ((RegexNode.Concat)node).nodes) {
+                if (!collectPrefix(n, prefix)) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (node instanceof RegexNode.Repeat && ((RegexNode.Repeat)node).min >= 1) {
+            RegexNode.Repeat repeat = (RegexNode.Repeat)node;
+            // The first iteration starts with the body prefix.
+            return collectPrefix(repeat.node, prefix) && repeat.min == 1 && repeat.max == 1;
+        }
+        return false;
+    }
+
+    private static void collect(RegexNode node, Runs runs) {
+        if (node instanceof RegexNode.Char) {
+            runs.append(((RegexNode.Char)node).c);
+        } else if (node instanceof RegexNode.Anchor) {
+            // Zero width: does not break runs.
+        } else if (node instanceof RegexNode.Group) {
+            collect(((RegexNode.Group)node).node, runs);
+        } else if (node instanceof RegexNode.Concat) {
+            List<RegexNode> nodes = ((RegexNode.Concat)node).nodes;
+            for (RegexNode n : nodes) {
+                collect(n, runs);
+            }
+        } else if (node instanceof RegexNode.Repeat && ((RegexNode.Repeat)node).min >= 1) {
+            RegexNode.Repeat repeat = (RegexNode.Repeat)node;
+            if (repeat.min == 1 && repeat.max == 1) {
+                collect(repeat.node, runs);
+            } else {
+                // The body occurs at least once, but its neighbours are not adjacent to it.
+                runs.breakRun();
+                collect(repeat.node, runs);
+                runs.breakRun();
+            }
+        } else {
+            runs.breakRun();
+        }
+    }
+}
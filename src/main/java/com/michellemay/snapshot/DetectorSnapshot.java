@@ -0,0 +1,476 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.snapshot;
+
+import com.michellemay.URLLanguageDetectorBuilder;
+import com.michellemay.config.Config;
+import com.michellemay.config.ConfigReader;
+import com.michellemay.mappings.CustomMapping;
+import com.michellemay.mappings.Mapping;
+import com.michellemay.mappings.MappingsFactory;
+import com.michellemay.matchers.Matcher;
+import com.michellemay.matchers.MatcherConfig;
+import com.michellemay.profiles.ProfileConfig;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Precompiled binary snapshot of a detector, for fast startup.
+ *
+ * <p>A snapshot holds every mapping used by the detector (so that JDK locale data is not scanned again) and the matchers
+ * and profiles definitions (so that JSON is not parsed again). Loading memory-maps the file and only
+ * compiles matchers and profiles regexes: java.util.regex has no compiled form to persist.</p>
+ *
+ * <p>Snapshots are keyed by a hash of the config bytes, the format version and a fingerprint of the JDK
+ * locale data. Stale snapshots are rejected by {@link #read(Path, byte[])}.</p>
+ *
+ * <p>Layout (big endian): magic, format version, key (SHA-256), string table, locale table, mappings,
+ * matchers, profiles. Strings and locales are referenced by index, -1 for null.</p>
+ *
+ * @author Michel Lemay
+ */
+public final class DetectorSnapshot {
+    private static final byte[] MAGIC = "ULIDSNAP".getBytes(StandardCharsets.US_ASCII);
+    /**
+     * Snapshot format version. Must be incremented whenever the layout or the way mappings are built changes.
+     */
+    public static final int FORMAT_VERSION = 2;
+
+    private static final int MAP_HASH = 0;
+    private static final int MAP_TREE_CASE_INSENSITIVE = 1;
+    private static final int MAP_TREE = 2;
+
+    private static final int LOCALE_CONSTRUCTOR = 0;
+    private static final int LOCALE_TAG = 1;
+
+    private DetectorSnapshot() {
+    }
+
+    /**
+     * Compile a config file to a snapshot file: java DetectorSnapshot config.json detector.snapshot
+     *
+     * @param args the config file and the snapshot file
+     * @throws IOException if a file cannot be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: DetectorSnapshot <config.json> <snapshot file>");
+            System.exit(1);
+        }
+        write(Files.readAllBytes(java.nio.file.Paths.get(args[0])), java.nio.file.Paths.get(args[1]));
+    }
+
+    /**
+     * Load a snapshot if it is up to date, otherwise build from config and (re)write the snapshot.
+     *
+     * @param configFile the json config file
+     * @param snapshotFile the snapshot file
+     * @return the builder
+     * @throws IOException if the config cannot be read
+     */
+    public static URLLanguageDetectorBuilder loadOrCompile(Path configFile, Path snapshotFile) throws IOException {
+        byte[] configBytes = Files.readAllBytes(configFile);
+        Optional<URLLanguageDetectorBuilder> loaded = read(snapshotFile, configBytes);
+        if (loaded.isPresent()) {
+            return loaded.get();
+        }
+        return write(configBytes, snapshotFile);
+    }
+
+    /**
+     * Build a detector from json config bytes and write its snapshot. The file is replaced atomically.
+     *
+     * @param configBytes the json config, as UTF-8 bytes
+     * @param snapshotFile the snapshot file
+     * @return the builder built from config
+     * @throws IOException if the config cannot be parsed or the snapshot cannot be written
+     */
+    public static URLLanguageDetectorBuilder write(byte[] configBytes, Path snapshotFile) throws IOException {
+        Config config = ConfigReader.read(new String(configBytes, StandardCharsets.UTF_8));
+        URLLanguageDetectorBuilder builder = URLLanguageDetectorBuilder.create(config);
+
+        Path temp = Files.createTempFile(snapshotFile.toAbsolutePath().getParent(), snapshotFile.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, encode(key(configBytes), config, builder.getMappingsFactory()));
+            Files.move(temp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return builder;
+    }
+
+    /**
+     * Read a snapshot.
+     *
+     * @param snapshotFile the snapshot file
+     * @param configBytes the json config the snapshot must have been compiled from, as UTF-8 bytes
+     * @return the builder, absent if the snapshot is missing, corrupted or stale
+     * @throws IOException if the snapshot exists but cannot be read
+     */
+    public static Optional<URLLanguageDetectorBuilder> read(Path snapshotFile, byte[] configBytes) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || buffer.getInt() != FORMAT_VERSION) {
+                return Optional.empty();
+            }
+            byte[] key = new byte[32];
+            buffer.get(key);
+            if (!Arrays.equals(key, key(configBytes))) {
+                return Optional.empty();
+            }
+            return Optional.of(decode(buffer));
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            // Truncated or corrupted snapshot
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Snapshot key: config bytes, format version and JDK locale data fingerprint.
+     */
+    static byte[] key(byte[] configBytes) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available!", e);
+        }
+        digest.update(configBytes);
+        StringBuilder fingerprint = new StringBuilder();
+        fingerprint.append(FORMAT_VERSION)
+                .append('|').append(System.getProperty("java.version"))
+                .append('|').append(System.getProperty("java.vendor"))
+                .append('|').append(System.getProperty("java.locale.providers"))
+                .append('|').append(Locale.getDefault())
+                .append('|').append(String.join(",", Locale.getISOLanguages()));
+        for (Locale locale : Locale.getAvailableLocales()) {
+            fingerprint.append(',').append(locale);
+        }
+        digest.update(fingerprint.toString().getBytes(StandardCharsets.UTF_8));
+        return digest.digest();
+    }
+
+    private static byte[] encode(byte[] key, Config config, MappingsFactory mappingsFactory) throws IOException {
+        Encoder encoder = new Encoder();
+        DataOutputStream body = encoder.body;
+
+        List<Mapping> mappings = new ArrayList<Mapping>(mappingsFactory.getMaterializedMappings().values());
+        body.writeInt(mappings.size());
+        for (Mapping mapping : mappings) {
+            encoder.writeString(mapping.getName());
+            body.writeBoolean(mapping.getCaseSensitive());
+            body.writeByte(mapKind(mapping.getMapping()));
+            body.writeInt(mapping.getMapping().size());
+            for (Map.Entry<String, Locale> entry : mapping.getMapping().entrySet()) {
+                encoder.writeString(entry.getKey());
+                encoder.writeLocale(entry.getValue());
+            }
+        }
+
+        List<MatcherConfig> matchers = config.matchers != null ? config.matchers : new ArrayList<MatcherConfig>();
+        body.writeInt(matchers.size());
+        for (MatcherConfig matcher : matchers) {
+            encoder.writeString(matcher.name);
+            body.writeInt(matcher.urlpart != null ? matcher.urlpart.ordinal() : -1);
+            encoder.writeStrings(matcher.patterns);
+            encoder.writeString(matcher.mapping);
+            body.writeBoolean(matcher.casesensitive);
+            body.writeBoolean(matcher.patternorder);
+            encoder.writeInteger(matcher.label);
+            encoder.writeInteger(matcher.minlabels);
+            encoder.writeInteger(matcher.segment);
+            encoder.writeInteger(matcher.segments);
+            encoder.writeString(matcher.after);
+            encoder.writeStrings(matcher.parameters);
+        }
+
+        List<ProfileConfig> profiles = config.profiles != null ? config.profiles : new ArrayList<ProfileConfig>();
+        body.writeInt(profiles.size());
+        for (ProfileConfig profile : profiles) {
+            encoder.writeString(profile.name);
+            encoder.writeStrings(profile.domains);
+            encoder.writeString(profile.mapping);
+            body.writeInt(profile.matchers != null ? profile.matchers.size() : -1);
+            if (profile.matchers != null) {
+                for (ProfileConfig.MatcherRef ref : profile.matchers) {
+                    encoder.writeString(ref.matcher);
+                    encoder.writeString(ref.mapping);
+                }
+            }
+        }
+        return encoder.finish(key);
+    }
+
+    private static int mapKind(Map<String, Locale> map) {
+        if (map instanceof TreeMap) {
+            return ((TreeMap<String, Locale>)map).comparator() == String.CASE_INSENSITIVE_ORDER ? MAP_TREE_CASE_INSENSITIVE : MAP_TREE;
+        }
+        return MAP_HASH;
+    }
+
+    private static URLLanguageDetectorBuilder decode(ByteBuffer buffer) {
+        Decoder decoder = new Decoder(buffer);
+
+        int mappingCount = buffer.getInt();
+        List<Mapping> mappings = new ArrayList<Mapping>(mappingCount);
+        for (int i = 0; i < mappingCount; i++) {
+            String name = decoder.readString();
+            boolean caseSensitive = buffer.get() != 0;
+            int kind = buffer.get();
+            int size = buffer.getInt();
+            Map<String, Locale> map = kind == MAP_HASH
+                    ? new HashMap<String, Locale>(size * 2)
+                    : new TreeMap<String, Locale>(kind == MAP_TREE_CASE_INSENSITIVE ? String.CASE_INSENSITIVE_ORDER : null);
+            for (int j = 0; j < size; j++) {
+                String key = decoder.readString();
+                map.put(key, decoder.readLocale());
+            }
+            mappings.add(new CustomMapping(name).withCaseSensitive(caseSensitive).withMapping(map));
+        }
+
+        Config config = new Config();
+        int matcherCount = buffer.getInt();
+        config.matchers = new ArrayList<MatcherConfig>(matcherCount);
+        for (int i = 0; i < matcherCount; i++) {
+            MatcherConfig matcher = new MatcherConfig();
+            matcher.name = decoder.readString();
+            int urlpart = buffer.getInt();
+            matcher.urlpart = urlpart >= 0 ? Matcher.UrlPart.values()[urlpart] : null;
+            matcher.patterns = decoder.readStrings();
+            matcher.mapping = decoder.readString();
+            matcher.casesensitive = buffer.get() != 0;
+            matcher.patternorder = buffer.get() != 0;
+            matcher.label = decoder.readInteger();
+            matcher.minlabels = decoder.readInteger();
+            matcher.segment = decoder.readInteger();
+            matcher.segments = decoder.readInteger();
+            matcher.after = decoder.readString();
+            matcher.parameters = decoder.readStrings();
+            config.matchers.add(matcher);
+        }
+
+        int profileCount = buffer.getInt();
+        config.profiles = new ArrayList<ProfileConfig>(profileCount);
+        for (int i = 0; i < profileCount; i++) {
+            ProfileConfig profile = new ProfileConfig();
+            profile.name = decoder.readString();
+            profile.domains = decoder.readStrings();
+            profile.mapping = decoder.readString();
+            int refs = buffer.getInt();
+            if (refs >= 0) {
+                profile.matchers = new ArrayList<ProfileConfig.MatcherRef>(refs);
+                for (int j = 0; j < refs; j++) {
+                    ProfileConfig.MatcherRef ref = new ProfileConfig.MatcherRef();
+                    ref.matcher = decoder.readString();
+                    ref.mapping = decoder.readString();
+                    profile.matchers.add(ref);
+                }
+            }
+            config.profiles.add(profile);
+        }
+        return URLLanguageDetectorBuilder.create(config, MappingsFactory.of(mappings));
+    }
+
+    /**
+     * Writes the body while collecting the string and locale tables written before it.
+     */
+    private static final class Encoder {
+        private final ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+        final DataOutputStream body = new DataOutputStream(bodyBytes);
+        private final Map<String, Integer> strings = new HashMap<String, Integer>();
+        private final List<String> stringTable = new ArrayList<String>();
+        private final Map<Locale, Integer> locales = new HashMap<Locale, Integer>();
+        private final List<Locale> localeTable = new ArrayList<Locale>();
+
+        void writeString(String value) throws IOException {
+            body.writeInt(stringRef(value));
+        }
+
+        private int stringRef(String value) {
+            if (value == null) {
+                return -1;
+            }
+            Integer ref = strings.get(value);
+            if (ref == null) {
+                ref = stringTable.size();
+                strings.put(value, ref);
+                stringTable.add(value);
+            }
+            return ref;
+        }
+
+        void writeStrings(List<String> values) throws IOException {
+            body.writeInt(values != null ? values.size() : -1);
+            if (values != null) {
+                for (String value : values) {
+                    writeString(value);
+                }
+            }
+        }
+
+        void writeInteger(Integer value) throws IOException {
+            body.writeBoolean(value != null);
+            if (value != null) {
+                body.writeInt(value);
+            }
+        }
+
+        void writeLocale(Locale locale) throws IOException {
+            Integer ref = locales.get(locale);
+            if (ref == null) {
+                ref = localeTable.size();
+                locales.put(locale, ref);
+                localeTable.add(locale);
+            }
+            body.writeInt(ref);
+        }
+
+        byte[] finish(byte[] key) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(bodyBytes.size() * 2);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.write(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.write(key);
+
+            // Locale parts go in the string table too: collect them first.
+            int[][] localeParts = new int[localeTable.size()][];
+            int[] localeEncodings = new int[localeTable.size()];
+            for (int i = 0; i < localeTable.size(); i++) {
+                Locale locale = localeTable.get(i);
+                if (new Locale(locale.getLanguage(), locale.getCountry(), locale.getVariant()).equals(locale)) {
+                    localeEncodings[i] = LOCALE_CONSTRUCTOR;
+                    localeParts[i] = new int[] { stringRef(locale.getLanguage()), stringRef(locale.getCountry()), stringRef(locale.getVariant()) };
+                } else if (Locale.forLanguageTag(locale.toLanguageTag()).equals(locale)) {
+                    localeEncodings[i] = LOCALE_TAG;
+                    localeParts[i] = new int[] { stringRef(locale.toLanguageTag()) };
+                } else {
+                    throw new IllegalStateException("Locale '" + locale + "' cannot be stored in a snapshot!");
+                }
+            }
+
+            out.writeInt(stringTable.size());
+            for (String value : stringTable) {
+                byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(utf8.length);
+                out.write(utf8);
+            }
+            out.writeInt(localeTable.size());
+            for (int i = 0; i < localeTable.size(); i++) {
+                out.writeByte(localeEncodings[i]);
+                for (int part : localeParts[i]) {
+                    out.writeInt(part);
+                }
+            }
+            body.flush();
+            bodyBytes.writeTo(out);
+            out.flush();
+            return bytes.toByteArray();
+        }
+    }
+
+    /**
+     * Reads the string and locale tables, then body values referencing them.
+     */
+    private static final class Decoder {
+        private final ByteBuffer buffer;
+        private final String[] strings;
+        private final Locale[] locales;
+
+        Decoder(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.strings = new String[checkCount(buffer.getInt())];
+            byte[] scratch = new byte[64];
+            for (int i = 0; i < strings.length; i++) {
+                int length = checkCount(buffer.getInt());
+                if (scratch.length < length) {
+                    scratch = new byte[length];
+                }
+                buffer.get(scratch, 0, length);
+                strings[i] = new String(scratch, 0, length, StandardCharsets.UTF_8);
+            }
+            this.locales = new Locale[checkCount(buffer.getInt())];
+            for (int i = 0; i < locales.length; i++) {
+                if (buffer.get() == LOCALE_CONSTRUCTOR) {
+                    locales[i] = new Locale(readString(), readString(), readString());
+                } else {
+                    locales[i] = Locale.forLanguageTag(readString());
+                }
+            }
+        }
+
+        private int checkCount(int count) {
+            if (count < 0 || count > buffer.remaining()) {
+                throw new IllegalArgumentException("Invalid count: " + count);
+            }
+            return count;
+        }
+
+        String readString() {
+            int ref = buffer.getInt();
+            return ref < 0 ? null : strings[ref];
+        }
+
+        List<String> readStrings() {
+            int size = buffer.getInt();
+            if (size < 0) {
+                return null;
+            }
+            List<String> values = new ArrayList<String>(checkCount(size));
+            for (int i = 0; i < size; i++) {
+                values.add(readString());
+            }
+            return values;
+        }
+
+        Integer readInteger() {
+            return buffer.get() != 0 ? buffer.getInt() : null;
+        }
+
+        Locale readLocale() {
+            return locales[buffer.getInt()];
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.url;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Zero-copy CharSequence view over US-ASCII bytes.
+ *
+ * <p>Urls are almost always pure ASCII (non-ASCII characters are percent-encoded), in which case
+ * every byte is exactly one char and the bytes can be read in place. Use {@link #utf8(byte[], int, int)}
+ * or {@link #utf8(ByteBuffer)} to get a view when possible, or a decoded String otherwise.</p>
+ *
+ * @author Michel Lemay
+ */
+public final class ByteCharSequence implements CharSequence {
+    private final byte[] array;
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final int length;
+
+    private ByteCharSequence(byte[] array, ByteBuffer buffer, int offset, int length) {
+        this.array = array;
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Get a CharSequence over UTF-8 bytes.
+     *
+     * @param bytes the bytes
+     * @param offset the offset of the first byte
+     * @param length the number of bytes
+     * @return a view over the bytes if they are all ASCII, a decoded String otherwise
+     */
+    public static CharSequence utf8(byte[] bytes, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > bytes.length - length) {
+            throw new IndexOutOfBoundsException("offset: " + offset + ", length: " + length);
+        }
+        for (int i = offset, end = offset + length; i < end; i++) {
+            if (bytes[i] < 0) {
+                return new String(bytes, offset, length, StandardCharsets.UTF_8);
+            }
+        }
+        return new ByteCharSequence(bytes, null, offset, length);
+    }
+
+    /**
+     * Get a CharSequence over the remaining UTF-8 bytes of a buffer. The buffer position is not modified.
+     *
+     * @param buffer the buffer
+     * @return a view over the bytes if they are all ASCII, a decoded String otherwise
+     */
+    public static CharSequence utf8(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            return utf8(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+        int start = buffer.position();
+        int end = buffer.limit();
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) < 0) {
+                return StandardCharsets.UTF_8.decode(buffer.duplicate()).toString();
+            }
+        }
+        return new ByteCharSequence(null, buffer, start, end - start);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index: " + index);
+        }
+        return (char)(array != null ? array[offset + index] : buffer.get(offset + index));
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("start: " + start + ", end: " + end);
+        }
+        return new ByteCharSequence(array, buffer, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        if (array != null) {
+            return new String(array, offset, length, StandardCharsets.ISO_8859_1);
+        }
+        byte[] copy = new byte[length];
+        for (int i = 0; i < length; i++) {
+            copy[i] = buffer.get(offset + i);
+        }
+        return new String(copy, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.url;
+
+import com.google.common.collect.ImmutableList;
+import com.michellemay.mappings.LanguageRegistry;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of detection results keyed by a 64 bits fingerprint of the normalized url.
+ *
+ * <p>Urls are normalized as detection sees them: host as written (hostname matchers and mappings may be case
+ * sensitive), path, and query parameters in order, without the stripped parameters (ex: tracking parameters).
+ * Protocol, user info, port and fragment are ignored. Stripped parameters must not be used by matchers.</p>
+ *
+ * <p>Entries are packed in a single long: 48 bits of fingerprint and a 16 bits language id. No url is
+ * retained. The table is split in buckets of {@value #WAYS} entries, each evicted in clock order: an entry
+ * read since the hand last passed gets a second chance. Reads are lock-free and writers only use CAS, so
+ * concurrent readers never block.</p>
+ *
+ * @author Michel Lemay
+ */
+public final class URLResultCache {
+    /**
+     * Returned by {@link #get(long)} when the url is not cached.
+     */
+    public static final int MISS = Integer.MIN_VALUE;
+
+    /**
+     * Common tracking parameters. Rules are parameter names, or name prefixes ending with '*'.
+     */
+    public static final List<String> DEFAULT_STRIPPED_PARAMETERS = ImmutableList.of("utm_*", "gclid", "fbclid", "msclkid");
+
+    private static final int WAYS = 8;
+    private static final long ID_MASK = 0xFFFFL;
+    private static final int NO_ID = 0xFFFF;
+
+    /**
+     * Smallest memory budget: a single bucket of entries, their reference bits and clock hand.
+     */
+    public static final long MIN_BYTES = WAYS * (8 + 1) + 1;
+
+    private final AtomicLongArray entries;
+    private final byte[] referenced;
+    private final byte[] hands;
+    private final int bucketMask;
+    private final String[] strippedNames;
+    private final String[] strippedPrefixes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Instantiates a new URL result cache.
+     *
+     * @param maxBytes the memory budget of the table
+     * @param strippedParameters the query parameter names ignored by normalization (ASCII case insensitive),
+     *                           or name prefixes ending with '*'
+     */
+    public URLResultCache(long maxBytes, Collection<String> strippedParameters) {
+        validate(maxBytes, strippedParameters);
+        int buckets = (int)Long.highestOneBit(Math.min(maxBytes / MIN_BYTES, 1 << 26));
+        this.entries = new AtomicLongArray(buckets * WAYS);
+        this.referenced = new byte[buckets * WAYS];
+        this.hands = new byte[buckets];
+        this.bucketMask = buckets - 1;
+
+        List<String> names = new ArrayList<String>();
+        List<String> prefixes = new ArrayList<String>();
+        for (String rule : strippedParameters) {
+            int star = rule.indexOf('*');
+            (star >= 0 ? prefixes : names).add(foldAscii(star >= 0 ? rule.substring(0, star) : rule));
+        }
+        this.strippedNames = names.toArray(new String[names.size()]);
+        this.strippedPrefixes = prefixes.toArray(new String[prefixes.size()]);
+    }
+
+    /**
+     * Validate cache arguments, without allocating a cache.
+     *
+     * @param maxBytes the memory budget of the cache
+     * @param strippedParameters the query parameters ignored in urls (names, or prefixes ending with '*')
+     */
+    public static void validate(long maxBytes, Collection<String> strippedParameters) {
+        if (maxBytes < MIN_BYTES) {
+            throw new IllegalArgumentException("Result cache size must be at least " + MIN_BYTES + " bytes!");
+        }
+        for (String rule : strippedParameters) {
+            int star = rule != null ? rule.indexOf('*') : -1;
+            if (StringUtils.isBlank(rule) || rule.indexOf('=') >= 0 || rule.indexOf('&') >= 0
+                    || (star >= 0 && star != rule.length() - 1) || rule.equals("*")) {
+                throw new IllegalArgumentException("Invalid stripped parameter '" + rule + "'!");
+            }
+        }
+    }
+
+    /**
+     * Gets the number of cached entries, at most.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() { return entries.length(); }
+
+    /**
+     * Compute the fingerprint of a successfully tokenized url.
+     *
+     * @param url the tokenized url
+     * @return the fingerprint
+     */
+    public long fingerprint(URLTokenizer url) {
+        CharSequence input = url.getInput();
+        long h = 0xcbf29ce484222325L;
+        for (int i = url.getHostStart(); i < url.getHostEnd(); i++) {
+            h = (h ^ input.charAt(i)) * 0x100000001b3L;
+        }
+        // Separators are outside of the char range.
+        h = (h ^ 0x10000) * 0x100000001b3L;
+        for (int i = url.getPathStart(); i < url.getPathEnd(); i++) {
+            h = (h ^ input.charAt(i)) * 0x100000001b3L;
+        }
+        for (int p = 0; p < url.getQueryParameterCount(); p++) {
+            int start = url.getQueryParameterStart(p);
+            int end = url.getQueryParameterEnd(p);
+            if (isStripped(input, start, end)) {
+                continue;
+            }
+            h = (h ^ 0x10001) * 0x100000001b3L;
+            for (int i = start; i < end; i++) {
+                h = (h ^ input.charAt(i)) * 0x100000001b3L;
+            }
+        }
+        // MurmurHash3 finalizer: FNV low bits are weak.
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+
+    private boolean isStripped(CharSequence input, int start, int end) {
+        int nameEnd = start;
+        while (nameEnd < end && input.charAt(nameEnd) != '=') {
+            nameEnd++;
+        }
+        for (String name : strippedNames) {
+            if (name.length() == nameEnd - start && regionMatches(name, input, start)) {
+                return true;
+            }
+        }
+        for (String prefix : strippedPrefixes) {
+            if (prefix.length() <= nameEnd - start && regionMatches(prefix, input, start)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean regionMatches(String folded, CharSequence input, int start) {
+        for (int i = 0; i < folded.length(); i++) {
+            char c = input.charAt(start + i);
+            if (folded.charAt(i) != (c >= 'A' && c <= 'Z' ? (char)(c + ('a' - 'A')) : c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String foldAscii(String s) {
+        StringBuilder folded = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            folded.append(c >= 'A' && c <= 'Z' ? (char)(c + ('a' - 'A')) : c);
+        }
+        return folded.toString();
+    }
+
+    /**
+     * Get the cached language id of an url.
+     *
+     * @param fingerprint the url fingerprint
+     * @return the language id, possibly {@link LanguageRegistry#NO_LANGUAGE}, or {@link #MISS}
+     */
+    public int get(long fingerprint) {
+        long tag = tag(fingerprint);
+        int base = bucket(fingerprint) * WAYS;
+        for (int i = base; i < base + WAYS; i++) {
+            long entry = entries.get(i);
+            if ((entry & ~ID_MASK) == tag) {
+                if (referenced[i] == 0) {
+                    referenced[i] = 1;
+                }
+                hits.increment();
+                int id = (int)(entry & ID_MASK);
+                return id == NO_ID ? LanguageRegistry.NO_LANGUAGE : id;
+            }
+        }
+        misses.increment();
+        return MISS;
+    }
+
+    /**
+     * Cache the language id of an url, evicting the bucket entry under the clock hand if needed.
+     *
+     * @param fingerprint the url fingerprint
+     * @param languageId the language id, negative if none
+     */
+    public void put(long fingerprint, int languageId) {
+        if (languageId >= NO_ID) {
+            // Not representable, not cached.
+            return;
+        }
+        long tag = tag(fingerprint);
+        long newEntry = tag | (languageId < 0 ? NO_ID : languageId);
+        int bucket = bucket(fingerprint);
+        int base = bucket * WAYS;
+        for (int i = base; i < base + WAYS; i++) {
+            long entry = entries.get(i);
+            if (entry == 0 || (entry & ~ID_MASK) == tag) {
+                entries.compareAndSet(i, entry, newEntry);
+                return;
+            }
+        }
+
+        // Clock: clear reference bits until an entry not read since the last pass is found.
+        int hand = hands[bucket];
+        for (int n = 0; n <= WAYS; n++) {
+            int i = base + ((hand + n) & (WAYS - 1));
+            if (referenced[i] != 0 && n < WAYS) {
+                referenced[i] = 0;
+                continue;
+            }
+            hands[bucket] = (byte)((hand + n + 1) & (WAYS - 1));
+            long entry = entries.get(i);
+            if (entries.compareAndSet(i, entry, newEntry)) {
+                referenced[i] = 0;
+                evictions.increment();
+            }
+            return;
+        }
+    }
+
+    /**
+     * Discard all cached results. Statistics are kept.
+     */
+    public void invalidateAll() {
+        for (int i = 0; i < entries.length(); i++) {
+            entries.set(i, 0);
+        }
+    }
+
+    private static long tag(long fingerprint) {
+        long tag = fingerprint & ~ID_MASK;
+        // Zero marks empty entries.
+        return tag != 0 ? tag : 1L << 16;
+    }
+
+    private int bucket(long fingerprint) {
+        return (int)(fingerprint ^ (fingerprint >>> 32)) & bucketMask;
+    }
+
+    /**
+     * Gets a snapshot of cache statistics.
+     *
+     * @return the stats
+     */
+    public Stats getStats() {
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), getCapacity());
+    }
+
+    /**
+     * Result cache statistics snapshot.
+     */
+    public static class Stats {
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+        private final int capacity;
+
+        Stats(long hitCount, long missCount, long evictionCount, int capacity) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.capacity = capacity;
+        }
+
+        public long getHitCount() { return hitCount; }
+        public long getMissCount() { return missCount; }
+        public long getEvictionCount() { return evictionCount; }
+        public int getCapacity() { return capacity; }
+
+        /**
+         * Gets hit rate.
+         *
+         * @return the ratio of lookups found in cache, 1.0 if no lookups yet
+         */
+        public double getHitRate() {
+            long requests = hitCount + missCount;
+            return requests == 0 ? 1.0 : (double)hitCount / requests;
+        }
+
+        @Override
+        public String toString() {
+            return "URLResultCache.Stats{hits=" + hitCount + ", misses=" + missCount
+                    + ", evictions=" + evictionCount + ", capacity=" + capacity + "}";
+        }
+    }
+}
@@ -0,0 +1,667 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.url;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Non-throwing URL tokenizer.
+ *
+ * <p>Splits an absolute URL into protocol, host, path and query components recorded as offsets
+ * into the original character sequence. Slices are identical to those returned by
+ * {@link java.net.URL#getHost()}, {@link java.net.URL#getPath()} and {@link java.net.URL#getQuery()}
+ * for hierarchical protocols (http, https, ftp and file). Inputs that {@link java.net.URL} would reject
+ * are reported with a status code instead of an exception.</p>
+ *
+ * <p>Other protocols with a built-in {@link java.net.URL} handler (jar, mailto, jrt, netdoc when available) are
+ * parsed by their handler, so that they are accepted exactly as before. Their slices are then offsets into a
+ * copy of the url components: always read them through {@link #getInput()}. Any other protocol (ex: javascript,
+ * data, tel) is rejected without parsing.</p>
+ *
+ * <p>The tokenized url is also the detection context shared by profile selection and all matchers:
+ * derived views (query parameters, path segments) are computed lazily, at most once per url.</p>
+ *
+ * <p>Instances are mutable and meant to be reused by a single thread.</p>
+ *
+ * @author Michel Lemay
+ */
+public final class URLTokenizer {
+    /**
+     * Url was successfully tokenized.
+     */
+    public static final int OK = 0;
+    /**
+     * No protocol found (ex: empty url or 'http//host').
+     */
+    public static final int NO_PROTOCOL = 1;
+    /**
+     * Protocol is not a supported hierarchical protocol.
+     */
+    public static final int UNKNOWN_PROTOCOL = 2;
+    /**
+     * Invalid authority field (ex: malformed IPv6 literal).
+     */
+    public static final int INVALID_AUTHORITY = 3;
+    /**
+     * Invalid port number.
+     */
+    public static final int INVALID_PORT = 4;
+    /**
+     * Url rejected by the handler of a protocol other than http, https, ftp and file.
+     */
+    public static final int INVALID_URL = 5;
+
+    private static final String[] PROTOCOLS = { "http", "https", "ftp", "file" };
+    // Probed once: java.net.URL is only called for protocols it has a handler for.
+    private static final String[] HANDLER_PROTOCOLS = availableProtocols("jar", "mailto", "jrt", "netdoc");
+    // Characters java.net.URL refuses in hosts, besides controls: compatibility forms of URL delimiters.
+    private static final String INVALID_HOST_CHARS = "\u2047\u2048\u2049\u2100\u2101\u2105\u2106\u2a74"
+            + "\ufe55\ufe56\ufe5f\ufe6b\uff03\uff0f\uff1a\uff1f\uff20";
+    // Urls rejected by protocol handlers, for tests.
+    static final AtomicLong HANDLER_FAILURES = new AtomicLong();
+
+    private CharSequence input;
+    private int status = NO_PROTOCOL;
+    private int protocolStart;
+    private int protocolEnd;
+    private int hostStart;
+    private int hostEnd;
+    private int port;
+    private int pathStart;
+    private int pathEnd;
+    private int queryStart;
+    private int queryEnd;
+    private int refStart;
+    private int refEnd;
+
+    // Query parameters offsets pairs, computed on first use (count is -1 until then).
+    private int[] queryParameters = new int[16];
+    private int queryParameterCount;
+    // Path segments offsets pairs, computed up to the last segment requested.
+    private int[] pathSegments = new int[16];
+    private int pathSegmentCount;
+    private int pathScanStart;
+
+    /**
+     * Tokenize an url.
+     *
+     * @param url the url
+     * @return the status code, {@link #OK} if the url is valid
+     */
+    public int tokenize(CharSequence url) {
+        this.input = url;
+        reset();
+        status = parse(url);
+        return status;
+    }
+
+    private void reset() {
+        protocolStart = protocolEnd = 0;
+        hostStart = hostEnd = 0;
+        port = -1;
+        pathStart = pathEnd = 0;
+        queryStart = queryEnd = -1;
+        refStart = refEnd = -1;
+        queryParameterCount = -1;
+        pathSegmentCount = 0;
+        pathScanStart = -1;
+    }
+
+    private int parse(CharSequence spec) {
+        if (spec == null) {
+            return NO_PROTOCOL;
+        }
+
+        // Trim leading and trailing control characters and spaces.
+        int start = 0;
+        int limit = spec.length();
+        while (limit > 0 && spec.charAt(limit - 1) <= ' ') {
+            limit--;
+        }
+        while (start < limit && spec.charAt(start) <= ' ') {
+            start++;
+        }
+        if (regionMatchesIgnoreCase(spec, start, limit, "url:")) {
+            start += 4;
+        }
+
+        // Protocol
+        boolean hasRef = start < limit && spec.charAt(start) == '#';
+        boolean hasProtocol = false;
+        for (int i = start; !hasRef && i < limit; i++) {
+            char c = spec.charAt(i);
+            if (c == '/') {
+                break;
+            }
+            if (c == ':') {
+                if (isValidProtocol(spec, start, i)) {
+                    protocolStart = start;
+                    protocolEnd = i;
+                    hasProtocol = true;
+                    start = i + 1;
+                }
+                break;
+            }
+        }
+        if (!hasProtocol) {
+            return NO_PROTOCOL;
+        }
+        if (!isProtocol(PROTOCOLS, spec, protocolStart, protocolEnd)) {
+            return isProtocol(HANDLER_PROTOCOLS, spec, protocolStart, protocolEnd) ? parseWithHandler(spec.toString()) : UNKNOWN_PROTOCOL;
+        }
+
+        // Reference
+        int ref = indexOf(spec, '#', start, limit);
+        if (ref >= 0) {
+            refStart = ref + 1;
+            refEnd = limit;
+            limit = ref;
+        }
+
+        // Query
+        if (start < limit) {
+            int query = indexOf(spec, '?', start, limit);
+            if (query >= 0) {
+                queryStart = query + 1;
+                queryEnd = limit;
+                limit = query;
+            }
+        }
+
+        // Authority (UNC names with 4 slashes are treated as a path)
+        boolean isUNCName = start <= limit - 4 && spec.charAt(start) == '/' && spec.charAt(start + 1) == '/'
+                && spec.charAt(start + 2) == '/' && spec.charAt(start + 3) == '/';
+        if (!isUNCName && start <= limit - 2 && spec.charAt(start) == '/' && spec.charAt(start + 1) == '/') {
+            start += 2;
+            int authorityEnd = indexOf(spec, '/', start, limit);
+            if (authorityEnd < 0) {
+                authorityEnd = limit;
+            }
+
+            int authorityStatus = parseAuthority(spec, start, authorityEnd);
+            if (authorityStatus != OK) {
+                return authorityStatus;
+            }
+            start = authorityEnd;
+        } else {
+            hostStart = hostEnd = start;
+        }
+
+        // Path
+        pathStart = start;
+        pathEnd = Math.max(start, limit);
+        pathScanStart = pathStart < pathEnd && spec.charAt(pathStart) == '/' ? pathStart + 1 : pathStart;
+        return OK;
+    }
+
+    /**
+     * Parse with java.net.URL and record its slices in a copy of the url components.
+     */
+    private int parseWithHandler(String spec) {
+        URL url;
+        try {
+            url = new URL(spec);
+        } catch (MalformedURLException e) {
+            HANDLER_FAILURES.incrementAndGet();
+            return INVALID_URL;
+        }
+
+        StringBuilder components = new StringBuilder(spec.length());
+        components.append(url.getProtocol());
+        protocolStart = 0;
+        protocolEnd = components.length();
+        components.append(':');
+        hostStart = components.length();
+        components.append(url.getHost());
+        hostEnd = components.length();
+        port = url.getPort();
+        pathStart = components.length();
+        components.append(url.getPath());
+        pathEnd = components.length();
+        if (url.getQuery() != null) {
+            queryStart = components.append('?').length();
+            queryEnd = components.append(url.getQuery()).length();
+        }
+        if (url.getRef() != null) {
+            refStart = components.append('#').length();
+            refEnd = components.append(url.getRef()).length();
+        }
+        input = components.toString();
+        pathScanStart = pathStart < pathEnd && input.charAt(pathStart) == '/' ? pathStart + 1 : pathStart;
+        return OK;
+    }
+
+    private int parseAuthority(CharSequence spec, int start, int end) {
+        int at = indexOf(spec, '@', start, end);
+        if (at >= 0 && at != lastIndexOf(spec, '@', start, end)) {
+            // More than one '@' in authority: this is not server based, host is empty.
+            hostStart = hostEnd = start;
+            return OK;
+        }
+
+        int host = at >= 0 ? at + 1 : start;
+        if (host < end && spec.charAt(host) == '[') {
+            // IPv6 literal address as specified in RFC2732
+            int close = indexOf(spec, ']', host, end);
+            if (close <= host + 2 || !isIPv6Literal(spec, host + 1, close)) {
+                return INVALID_AUTHORITY;
+            }
+            hostStart = host;
+            hostEnd = close + 1;
+            if (!isValidHost(spec, hostStart, hostEnd)) {
+                return INVALID_AUTHORITY;
+            }
+            if (hostEnd < end) {
+                if (spec.charAt(hostEnd) != ':') {
+                    return INVALID_AUTHORITY;
+                }
+                return parsePort(spec, hostEnd + 1, end);
+            }
+            return OK;
+        }
+
+        int colon = indexOf(spec, ':', host, end);
+        hostStart = host;
+        hostEnd = colon >= 0 ? colon : end;
+        if (!isValidHost(spec, hostStart, hostEnd)) {
+            return INVALID_AUTHORITY;
+        }
+        return colon >= 0 ? parsePort(spec, colon + 1, end) : OK;
+    }
+
+    private static boolean isValidHost(CharSequence spec, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = spec.charAt(i);
+            if (c < ' ' || c == '\u007F' || (c >= '\u2047' && INVALID_HOST_CHARS.indexOf(c) >= 0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int parsePort(CharSequence spec, int start, int end) {
+        // Port can be empty according to RFC2396.
+        if (start >= end) {
+            return OK;
+        }
+
+        boolean negative = false;
+        int i = start;
+        char first = spec.charAt(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            if (++i == end) {
+                return INVALID_PORT;
+            }
+        }
+
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = Character.digit(spec.charAt(i), 10);
+            if (digit < 0) {
+                return INVALID_PORT;
+            }
+            value = value * 10 + digit;
+            if (value > Integer.MAX_VALUE + 1L) {
+                return INVALID_PORT;
+            }
+        }
+        value = negative ? -value : value;
+        if (value < -1 || value > Integer.MAX_VALUE) {
+            return INVALID_PORT;
+        }
+        port = (int)value;
+        return OK;
+    }
+
+    /**
+     * Same validation as java.net.URL: 8 groups of up to 4 hex digits, at most one '::' and an optional
+     * trailing dotted IPv4 address, followed by an optional scope id.
+     */
+    private static boolean isIPv6Literal(CharSequence spec, int start, int end) {
+        int scope = indexOf(spec, '%', start, end);
+        if (scope >= 0) {
+            if (scope == end - 1) {
+                return false;
+            }
+            end = scope;
+        }
+        int i = start;
+        if (i < end && spec.charAt(i) == ':' && (++i == end || spec.charAt(i) != ':')) {
+            return false;
+        }
+
+        int groups = 0;
+        int groupStart = i;
+        boolean compressed = false;
+        boolean sawDigits = false;
+        int value = 0;
+        while (i < end) {
+            char c = spec.charAt(i++);
+            int digit = Character.digit(c, 16);
+            if (digit >= 0) {
+                value = (value << 4) | digit;
+                if (value > 0xFFFF) {
+                    return false;
+                }
+                sawDigits = true;
+            } else if (c == ':') {
+                groupStart = i;
+                if (!sawDigits) {
+                    if (compressed) {
+                        return false;
+                    }
+                    compressed = true;
+                } else if (i == end) {
+                    return false;
+                } else {
+                    groups++;
+                    sawDigits = false;
+                    value = 0;
+                }
+            } else if (c == '.' && groups + 2 <= 8) {
+                if (!isIPv4Literal(spec, groupStart, end)) {
+                    return false;
+                }
+                groups += 2;
+                sawDigits = false;
+                break;
+            } else {
+                return false;
+            }
+        }
+        if (sawDigits) {
+            groups++;
+        }
+        return compressed ? groups < 8 : groups == 8;
+    }
+
+    private static boolean isIPv4Literal(CharSequence spec, int start, int end) {
+        int parts = 0;
+        int value = -1;
+        for (int i = start; i <= end; i++) {
+            char c = i < end ? spec.charAt(i) : '.';
+            if (c == '.') {
+                if (value < 0 || ++parts > 4) {
+                    return false;
+                }
+                value = -1;
+            } else if (c >= '0' && c <= '9') {
+                value = (value < 0 ? 0 : value * 10) + (c - '0');
+                if (value > 0xFF) {
+                    return false;
+                }
+            } else {
+                return false;
+            }
+        }
+        return parts == 4;
+    }
+
+    private static boolean isValidProtocol(CharSequence spec, int start, int end) {
+        if (end <= start || !isAsciiLetter(spec.charAt(start))) {
+            return false;
+        }
+        for (int i = start + 1; i < end; i++) {
+            char c = spec.charAt(i);
+            if (!isAsciiLetter(c) && !(c >= '0' && c <= '9') && c != '.' && c != '+' && c != '-') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String[] availableProtocols(String... protocols) {
+        List<String> available = new ArrayList<String>();
+        for (String protocol : protocols) {
+            try {
+                new URL(protocol, "", -1, "");
+                available.add(protocol);
+            } catch (MalformedURLException e) {
+                // No handler in this JVM
+            }
+        }
+        return available.toArray(new String[0]);
+    }
+
+    private static boolean isProtocol(String[] protocols, CharSequence spec, int start, int end) {
+        for (String protocol : protocols) {
+            if (protocol.length() == end - start && regionMatchesIgnoreCase(spec, start, end, protocol)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean regionMatchesIgnoreCase(CharSequence spec, int start, int end, String lowerCaseValue) {
+        if (end - start < lowerCaseValue.length()) {
+            return false;
+        }
+        for (int i = 0; i < lowerCaseValue.length(); i++) {
+            char c = spec.charAt(start + i);
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            if (c != lowerCaseValue.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(CharSequence spec, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (spec.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(CharSequence spec, char c, int start, int end) {
+        for (int i = end - 1; i >= start; i--) {
+            if (spec.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the tokenized input.
+     *
+     * @return the input
+     */
+    public CharSequence getInput() { return input; }
+
+    /**
+     * Gets the status of the last tokenization.
+     *
+     * @return the status
+     */
+    public int getStatus() { return status; }
+
+    /**
+     * Is the last tokenized url valid.
+     *
+     * @return true if valid
+     */
+    public boolean isValid() { return status == OK; }
+
+    public int getProtocolStart() { return protocolStart; }
+    public int getProtocolEnd() { return protocolEnd; }
+
+    public int getHostStart() { return hostStart; }
+    public int getHostEnd() { return hostEnd; }
+
+    /**
+     * Gets port.
+     *
+     * @return the port or -1 if not set
+     */
+    public int getPort() { return port; }
+
+    public int getPathStart() { return pathStart; }
+    public int getPathEnd() { return pathEnd; }
+
+    /**
+     * Has a query string (possibly empty).
+     *
+     * @return true if the url has a query string
+     */
+    public boolean hasQuery() { return queryStart >= 0; }
+    public int getQueryStart() { return queryStart; }
+    public int getQueryEnd() { return queryEnd; }
+
+    /**
+     * Has a reference (possibly empty).
+     *
+     * @return true if the url has a reference
+     */
+    public boolean hasRef() { return refStart >= 0; }
+    public int getRefStart() { return refStart; }
+    public int getRefEnd() { return refEnd; }
+
+    /**
+     * Zero-copy view over a range of the tokenized input.
+     *
+     * @param start the start offset
+     * @param end the end offset
+     * @return the slice
+     */
+    public CharSequence slice(int start, int end) {
+        return CharBuffer.wrap(input, start, end);
+    }
+
+    /**
+     * Gets host as a new String.
+     *
+     * @return the host
+     */
+    public String getHost() { return input.subSequence(hostStart, hostEnd).toString(); }
+
+    /**
+     * Gets path as a new String.
+     *
+     * @return the path, empty if none
+     */
+    public String getPath() { return input.subSequence(pathStart, pathEnd).toString(); }
+
+    /**
+     * Gets query as a new String.
+     *
+     * @return the query or null if none
+     */
+    public String getQuery() { return hasQuery() ? input.subSequence(queryStart, queryEnd).toString() : null; }
+
+    /**
+     * Gets number of query parameters, 'name=value' ranges of the query. Same as String.split("&"):
+     * trailing empty parameters are dropped and an empty query has a single empty parameter.
+     *
+     * @return the number of query parameters, 0 if no query
+     */
+    public int getQueryParameterCount() {
+        if (queryParameterCount < 0) {
+            splitQuery();
+        }
+        return queryParameterCount;
+    }
+
+    public int getQueryParameterStart(int parameter) { return queryParameters[2 * parameter]; }
+    public int getQueryParameterEnd(int parameter) { return queryParameters[2 * parameter + 1]; }
+
+    private void splitQuery() {
+        queryParameterCount = 0;
+        if (!hasQuery()) {
+            return;
+        }
+        int start = queryStart;
+        int end = queryEnd;
+        if (start == end) {
+            addQueryParameter(start, end);
+            return;
+        }
+        while (end > start && input.charAt(end - 1) == '&') {
+            end--;
+        }
+
+        int parameterStart = start;
+        for (int i = start; i < end; i++) {
+            if (input.charAt(i) == '&') {
+                addQueryParameter(parameterStart, i);
+                parameterStart = i + 1;
+            }
+        }
+        if (end > start) {
+            addQueryParameter(parameterStart, end);
+        }
+    }
+
+    private void addQueryParameter(int start, int end) {
+        if (2 * queryParameterCount == queryParameters.length) {
+            queryParameters = Arrays.copyOf(queryParameters, queryParameters.length * 2);
+        }
+        queryParameters[2 * queryParameterCount] = start;
+        queryParameters[2 * queryParameterCount + 1] = end;
+        queryParameterCount++;
+    }
+
+    /**
+     * Has a path segment. Segments are the '/' separated parts of the path after the leading '/', possibly empty.
+     * Path is only scanned up to the requested segment.
+     *
+     * @param segment the segment index (0 based)
+     * @return true if the path has this segment
+     */
+    public boolean hasPathSegment(int segment) {
+        while (segment >= pathSegmentCount && pathScanStart >= 0) {
+            scanPathSegment();
+        }
+        return segment < pathSegmentCount;
+    }
+
+    public int getPathSegmentStart(int segment) { return pathSegments[2 * segment]; }
+    public int getPathSegmentEnd(int segment) { return pathSegments[2 * segment + 1]; }
+
+    private void scanPathSegment() {
+        if (pathStart == pathEnd) {
+            pathScanStart = -1;
+            return;
+        }
+        int segmentEnd = pathScanStart;
+        while (segmentEnd < pathEnd && input.charAt(segmentEnd) != '/') {
+            segmentEnd++;
+        }
+        if (2 * pathSegmentCount == pathSegments.length) {
+            pathSegments = Arrays.copyOf(pathSegments, pathSegments.length * 2);
+        }
+        pathSegments[2 * pathSegmentCount] = pathScanStart;
+        pathSegments[2 * pathSegmentCount + 1] = segmentEnd;
+        pathSegmentCount++;
+        pathScanStart = segmentEnd < pathEnd ? segmentEnd + 1 : -1;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay;
+
+import com.michellemay.config.Config;
+import com.michellemay.config.ConfigReader;
+import com.michellemay.matchers.MatcherConfig;
+
+import org.apache.commons.lang3.LocaleUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ReloadableURLLanguageDetector Tester.
+ *
+ * @author Michel Lemay
+ */
+public class ReloadableURLLanguageDetectorTest {
+    private static final String DEFAULT_URL = "http://en.test.com/";
+    private static final String TEST_URL = "http://mystuff.stuff?cv_lang=fr";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReload() throws Exception {
+        try (ReloadableURLLanguageDetector detector = new ReloadableURLLanguageDetector(ConfigReader.readBuiltIn())) {
+            URLLanguageDetector first = detector.getDetector();
+            assertEquals(detector.getGeneration(), 0);
+            assertEquals(detector.detect(DEFAULT_URL), Optional.of(LocaleUtils.toLocale("en")));
+            assertEquals(detector.detect(TEST_URL), Optional.empty());
+
+            assertTrue(detector.reload(ConfigReader.readBuiltIn(ConfigReader.TEST_CONFIG)));
+            assertEquals(detector.getGeneration(), 1);
+            assertEquals(detector.detect(DEFAULT_URL), Optional.empty());
+            assertEquals(detector.detect(TEST_URL), Optional.of(LocaleUtils.toLocale("fr")));
+
+            // Previous detectors keep working.
+            assertEquals(first.detect(DEFAULT_URL), Optional.of(LocaleUtils.toLocale("en")));
+
+            assertTrue(detector.reloadAsync(ConfigReader::readBuiltIn).get());
+            assertEquals(detector.getGeneration(), 2);
+            assertEquals(detector.detectAll(Collections.singletonList(DEFAULT_URL)).get(0), Optional.of(LocaleUtils.toLocale("en")));
+        }
+    }
+
+    @Test
+    public void testFailedReloadKeepsDetector() throws Exception {
+        Config invalid = ConfigReader.readBuiltIn();
+        MatcherConfig matcher = new MatcherConfig();
+        matcher.name = "invalid";
+        invalid.matchers = Collections.singletonList(matcher);
+
+        try (ReloadableURLLanguageDetector detector = new ReloadableURLLanguageDetector(ConfigReader.readBuiltIn(),
+                (config) -> URLLanguageDetectorBuilder.create(config).withMetrics(true).create())) {
+            URLLanguageDetector first = detector.getDetector();
+            assertFalse(detector.reload(invalid));
+            assertTrue(detector.getLastReloadFailure().get() instanceof IllegalArgumentException);
+
+            assertFalse(detector.reloadAsync(() -> { throw new java.io.IOException("unreadable"); }).get());
+            assertTrue(detector.getLastReloadFailure().get() instanceof java.io.IOException);
+
+            assertTrue(detector.getDetector() == first);
+            assertEquals(detector.getGeneration(), 0);
+            assertEquals(detector.detect(DEFAULT_URL), Optional.of(LocaleUtils.toLocale("en")));
+            assertEquals(detector.getMetrics().get().snapshot().getDetections(), 1);
+
+            assertTrue(detector.reload(ConfigReader.readBuiltIn()));
+            assertFalse(detector.getLastReloadFailure().isPresent());
+            assertEquals(detector.getMetrics().get().snapshot().getDetections(), 0);
+        }
+    }
+
+    @Test
+    public void testWatch() throws Exception {
+        Path configFile = folder.getRoot().toPath().resolve("profiles.json");
+        copyBuiltIn(ConfigReader.DEFAULT_CONFIG, configFile);
+
+        try (ReloadableURLLanguageDetector detector = new ReloadableURLLanguageDetector(ConfigReader.read(configFile))) {
+            detector.watch(configFile);
+            copyBuiltIn(ConfigReader.TEST_CONFIG, configFile);
+
+            long deadline = System.currentTimeMillis() + 60000;
+            while (!detector.detect(TEST_URL).isPresent() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertEquals(detector.detect(TEST_URL), Optional.of(LocaleUtils.toLocale("fr")));
+            assertTrue(detector.getGeneration() >= 1);
+        }
+    }
+
+    private static void copyBuiltIn(String configName, Path target) throws Exception {
+        Path temp = Files.createTempFile(target.getParent(), "profiles", ".tmp");
+        try (InputStream in = ConfigReader.class.getClassLoader().getResourceAsStream(configName)) {
+            Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -17,18 +17,30 @@
 package com.michellemay;
 
 import com.michellemay.config.ConfigReader;
+import com.michellemay.mappings.LanguageRegistry;
+import com.michellemay.metrics.MetricsSnapshot;
+import com.michellemay.profiles.HostProfileCache;
+import com.michellemay.url.URLResultCache;
 
 import org.apache.commons.lang3.LocaleUtils;
 import org.apache.commons.lang3.tuple.Pair;
 
 import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 import java.util.Locale;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -53,6 +65,9 @@ public class URLLanguageDetectorTest {
             // Empty or invalid url
             Pair.of("", ""),
             Pair.of("http//en.test.com", ""),
+            Pair.of("http://en.site.org\t/x", ""),
+            Pair.of("http://de.x.org\t:80/", ""),
+            Pair.of("javascript:void(0)", ""),
             // Domain too short
             Pair.of("http://en.com/", ""),
             Pair.of("http://fr/", ""),
@@ -128,4 +143,239 @@ public class URLLanguageDetectorTest {
         validateTestCases(makeNewDetector(ConfigReader.TEST_CONFIG), testCasesTest);
     }
 
+    @Test
+    public void validateTestCasesWithHostCache() throws Exception {
+        URLLanguageDetector detector = URLLanguageDetectorBuilder.create(ConfigReader.readBuiltIn(ConfigReader.TEST_CONFIG))
+                .withHostCache(100)
+                .create();
+        validateTestCases(detector, testCasesTest);
+        validateTestCases(detector, testCasesTest);
+
+        // mystuff.stuff, other.com and OTHER.COM share entries; unknown hosts are cached too.
+        detector.detect("http://unknown.org/");
+        detector.detect("http://UNKNOWN.org/");
+        HostProfileCache.Stats stats = detector.getHostCacheStats().get();
+        assertEquals(stats.getMissCount(), 3);
+        assertEquals(stats.getHitCount(), testCasesTest.size() * 2 - 2 + 1);
+        assertFalse(makeNewDetector(ConfigReader.TEST_CONFIG).getHostCacheStats().isPresent());
+    }
+
+    @Test
+    public void validateByteAndCharSequenceInputs() throws Exception {
+        URLLanguageDetector detector = makeNewDetector(ConfigReader.TEST_CONFIG);
+        URLLanguageDetector defaultDetector = makeNewDetector(ConfigReader.DEFAULT_CONFIG);
+        for (Pair<String, String> test : testCasesTest) {
+            validateInputs(detector, test.getKey());
+        }
+        for (Pair<String, String> test : testCasesDefault) {
+            validateInputs(defaultDetector, test.getKey());
+        }
+    }
+
+    @Test
+    public void validateDetectAll() throws Exception {
+        List<CharSequence> urls = new ArrayList<CharSequence>();
+        for (int i = 0; i < 5; i++) {
+            testCasesTest.forEach((test) -> urls.add(test.getKey()));
+            testCasesDefault.forEach((test) -> urls.add(new StringBuilder(test.getKey())));
+        }
+        Collections.shuffle(urls, new Random(42));
+
+        for (URLLanguageDetector detector : Arrays.asList(makeNewDetector(ConfigReader.TEST_CONFIG),
+                URLLanguageDetectorBuilder.create(ConfigReader.readBuiltIn(ConfigReader.DEFAULT_CONFIG)).withHostCache(10).create())) {
+            List<Optional<Locale>> expected = urls.stream().map(detector::detect).collect(Collectors.toList());
+            assertEquals(detector.detectAll(urls), expected);
+
+            Locale[] results = new Locale[urls.size() + 1];
+            Arrays.fill(results, Locale.ROOT);
+            detector.detectAll(urls, results);
+            for (int i = 0; i < urls.size(); i++) {
+                assertEquals(urls.get(i).toString(), Optional.ofNullable(results[i]), expected.get(i));
+            }
+            assertEquals(results[urls.size()], Locale.ROOT);
+        }
+
+        assertTrue(makeNewDetector(ConfigReader.TEST_CONFIG).detectAll(Collections.emptyList()).isEmpty());
+    }
+
+    @Test
+    public void validateDetectId() throws Exception {
+        List<CharSequence> urls = new ArrayList<CharSequence>();
+        testCasesTest.forEach((test) -> urls.add(test.getKey()));
+        testCasesDefault.forEach((test) -> urls.add(test.getKey()));
+
+        for (URLLanguageDetector detector : Arrays.asList(makeNewDetector(ConfigReader.DEFAULT_CONFIG),
+                URLLanguageDetectorBuilder.create(ConfigReader.readBuiltIn(ConfigReader.DEFAULT_CONFIG)).withMetrics(true).create())) {
+            int[] ids = new int[urls.size()];
+            detector.detectAll(urls, ids);
+            for (int i = 0; i < urls.size(); i++) {
+                Optional<Locale> expected = detector.detect(urls.get(i));
+                int id = detector.detectId(urls.get(i));
+                assertEquals(ids[i], id);
+                assertEquals(Optional.ofNullable(LanguageRegistry.getLocale(id)), expected);
+                assertEquals(id, LanguageRegistry.getId(expected.orElse(null)));
+                if (expected.isPresent()) {
+                    assertTrue(id >= 0 && id < LanguageRegistry.size());
+                    assertEquals(LanguageRegistry.getLanguageTag(id), expected.get().toLanguageTag());
+                }
+            }
+        }
+        assertEquals(makeNewDetector(ConfigReader.DEFAULT_CONFIG).detectId("malformed"), LanguageRegistry.NO_LANGUAGE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void validateDetectAllResultsSize() throws Exception {
+        makeNewDetector(ConfigReader.TEST_CONFIG).detectAll(Arrays.asList("http://en.test.com/"), new Locale[0]);
+    }
+
+    @Test
+    public void validateMetrics() throws Exception {
+        URLLanguageDetector detector = URLLanguageDetectorBuilder.create(ConfigReader.readBuiltIn(ConfigReader.TEST_CONFIG))
+                .withMetrics(true)
+                .create();
+        assertFalse(makeNewDetector(ConfigReader.TEST_CONFIG).getMetrics().isPresent());
+
+        detector.detect("http//en.test.com");                    // Malformed
+        detector.detect("http://unknown.org/");                  // No profile
+        detector.detect("http://mystuff.stuff?cv_lang=fr");      // Hit on third matcher
+        detector.detect("http://mystuff.stuff?CV_LANG=fr");      // All matchers attempted
+        detector.detect("http://other.com?lr=xx");               // Unknown language
+
+        MetricsSnapshot snapshot = detector.getMetrics().get().snapshotAndReset();
+        assertEquals(snapshot.getDetections(), 5);
+        assertEquals(snapshot.getMalformed(), 1);
+        assertEquals(snapshot.getNoProfile(), 1);
+        assertEquals(snapshot.getLatency().getCount(), 5);
+        assertEquals(snapshot.getProfiles().keySet(), new java.util.LinkedHashSet<String>(Arrays.asList("custom", "other")));
+
+        MetricsSnapshot.ProfileSnapshot custom = snapshot.getProfiles().get("custom");
+        assertEquals(custom.getResolutions(), 2);
+        assertEquals(custom.getLatency().getCount(), 2);
+        assertEquals(custom.getMatchers().stream().map(MetricsSnapshot.MatcherSnapshot::getName).collect(Collectors.toList()),
+                Arrays.asList("mypathregex1", "mypathregex2", "myquerystring1", "myquerystring2"));
+        assertEquals(custom.getMatchers().stream().map(MetricsSnapshot.MatcherSnapshot::getAttempts).collect(Collectors.toList()),
+                Arrays.asList(2L, 2L, 2L, 1L));
+        assertEquals(custom.getMatchers().stream().map(MetricsSnapshot.MatcherSnapshot::getHits).collect(Collectors.toList()),
+                Arrays.asList(0L, 0L, 1L, 0L));
+
+        MetricsSnapshot.MatcherSnapshot other = snapshot.getProfiles().get("other").getMatchers().get(0);
+        assertEquals(other.getAttempts(), 1);
+        assertEquals(other.getHits(), 0);
+        assertEquals(other.getMappingMisses(), 1);
+
+        // Counters were reset; batches count each url like single detections.
+        detector.detectAll(Arrays.asList("http//en.test.com", "http://mystuff.stuff?cv_lang=fr", "http://unknown.org/", "http://UNKNOWN.org/a"));
+        snapshot = detector.getMetrics().get().snapshot();
+        assertEquals(snapshot.getDetections(), 4);
+        assertEquals(snapshot.getLatency().getCount(), 4);
+        assertEquals(snapshot.getMalformed(), 1);
+        assertEquals(snapshot.getNoProfile(), 2);
+        assertEquals(snapshot.getProfiles().get("custom").getResolutions(), 1);
+        assertEquals(snapshot.getProfiles().get("other").getResolutions(), 0);
+
+        detector.getMetrics().get().reset();
+        assertEquals(detector.getMetrics().get().snapshot().getMalformed(), 0);
+    }
+
+    @Test
+    public void validateRegexBudget() throws Exception {
+        String url = "http://mystuff.stuff/docs/ANGLAIS/index.html";
+        URLLanguageDetectorBuilder builder = URLLanguageDetectorBuilder.create(ConfigReader.readBuiltIn(ConfigReader.TEST_CONFIG))
+                .withMetrics(true);
+        assertEquals(builder.create().detect(url), Optional.of(Locale.ENGLISH));
+        assertEquals(builder.withRegexBudget(0).create().detect(url), Optional.of(Locale.ENGLISH));
+
+        // Host regex reads more characters than allowed: aborted and reported as no match.
+        URLLanguageDetector detector = builder.withRegexBudget(10).create();
+        assertEquals(detector.detect(url), Optional.empty());
+        detector.detectAll(Arrays.asList(url, url));
+        MetricsSnapshot snapshot = detector.getMetrics().get().snapshot();
+        assertEquals(snapshot.getRegexAborts(), 2);
+        assertEquals(snapshot.getNoProfile(), 3);
+
+        // Budget does not leak outside of detectors.
+        assertEquals(com.michellemay.regex.RegexBudget.get().getRemaining(), Long.MAX_VALUE);
+    }
+
+    @Test
+    public void validateNegativeHostFilter() throws Exception {
+        URLLanguageDetector detector = URLLanguageDetectorBuilder.create(ConfigReader.readBuiltIn(ConfigReader.TEST_CONFIG))
+                .withNegativeHostFilter(2, 0.001, 1, TimeUnit.HOURS)
+                .withMetrics(true)
+                .create();
+        assertFalse(makeNewDetector(ConfigReader.TEST_CONFIG).getNegativeHostFilterStats().isPresent());
+
+        // Hosts without profile, or whose urls have no language, are skipped after 2 misses in a row.
+        detector.detect("http://unknown.org/");
+        detector.detect("http://unknown.org/fr/");
+        detector.detect("http://other.com?lr=xx");
+        detector.detect("http://other.com?lr=fr");
+        detector.detect("http://other.com?lr=xx");
+        assertEquals(detector.detect("http://unknown.org/"), Optional.empty());
+        assertEquals(detector.detect("http://other.com?lr=fr"), Optional.of(Locale.FRENCH));
+        detector.detect("http://other.com?lr=xx");
+        detector.detect("http://other.com?lr=xx");
+        assertEquals(detector.getNegativeHostFilterStats().get().getFilteredHosts(), 2);
+
+        // Even urls that would yield a language, until the filter ages.
+        detector.detectAll(Arrays.asList("http://unknown.org/a", "http://other.com?lr=fr", "http://unknown.org/b"));
+        assertEquals(detector.detect("http://other.com?lr=fr"), Optional.empty());
+        assertEquals(detector.getNegativeHostFilterStats().get().getSkippedCount(), 5);
+        assertEquals(detector.getMetrics().get().snapshot().getSkippedHosts(), 5);
+        assertEquals(detector.getMetrics().get().snapshot().getNoProfile(), 2);
+
+        // Other spellings of a host are not skipped.
+        detector.detect("http://UNKNOWN.org/");
+        assertEquals(detector.getNegativeHostFilterStats().get().getSkippedCount(), 5);
+        assertEquals(detector.getMetrics().get().snapshot().getNoProfile(), 3);
+
+        // Detections aborted by the regex budget are not misses.
+        String url = "http://mystuff.stuff/docs/ANGLAIS/index.html";
+        detector = URLLanguageDetectorBuilder.create(ConfigReader.readBuiltIn(ConfigReader.TEST_CONFIG))
+                .withNegativeHostFilter(1, 0.001, 1, TimeUnit.HOURS)
+                .withRegexBudget(10)
+                .create();
+        detector.detect(url);
+        detector.detectAll(Arrays.asList(url, url));
+        assertEquals(detector.getNegativeHostFilterStats().get().getFilteredHosts(), 0);
+    }
+
+    @Test
+    public void validateResultCache() throws Exception {
+        URLLanguageDetector detector = URLLanguageDetectorBuilder.create(ConfigReader.readBuiltIn(ConfigReader.TEST_CONFIG))
+                .withResultCache(1 << 20)
+                .create();
+        assertFalse(makeNewDetector(ConfigReader.TEST_CONFIG).getResultCacheStats().isPresent());
+        validateTestCases(detector, testCasesTest);
+        URLResultCache.Stats stats = detector.getResultCacheStats().get();
+        validateTestCases(detector, testCasesTest);
+        URLResultCache.Stats again = detector.getResultCacheStats().get();
+        assertEquals(again.getMissCount(), stats.getMissCount());
+        assertEquals(again.getHitCount() - stats.getHitCount(), stats.getMissCount() + stats.getHitCount());
+
+        // Same urls but tracking parameters, in batches too. Host case matters.
+        assertEquals(detector.detect("http://other.com?lr=fr"), Optional.of(Locale.FRENCH));
+        stats = detector.getResultCacheStats().get();
+        assertEquals(detector.detect("http://other.com?utm_source=news&lr=fr"), Optional.of(Locale.FRENCH));
+        assertEquals(detector.detectAll(Arrays.asList("http://other.com?lr=fr&gclid=x", "http://other.com/?lr=fr", "http://OTHER.com?lr=fr")),
+                Arrays.asList(Optional.of(Locale.FRENCH), Optional.of(Locale.FRENCH), Optional.of(Locale.FRENCH)));
+        again = detector.getResultCacheStats().get();
+        assertEquals(again.getHitCount() - stats.getHitCount(), 2);
+        assertEquals(again.getMissCount() - stats.getMissCount(), 2);
+    }
+
+    private void validateInputs(URLLanguageDetector detector, String url) {
+        Optional<Locale> expected = detector.detect(url);
+        byte[] utf8 = ("  " + url + "\n").getBytes(StandardCharsets.UTF_8);
+        int length = utf8.length - 3;
+
+        assertEquals(url, detector.detect(new StringBuilder(url)), expected);
+        assertEquals(url, detector.detect(utf8, 2, length), expected);
+        assertEquals(url, detector.detect(ByteBuffer.wrap(utf8, 2, length)), expected);
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(utf8.length);
+        direct.put(utf8).position(2).limit(2 + length);
+        assertEquals(url, detector.detect(direct), expected);
+        assertEquals(url, direct.position(), 2);
+    }
 }
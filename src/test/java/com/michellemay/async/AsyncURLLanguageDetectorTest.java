@@ -0,0 +1,276 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.async;
+
+import com.michellemay.URLLanguageDetector;
+import com.michellemay.URLLanguageDetectorBuilder;
+import com.michellemay.config.ConfigReader;
+
+import org.junit.Test;
+import org.reactivestreams.Processor;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * AsyncURLLanguageDetector Tester.
+ *
+ * @author Michel Lemay
+ */
+public class AsyncURLLanguageDetectorTest {
+    private static final String[] URLS = {
+            "http://en.test.com/", "http://www.test.com/fr/index.html", "http://www.test.com/?lang=de", "http//malformed", "http://unknown.test.com/"
+    };
+
+    private static URLLanguageDetector newDetector() throws Exception {
+        return URLLanguageDetectorBuilder.create(ConfigReader.readBuiltIn()).create();
+    }
+
+    private static List<String> urls(int count) {
+        List<String> urls = new ArrayList<String>();
+        for (int i = 0; i < count; i++) {
+            urls.add(URLS[i % URLS.length] + (i % 7 == 0 ? "" : "#" + i));
+        }
+        return urls;
+    }
+
+    /**
+     * Detector counting batches.
+     */
+    private static final class CountingDetector implements URLLanguageDetector {
+        private final URLLanguageDetector detector;
+        private final AtomicInteger batches = new AtomicInteger();
+
+        CountingDetector(URLLanguageDetector detector) {
+            this.detector = detector;
+        }
+
+        @Override
+        public Optional<Locale> detect(CharSequence url) { return detector.detect(url); }
+
+        @Override
+        public void detectAll(List<? extends CharSequence> urls, int[] results) {
+            batches.incrementAndGet();
+            detector.detectAll(urls, results);
+        }
+    }
+
+    @Test
+    public void testDetectAsync() throws Exception {
+        URLLanguageDetector detector = newDetector();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            AsyncURLLanguageDetector async = new AsyncURLLanguageDetector(detector, executor).withParallelism(3).withBatchSize(8);
+            List<String> urls = urls(1000);
+            List<CompletableFuture<Optional<Locale>>> futures = new ArrayList<CompletableFuture<Optional<Locale>>>();
+            for (String url : urls) {
+                futures.add(async.detectAsync(url));
+            }
+            for (int i = 0; i < urls.size(); i++) {
+                assertEquals(urls.get(i), futures.get(i).get(10, TimeUnit.SECONDS), detector.detect(urls.get(i)));
+            }
+            assertEquals(async.getPending(), 0);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testMicroBatchesAndMaxPending() throws Exception {
+        CountingDetector detector = new CountingDetector(newDetector());
+        Queue<Runnable> tasks = new ArrayDeque<Runnable>();
+        AsyncURLLanguageDetector async = new AsyncURLLanguageDetector(detector, tasks::add)
+                .withParallelism(1)
+                .withBatchSize(4)
+                .withMaxPending(10);
+
+        List<CompletableFuture<Optional<Locale>>> futures = new ArrayList<CompletableFuture<Optional<Locale>>>();
+        for (String url : urls(11)) {
+            futures.add(async.detectAsync(url));
+        }
+        assertEquals(tasks.size(), 1);
+        assertEquals(async.getPending(), 10);
+        try {
+            futures.get(10).get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+
+        // A single worker detects queued urls in batches.
+        tasks.poll().run();
+        assertEquals(detector.batches.get(), 3);
+        assertEquals(async.getPending(), 0);
+        assertTrue(tasks.isEmpty());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(futures.get(i).get(), detector.detect(urls(11).get(i)));
+        }
+    }
+
+    @Test
+    public void testRejectedExecution() throws Exception {
+        AsyncURLLanguageDetector async = new AsyncURLLanguageDetector(newDetector(), (task) -> { throw new RejectedExecutionException(); });
+        CompletableFuture<Optional<Locale>> future = async.detectAsync(URLS[0]);
+        assertTrue(future.isCompletedExceptionally());
+        assertEquals(async.getPending(), 0);
+    }
+
+    /**
+     * Publisher of a list honoring demand, recording requests.
+     */
+    private static final class ListPublisher implements Publisher<CharSequence> {
+        private final List<String> urls;
+        private final AtomicInteger maxOutstanding = new AtomicInteger();
+
+        ListPublisher(List<String> urls) {
+            this.urls = urls;
+        }
+
+        @Override
+        public void subscribe(Subscriber<? super CharSequence> subscriber) {
+            subscriber.onSubscribe(new Subscription() {
+                private long demand;
+                private int next;
+                private boolean emitting;
+
+                @Override
+                public synchronized void request(long n) {
+                    demand += n;
+                    maxOutstanding.accumulateAndGet((int)demand, Math::max);
+                    if (emitting) {
+                        return;
+                    }
+                    emitting = true;
+                    while (demand > 0 && next < urls.size()) {
+                        demand--;
+                        subscriber.onNext(urls.get(next++));
+                    }
+                    if (next == urls.size()) {
+                        next++;
+                        subscriber.onComplete();
+                    }
+                    emitting = false;
+                }
+
+                @Override
+                public void cancel() { }
+            });
+        }
+    }
+
+    /**
+     * Subscriber requesting results in small chunks.
+     */
+    private static class ChunkSubscriber implements Subscriber<DetectionResult> {
+        final List<DetectionResult> results = Collections.synchronizedList(new ArrayList<DetectionResult>());
+        final CountDownLatch terminated = new CountDownLatch(1);
+        volatile Throwable error;
+        private Subscription subscription;
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(3);
+        }
+
+        @Override
+        public void onNext(DetectionResult result) {
+            results.add(result);
+            if (results.size() % 3 == 0) {
+                subscription.request(3);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            terminated.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            terminated.countDown();
+        }
+    }
+
+    @Test
+    public void testProcessor() throws Exception {
+        URLLanguageDetector detector = newDetector();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            AsyncURLLanguageDetector async = new AsyncURLLanguageDetector(detector, executor).withParallelism(4).withBatchSize(5);
+            List<String> urls = urls(500);
+            ListPublisher publisher = new ListPublisher(urls);
+            Processor<CharSequence, DetectionResult> processor = async.processor(32);
+            ChunkSubscriber subscriber = new ChunkSubscriber();
+            processor.subscribe(subscriber);
+            publisher.subscribe(processor);
+
+            assertTrue(subscriber.terminated.await(10, TimeUnit.SECONDS));
+            assertEquals(subscriber.error, null);
+            assertEquals(subscriber.results.size(), urls.size());
+            for (int i = 0; i < urls.size(); i++) {
+                DetectionResult result = subscriber.results.get(i);
+                assertEquals(result.getUrl(), urls.get(i));
+                assertEquals(result.getLanguage(), detector.detect(urls.get(i)));
+            }
+            assertTrue(publisher.maxOutstanding.get() <= 32);
+
+            // Single subscriber
+            ChunkSubscriber second = new ChunkSubscriber();
+            processor.subscribe(second);
+            assertTrue(second.terminated.await(1, TimeUnit.SECONDS));
+            assertTrue(second.error instanceof IllegalStateException);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testProcessorInvalidRequest() throws Exception {
+        Processor<CharSequence, DetectionResult> processor = new AsyncURLLanguageDetector(newDetector()).processor();
+        ChunkSubscriber subscriber = new ChunkSubscriber() {
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                subscription.request(0);
+            }
+        };
+        processor.subscribe(subscriber);
+        assertTrue(subscriber.terminated.await(1, TimeUnit.SECONDS));
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.cli;
+
+import com.michellemay.URLLanguageDetector;
+import com.michellemay.URLLanguageDetectorBuilder;
+import com.michellemay.config.ConfigReader;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * URLFileClassifier Tester.
+ *
+ * @author Michel Lemay
+ */
+public class URLFileClassifierTest {
+    private static final List<String> URLS = Arrays.asList(
+            "http://en.test.com/",
+            "http://www.wikipedia.org/fr/page",
+            "http://fr.wikipedia.org/wiki/Paris",
+            "http://www.test.com/stuff?lang=de",
+            "http://www.test.com/stuff?language=Spanish&with=a-very-long-query-string-that-does-not-fit-in-a-chunk",
+            "malformed",
+            "http://unknown.org/");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private URLLanguageDetector detector() throws IOException {
+        return URLLanguageDetectorBuilder.create(ConfigReader.readBuiltIn()).create();
+    }
+
+    private List<String> lines(int count) {
+        List<String> lines = new ArrayList<String>();
+        for (int i = 0; i < count; i++) {
+            lines.add(URLS.get(i % URLS.size()));
+        }
+        return lines;
+    }
+
+    private String expected(URLLanguageDetector detector, List<String> lines) {
+        StringBuilder expected = new StringBuilder();
+        for (String line : lines) {
+            expected.append(line).append('\t').append(detector.detect(line).map(Locale::toLanguageTag).orElse("")).append('\n');
+        }
+        return expected.toString();
+    }
+
+    private String classify(URLFileClassifier classifier, Path... inputs) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        URLFileClassifier.Stats stats = classifier.classify(Arrays.asList(inputs), output);
+        assertEquals(stats.getLines(), output.toString("UTF-8").split("\n").length);
+        return output.toString("UTF-8");
+    }
+
+    @Test
+    public void testPlainFile() throws Exception {
+        URLLanguageDetector detector = detector();
+        List<String> lines = lines(1000);
+        Path input = folder.newFile("urls.txt").toPath();
+        // CRLF, blank lines and no trailing new line.
+        Files.write(input, (String.join("\r\n", lines) + "\n\n" + "http://en.test.com/").getBytes(StandardCharsets.UTF_8));
+
+        List<String> expectedLines = new ArrayList<String>(lines);
+        expectedLines.add("http://en.test.com/");
+        for (int chunkSize : Arrays.asList(1, 64, 1 << 20)) {
+            URLFileClassifier classifier = new URLFileClassifier(detector).withThreads(4).withChunkSize(chunkSize);
+            assertEquals(classify(classifier, input), expected(detector, expectedLines));
+        }
+    }
+
+    @Test
+    public void testGzipFiles() throws Exception {
+        URLLanguageDetector detector = detector();
+        List<String> lines = lines(500);
+        Path gzip = folder.newFile("urls.txt.gz").toPath();
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzip))) {
+            out.write((String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        Path plain = folder.newFile("more.txt").toPath();
+        Files.write(plain, lines, StandardCharsets.UTF_8);
+
+        List<String> expectedLines = new ArrayList<String>(lines);
+        expectedLines.addAll(lines);
+        for (int chunkSize : Arrays.asList(16, 1 << 20)) {
+            URLFileClassifier classifier = new URLFileClassifier(detector).withThreads(3).withChunkSize(chunkSize);
+            assertEquals(classify(classifier, gzip, plain), expected(detector, expectedLines));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testMissingFile() throws Exception {
+        new URLFileClassifier(detector()).classify(Collections.singletonList(folder.getRoot().toPath().resolve("missing")), new ByteArrayOutputStream());
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.mappings;
+
+import org.apache.commons.lang3.LocaleUtils;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * LanguageRegistry Tester.
+ *
+ * @author Michel Lemay
+ */
+public class LanguageRegistryTest {
+    @Test
+    public void testRegister() throws Exception {
+        Locale locale = new Locale("xx", "YY", "registry");
+        assertEquals(LanguageRegistry.getId(locale), LanguageRegistry.NO_LANGUAGE);
+        assertEquals(LanguageRegistry.getId(null), LanguageRegistry.NO_LANGUAGE);
+
+        int id = LanguageRegistry.register(locale);
+        assertTrue(id >= 0 && id < LanguageRegistry.size());
+        assertEquals(LanguageRegistry.register(new Locale("xx", "YY", "registry")), id);
+        assertEquals(LanguageRegistry.getId(locale), id);
+        assertEquals(LanguageRegistry.getLocale(id), locale);
+        assertEquals(LanguageRegistry.getLanguageTag(id), locale.toLanguageTag());
+        assertEquals(LanguageRegistry.getLocale(LanguageRegistry.NO_LANGUAGE), null);
+    }
+
+    @Test
+    public void testMappingIds() throws Exception {
+        Mapping iso2 = new MappingsFactory(Collections.emptyList()).getMappings().get("ISO-639-ALPHA-2");
+        int id = iso2.lookupId("/FR/", 1, 3);
+        assertEquals(LanguageRegistry.getLocale(id), LocaleUtils.toLocale("fr"));
+        assertEquals(iso2.lookupId("/xx/", 1, 3), LanguageRegistry.NO_LANGUAGE);
+
+        // Ids are dense: every language of a mapping in use is registered.
+        for (Locale locale : iso2.getMapping().values()) {
+            assertTrue(LanguageRegistry.getId(locale) < LanguageRegistry.size());
+            assertTrue(LanguageRegistry.getId(locale) >= 0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownId() throws Exception {
+        LanguageRegistry.getLocale(LanguageRegistry.size());
+    }
+}
@@ -18,6 +18,7 @@ package com.michellemay.mappings;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 
 import org.apache.commons.lang3.LocaleUtils;
 import org.junit.Test;
@@ -130,10 +131,123 @@ public class MappingsFactoryTest {
         assertEquals(mapping.getMapping().get("francais"), LocaleUtils.toLocale("fr"));
     }
 
+    @Test
+    public void testLookupRanges() throws Exception {
+        MappingConfig caseSensitive = new MappingConfig();
+        caseSensitive.name = "sensitive";
+        caseSensitive.casesensitive = true;
+        caseSensitive.add = ImmutableMap.of("fr", "French,Fran\u00e7ais");
+        MappingsFactory f = new MappingsFactory(Collections.singletonList(caseSensitive));
+
+        Mapping iso2 = f.getMappings().get("ISO-639-ALPHA-2");
+        assertEquals(iso2.lookup("/EN/", 1, 3), LocaleUtils.toLocale("en"));
+        assertEquals(iso2.lookup("xfRx", 1, 3), LocaleUtils.toLocale("fr"));
+        assertEquals(iso2.lookup("en", 0, 1), null);
+        assertEquals(iso2.lookup("", 0, 0), null);
+        assertEquals(iso2.detect("De").get(), LocaleUtils.toLocale("de"));
+
+        Mapping names = f.getMappings().get("ENGLISH_NAMES");
+        assertEquals(names.lookup("lang=FRENCH", 5, 11), LocaleUtils.toLocale("fr"));
+
+        Mapping sensitive = f.getMappings().get("sensitive");
+        assertEquals(sensitive.lookup("/French/", 1, 7), LocaleUtils.toLocale("fr"));
+        assertEquals(sensitive.lookup("/FRAN\u00c7AIS/", 1, 9), null);
+        assertEquals(sensitive.lookup("/Fran\u00e7ais/", 1, 9), LocaleUtils.toLocale("fr"));
+        assertEquals(sensitive.lookup("/french/", 1, 7), null);
+
+        // Case insensitive custom mappings also fold non ASCII characters, like their TreeMap.
+        sensitive.withCaseSensitive(false).withMapping(new java.util.TreeMap<String, java.util.Locale>(String.CASE_INSENSITIVE_ORDER));
+        sensitive.getMapping().put("Fran\u00e7ais", LocaleUtils.toLocale("fr"));
+        assertEquals(sensitive.lookup("/FRAN\u00c7AIS/", 1, 9), LocaleUtils.toLocale("fr"));
+    }
+
     @Test(expected = IllegalStateException.class)
     public void testDuplicateMapping() throws Exception {
         MappingConfig config = new MappingConfig();
         config.name = "test";
         new MappingsFactory(ImmutableList.of(config, config));
     }
+
+    @Test
+    public void testLazySharedBuiltInMappings() throws Exception {
+        MappingConfig config = new MappingConfig();
+        config.name = "test";
+        config.extend = ImmutableList.of("ISO-639-ALPHA-2");
+        MappingsFactory f = new MappingsFactory(Collections.singletonList(config));
+
+        // Only the extended mapping has been built.
+        assertEquals(f.getMaterializedMappings().keySet(), ImmutableSet.of("test", "ISO-639-ALPHA-2"));
+        assertTrue(f.getMappings().containsKey("LANGUAGE_TAGS"));
+        assertEquals(f.getMaterializedMappings().size(), 2);
+
+        // Built-in mappings are shared between factories.
+        MappingsFactory other = new MappingsFactory(Collections.emptyList());
+        assertTrue(other.getMaterializedMappings().isEmpty());
+        assertTrue(other.getMappings().get("ISO-639-ALPHA-2") == f.getMappings().get("ISO-639-ALPHA-2"));
+        assertEquals(other.getMaterializedMappings().keySet(), ImmutableSet.of("ISO-639-ALPHA-2"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testBuiltInMappingsAreImmutable() throws Exception {
+        new MappingsFactory(Collections.emptyList()).getMappings().get("ISO-639-ALPHA-2").withCaseSensitive(true);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDuplicateBuiltInMapping() throws Exception {
+        MappingConfig config = new MappingConfig();
+        config.name = "ISO-639-ALPHA-2";
+        new MappingsFactory(Collections.singletonList(config));
+    }
+
+    @Test
+    public void testOverlayMapping() throws Exception {
+        MappingConfig config = new MappingConfig();
+        config.name = "test";
+        config.extend = ImmutableList.of("ISO-639-ALPHA-2", "ISO-639-ALPHA-3");
+        config.filter = "en,fr,de";
+        config.add = ImmutableMap.of("de", "german, EN, it");
+        config.override = ImmutableMap.of("fr", "francais");
+        MappingsFactory f = new MappingsFactory(Collections.singletonList(config));
+
+        Mapping mapping = f.getMappings().get("test");
+        assertEquals(mapping.lookup("/EN/", 1, 3), LocaleUtils.toLocale("en")); // Base value kept by filter
+        assertEquals(mapping.lookup("/eng/", 1, 4), LocaleUtils.toLocale("en")); // From second base
+        assertEquals(mapping.lookup("/German/", 1, 7), LocaleUtils.toLocale("de"));
+        assertEquals(mapping.lookup("/it/", 1, 3), LocaleUtils.toLocale("de")); // Removed by filter, then added
+        assertEquals(mapping.lookup("/ita/", 1, 4), null); // Removed by filter
+        assertEquals(mapping.lookup("/fr/", 1, 3), null); // Overriden
+        assertEquals(mapping.lookup("/fra/", 1, 4), null); // Overriden
+        assertEquals(mapping.lookup("/FRANCAIS/", 1, 9), LocaleUtils.toLocale("fr"));
+
+        // Bases are shared, not copied, and the materialized mapping agrees with lookups.
+        assertEquals(f.getMappings().get("ISO-639-ALPHA-2").lookup("it", 0, 2), LocaleUtils.toLocale("it"));
+        assertEquals(mapping.getMapping().get("de"), LocaleUtils.toLocale("de"));
+        assertEquals(mapping.getMapping().get("deu"), LocaleUtils.toLocale("de"));
+        assertFalse(mapping.getMapping().containsKey("fr"));
+        mapping.getMapping().forEach((value, locale) -> assertEquals(mapping.lookup(value, 0, value.length()), locale));
+        assertEquals(mapping.getMapping().size(), 7);
+    }
+
+    @Test
+    public void testCaseFoldedTables() throws Exception {
+        MappingConfig config = new MappingConfig();
+        config.name = "test";
+        config.casesensitive = true;
+        config.extend = ImmutableList.of("LANGUAGE_TAGS");
+        MappingsFactory f = new MappingsFactory(Collections.singletonList(config));
+
+        // Built-in tables are case insensitive but keep the original keys case.
+        Mapping tags = f.getMappings().get("LANGUAGE_TAGS");
+        assertTrue(tags.getMapping().keySet().stream().anyMatch("en-US"::equals));
+        assertFalse(tags.getMapping().keySet().stream().anyMatch("en-us"::equals));
+        assertEquals(tags.getMapping().get("EN-us"), LocaleUtils.toLocale("en_US"));
+        assertEquals(tags.lookup("/en_us/", 1, 6), LocaleUtils.toLocale("en_US"));
+
+        // So case sensitive mappings extending them match the original keys only.
+        Mapping sensitive = f.getMappings().get("test");
+        assertEquals(sensitive.lookup("/en-US/", 1, 6), LocaleUtils.toLocale("en_US"));
+        assertEquals(sensitive.lookup("/en-us/", 1, 6), null);
+        assertTrue(sensitive.getMapping().containsKey("en_US"));
+        assertFalse(sensitive.getMapping().containsKey("EN_US"));
+    }
 }
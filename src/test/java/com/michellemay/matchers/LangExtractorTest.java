@@ -0,0 +1,79 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.matchers;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * LangExtractor Tester.
+ *
+ * @author Michel Lemay
+ */
+public class LangExtractorTest {
+    private void assertSameCaptures(LangExtractor extractor, String regex, int flags, List<String> parts) {
+        LangExtractor reference = LangExtractor.regex(Pattern.compile(regex, flags));
+        for (String part : parts) {
+            // Extract from the middle of a larger input to validate offsets.
+            String input = "<<" + part + ">>";
+            assertEquals(regex + " on '" + part + "'",
+                    extractor.extract(input, 2, 2 + part.length()),
+                    reference.extract(input, 2, 2 + part.length()));
+        }
+    }
+
+    @Test
+    public void testHostLabel() throws Exception {
+        List<String> hosts = Arrays.asList("en.test.com", "en.test.co.uk", "en.com", "en", "", ".test.com", "en..com",
+                "en.test.com.", "e\nn.test.com", "[::1]");
+        assertSameCaptures(LangExtractor.hostLabel(0, 3), "(?<lang>[^\\.]+)(\\.[^\\.]+){2,}", Pattern.CASE_INSENSITIVE, hosts);
+        assertSameCaptures(LangExtractor.hostLabel(0, 2), "(?<lang>[^.]+)(?:\\.[^.]+)+", 0, hosts);
+        assertSameCaptures(LangExtractor.hostLabel(1, 3), "[^.]+\\.(?<lang>[^.]+)(\\.[^.]+)+", 0, hosts);
+    }
+
+    @Test
+    public void testPathSegment() throws Exception {
+        List<String> paths = Arrays.asList("/en", "/en/", "/en/index.html", "/en/longer/Path//index.html", "",
+                "/", "//en/", "en/index.html", "/en/a\nb", "/e\nn/");
+        assertSameCaptures(LangExtractor.pathSegment(0), "/(?<lang>[^/]+)(/.*)?", Pattern.CASE_INSENSITIVE, paths);
+        assertSameCaptures(LangExtractor.pathSegment(1), "/[^/]+/(?<lang>[^/]+)(/.*)?", 0, paths);
+    }
+
+    @Test
+    public void testQueryParameters() throws Exception {
+        List<String> params = Arrays.asList("lang=en", "LANG=en", "language=fr_ca", "languag=fr", "lang=uage=fr", "lang=",
+                "cv_lang=fr", "cv_language=es", "xlang=en", "lang", "=en", "", "lang=e\nn");
+        assertSameCaptures(LangExtractor.queryParameters(ImmutableList.of("lang", "language"), false),
+                "lang(uage)?=(?<lang>.*)", Pattern.CASE_INSENSITIVE, params);
+        assertSameCaptures(LangExtractor.queryParameters(ImmutableList.of("lang", "language", "cv_lang", "cv_language"), true),
+                "(cv_)?lang(uage)?=(?<lang>.*)", 0, params);
+    }
+
+    @Test
+    public void testSpans() throws Exception {
+        long span = LangExtractor.span(12, 345);
+        assertEquals(LangExtractor.spanStart(span), 12);
+        assertEquals(LangExtractor.spanEnd(span), 345);
+        assertEquals(LangExtractor.hostLabel(0, 3).extract("en.test", 0, 7), LangExtractor.NO_MATCH);
+    }
+}
@@ -18,15 +18,20 @@ package com.michellemay.matchers;
 
 import com.michellemay.mappings.MappingsFactory;
 import com.michellemay.mappings.ISO639Alpha2Mapping;
+import com.michellemay.mappings.LanguageRegistry;
+import com.michellemay.url.URLTokenizer;
 
 import com.google.common.collect.ImmutableList;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.regex.PatternSyntaxException;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -122,4 +127,244 @@ public class MatchersFactoryTest {
         config.patterns = ImmutableList.of("(?<lang>[^\\.]+)\\..*");
         new MatchersFactory(ImmutableList.of(config, config), new MappingsFactory(Collections.emptyList()));
     }
+
+    @Test
+    public void testSpecializedExtractors() throws Exception {
+        MatcherConfig hostname = new MatcherConfig();
+        hostname.name = "hostname";
+        hostname.urlpart = Matcher.UrlPart.hostname;
+        hostname.patterns = ImmutableList.of("(?<lang>[^\\.]+)(\\.[^\\.]+){2,}");
+
+        MatcherConfig path = new MatcherConfig();
+        path.name = "path";
+        path.urlpart = Matcher.UrlPart.path;
+        path.patterns = ImmutableList.of("/(?<lang>[^/]+)(/.*)?", "/docs/(?<lang>[^/]+)/index\\.html");
+
+        MatcherConfig querystring = new MatcherConfig();
+        querystring.name = "querystring";
+        querystring.urlpart = Matcher.UrlPart.querystring;
+        querystring.patterns = ImmutableList.of("(cv_)?lang(uage)?=(?<lang>.*)", "l\\w=(?<lang>.*)");
+
+        MatchersFactory f = new MatchersFactory(ImmutableList.of(hostname, path, querystring), new MappingsFactory(Collections.emptyList()));
+        assertEquals(f.getMatchers().get("hostname").getExtractors().toString(), "[label:0,minlabels:3]");
+        assertEquals(f.getMatchers().get("path").getExtractors().toString(), "[segment:0, regex:/docs/(?<lang>[^/]+)/index\\.html]");
+        assertEquals(f.getMatchers().get("querystring").getExtractors().get(0).toString(), "parameters:[lang, language, cv_lang, cv_language]");
+        assertEquals(f.getMatchers().get("querystring").getExtractors().get(1).toString(), "regex:l\\w=(?<lang>.*)");
+        assertEquals(f.getMatchers().get("querystring").getPatterns().size(), 2);
+    }
+
+    @Test
+    public void testQuerystringParameterIndex() throws Exception {
+        MatcherConfig querystring = new MatcherConfig();
+        querystring.name = "querystring";
+        querystring.urlpart = Matcher.UrlPart.querystring;
+        querystring.mapping = ISO639Alpha2Mapping.NAME;
+        querystring.patterns = ImmutableList.of("(cv_)?lang(uage)?=(?<lang>.*)", "l\\w=(?<lang>.*)", "(?:x|hl)=(?<lang>.*)");
+
+        Matcher matcher = new MatchersFactory(ImmutableList.of(querystring), new MappingsFactory(Collections.emptyList())).getMatchers().get("querystring");
+        PrefixIndex index = PrefixIndex.build(matcher.getExtractors());
+        assertEquals(index.candidates("utm_source=x", 0, 12), 4L);
+        assertEquals(index.candidates("LANG=fr", 0, 7), 7L);
+        assertEquals(index.candidates("lr=fr", 0, 5), 6L);
+        assertEquals(index.candidates("", 0, 0), 4L);
+
+        URLTokenizer url = new URLTokenizer();
+        for (boolean patternOrder : new boolean[] { false, true }) {
+            matcher.withPatternOrder(patternOrder);
+            url.tokenize("http://test.com/?utm_source=a&utm_medium=b&utm_campaign=c&lr=de&&&");
+            assertEquals(LanguageRegistry.getLanguageTag(matcher.detectId(url, null)), "de");
+            url.tokenize("http://test.com/?utm_source=a&language=es&lr=de");
+            assertEquals(LanguageRegistry.getLanguageTag(matcher.detectId(url, null)), "es");
+            url.tokenize("http://test.com/?lr=de&language=es");
+            assertEquals(LanguageRegistry.getLanguageTag(matcher.detectId(url, null)), patternOrder ? "es" : "de");
+            url.tokenize("http://test.com/?utm_source=a&utm_medium=fr");
+            assertEquals(matcher.detectId(url, null), LanguageRegistry.NO_LANGUAGE);
+        }
+    }
+
+    @Test
+    public void testConfigExtractors() throws Exception {
+        MatcherConfig hostname = new MatcherConfig();
+        hostname.name = "hostname";
+        hostname.urlpart = Matcher.UrlPart.hostname;
+        hostname.label = 0;
+        hostname.minlabels = 3;
+
+        MatcherConfig path = new MatcherConfig();
+        path.name = "path";
+        path.urlpart = Matcher.UrlPart.path;
+        path.segment = 1;
+
+        MatcherConfig querystring = new MatcherConfig();
+        querystring.name = "querystring";
+        querystring.urlpart = Matcher.UrlPart.querystring;
+        querystring.parameters = ImmutableList.of("lang", "hl");
+
+        MatchersFactory f = new MatchersFactory(ImmutableList.of(hostname, path, querystring), new MappingsFactory(Collections.emptyList()));
+        assertEquals(f.getMatchers().get("hostname").getExtractors().toString(), "[label:0,minlabels:3]");
+        assertEquals(f.getMatchers().get("path").getExtractors().toString(), "[segment:1]");
+        assertEquals(f.getMatchers().get("querystring").getExtractors().toString(), "[parameters:[lang, hl]]");
+        assertTrue(f.getMatchers().get("querystring").getPatterns().isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidConfigExtractorUrlPart() throws Exception {
+        MatcherConfig config = new MatcherConfig();
+        config.name = "test";
+        config.urlpart = Matcher.UrlPart.hostname;
+        config.segment = 0;
+        new MatchersFactory(Collections.singletonList(config), new MappingsFactory(Collections.emptyList()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPatternsAndConfigExtractor() throws Exception {
+        MatcherConfig config = new MatcherConfig();
+        config.name = "test";
+        config.urlpart = Matcher.UrlPart.querystring;
+        config.patterns = ImmutableList.of("lang=(?<lang>.*)");
+        config.parameters = ImmutableList.of("lang");
+        new MatchersFactory(Collections.singletonList(config), new MappingsFactory(Collections.emptyList()));
+    }
+
+    @Test
+    public void testSegmentSelectors() throws Exception {
+        MatcherConfig segment = new MatcherConfig();
+        segment.name = "segment";
+        segment.urlpart = Matcher.UrlPart.path;
+        segment.mapping = ISO639Alpha2Mapping.NAME;
+        segment.segment = 1;
+        segment.patterns = ImmutableList.of("(?<lang>[a-z]{2})(-[a-z]{2})?");
+
+        MatcherConfig segments = new MatcherConfig();
+        segments.name = "segments";
+        segments.urlpart = Matcher.UrlPart.path;
+        segments.mapping = ISO639Alpha2Mapping.NAME;
+        segments.segments = 2;
+
+        MatcherConfig after = new MatcherConfig();
+        after.name = "after";
+        after.urlpart = Matcher.UrlPart.path;
+        after.mapping = ISO639Alpha2Mapping.NAME;
+        after.after = "docs";
+        after.patterns = ImmutableList.of("(?<lang>[a-z]{2})_[a-z]{2}");
+
+        MatchersFactory f = new MatchersFactory(ImmutableList.of(segment, segments, after), new MappingsFactory(Collections.emptyList()));
+        Matcher segmentMatcher = f.getMatchers().get("segment");
+        Matcher segmentsMatcher = f.getMatchers().get("segments");
+        Matcher afterMatcher = f.getMatchers().get("after");
+        assertEquals(((PathMatcher)segmentMatcher).getSegmentSelector().toString(), "segment:1");
+        assertEquals(segmentsMatcher.getExtractors().toString(), "[whole]");
+        assertEquals(((PathMatcher)afterMatcher).getSegmentSelector().toString(), "after:docs");
+
+        URLTokenizer url = new URLTokenizer();
+        url.tokenize("http://test.com/site/fr-ca/page.html");
+        assertEquals(LanguageRegistry.getLanguageTag(segmentMatcher.detectId(url, null)), "fr");
+        assertEquals(segmentsMatcher.detectId(url, null), LanguageRegistry.NO_LANGUAGE);
+        url.tokenize("http://test.com/fr/site/es/page.html");
+        assertEquals(segmentMatcher.detectId(url, null), LanguageRegistry.NO_LANGUAGE);
+        assertEquals(LanguageRegistry.getLanguageTag(segmentsMatcher.detectId(url, null)), "fr");
+        // Indexes stop at the first empty segment, like path segment patterns.
+        url.tokenize("http://test.com//de");
+        assertEquals(segmentMatcher.detectId(url, null), LanguageRegistry.NO_LANGUAGE);
+        assertEquals(segmentsMatcher.detectId(url, null), LanguageRegistry.NO_LANGUAGE);
+
+        url.tokenize("http://test.com/a/b/DOCS/es_mx/docs/de_de/c");
+        assertEquals(LanguageRegistry.getLanguageTag(afterMatcher.detectId(url, null)), "es");
+        url.tokenize("http://test.com/a/b/docs");
+        assertEquals(afterMatcher.detectId(url, null), LanguageRegistry.NO_LANGUAGE);
+
+        // Only the selected segment is searched, whatever the path length.
+        StringBuilder longPath = new StringBuilder("http://test.com/x/it");
+        for (int i = 0; i < 1000; i++) {
+            longPath.append("/docs/en_us");
+        }
+        url.tokenize(longPath.toString());
+        assertEquals(LanguageRegistry.getLanguageTag(segmentMatcher.detectId(url, null)), "it");
+        Matcher copy = afterMatcher.shallowCopyWithMapping(afterMatcher.getMapping());
+        assertEquals(copy.detectId(url, null), LanguageRegistry.getId(java.util.Locale.ENGLISH));
+        // Compiled extractors are shared by copies
+        assertSame(copy.getExtractors(), afterMatcher.getExtractors());
+    }
+
+    @Test
+    public void testSegmentSelectorParts() throws Exception {
+        URLTokenizer url = new URLTokenizer();
+        PartList parts = new PartList();
+        url.tokenize("http://test.com/a/bc//d/e");
+        SegmentSelector.first(4).select(url, parts);
+        assertEquals(parts.size(), 2);
+        assertEquals(parts.start(0), 16);
+        assertEquals(parts.end(1), 20);
+
+        parts.clear();
+        SegmentSelector.index(1).select(url, parts);
+        assertEquals(parts.size(), 1);
+        assertEquals(parts.start(0), 18);
+
+        parts.clear();
+        url.tokenize("http://test.com/A/b");
+        SegmentSelector.after("a", true).select(url, parts);
+        assertEquals(parts.size(), 0);
+        SegmentSelector.after("a", false).select(url, parts);
+        assertEquals(parts.size(), 1);
+
+        parts.clear();
+        url.tokenize("http://test.com");
+        SegmentSelector.index(0).select(url, parts);
+        assertEquals(parts.size(), 0);
+    }
+
+    @Test
+    public void testEmptySegments() throws Exception {
+        URLTokenizer url = new URLTokenizer();
+        PartList parts = new PartList();
+        List<String> specs = Arrays.asList("http://test.com/a//en/", "http://test.com//en", "http://test.com/a/en//", "http://test.com/a/en", "http://test.com/");
+        for (String spec : specs) {
+            url.tokenize(spec);
+            for (int segment = 0; segment < 4; segment++) {
+                // Selectors and path segment extractors agree on segment indexes
+                parts.clear();
+                SegmentSelector.index(segment).select(url, parts);
+                long expected = LangExtractor.pathSegment(segment).extract(spec, url.getPathStart(), url.getPathEnd());
+                long selected = parts.size() == 0 ? LangExtractor.NO_MATCH : LangExtractor.span(parts.start(0), parts.end(0));
+                assertEquals(spec + " segment " + segment, selected, expected);
+            }
+        }
+
+        url.tokenize("http://test.com/a//en/");
+        parts.clear();
+        SegmentSelector.first(3).select(url, parts);
+        assertEquals(parts.size(), 1);
+        parts.clear();
+        SegmentSelector.index(1).select(url, parts);
+        assertEquals(parts.size(), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSegmentSelector() throws Exception {
+        MatcherConfig config = new MatcherConfig();
+        config.name = "test";
+        config.urlpart = Matcher.UrlPart.path;
+        config.after = "docs/en";
+        new MatchersFactory(Collections.singletonList(config), new MappingsFactory(Collections.emptyList()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSegmentSelectors() throws Exception {
+        MatcherConfig config = new MatcherConfig();
+        config.name = "test";
+        config.urlpart = Matcher.UrlPart.path;
+        config.segment = 0;
+        config.segments = 2;
+        new MatchersFactory(Collections.singletonList(config), new MappingsFactory(Collections.emptyList()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsafePattern() throws Exception {
+        MatcherConfig config = new MatcherConfig();
+        config.name = "test";
+        config.urlpart = Matcher.UrlPart.path;
+        config.patterns = ImmutableList.of("/(?<lang>(?:[a-z]+-?)+)/.*");
+        new MatchersFactory(Collections.singletonList(config), new MappingsFactory(Collections.emptyList()));
+    }
 }
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * LatencyHistogram Tester.
+ *
+ * @author Michel Lemay
+ */
+public class LatencyHistogramTest {
+    @Test
+    public void testBucketsAndPercentiles() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(histogram.snapshot(false).getPercentileNanos(99), 0);
+
+        histogram.record(0);
+        histogram.record(1);
+        histogram.record(1000);
+        histogram.record(1023);
+        histogram.record(1024);
+        histogram.record(Long.MAX_VALUE);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot(false);
+        assertEquals(snapshot.getCount(), 6);
+        long[] buckets = snapshot.getBuckets();
+        assertEquals(buckets[0], 1);
+        assertEquals(buckets[1], 1);
+        assertEquals(buckets[10], 2);
+        assertEquals(buckets[11], 1);
+        assertEquals(buckets[63], 1);
+        assertEquals(snapshot.getPercentileNanos(0), 0);
+        assertEquals(snapshot.getPercentileNanos(50), 1023);
+        assertEquals(snapshot.getPercentileNanos(80), 2047);
+        assertEquals(snapshot.getPercentileNanos(100), Long.MAX_VALUE);
+    }
+
+    @Test
+    public void testReset() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(10);
+        histogram.record(20);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot(true);
+        assertEquals(snapshot.getCount(), 2);
+        assertEquals(snapshot.getTotalNanos(), 30);
+        assertEquals(snapshot.getMeanNanos(), 15.0, 0.0);
+        assertEquals(histogram.snapshot(false).getCount(), 0);
+        assertEquals(histogram.snapshot(false).getTotalNanos(), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPercentile() throws Exception {
+        new LatencyHistogram().snapshot(false).getPercentileNanos(101);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.profiles;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * DomainIndex Tester.
+ *
+ * @author Michel Lemay
+ */
+public class DomainIndexTest {
+    private static Profile profile(String name, String... domains) {
+        List<Pattern> patterns = Arrays.stream(domains)
+                .map((d) -> Pattern.compile(d, Pattern.CASE_INSENSITIVE))
+                .collect(Collectors.toList());
+        return new Profile(name).withDomains(patterns);
+    }
+
+    private static int linearFind(List<Profile> profiles, String host) {
+        for (int i = 0; i < profiles.size(); i++) {
+            if (profiles.get(i).match(host)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Test
+    public void testSameResultAsLinearScan() throws Exception {
+        List<Profile> profiles = ImmutableList.of(
+                profile("literal", "mystuff\\.stuff", "^exact\\.org$"),
+                profile("subdomains", "(.*\\.)?stuff\\.com", ".+\\.other\\.org"),
+                profile("suffix", ".*stuff\\.net", "(?:.+\\.)?deep\\.example\\.com"),
+                profile("regex", "my.*\\.stuff", "[a-z]{2}\\.site\\.com", "(a+)\\1\\.org"),
+                profile("shadowed", "en\\.stuff\\.com"),
+                profile("fallback", ".*")
+        );
+        DomainIndex index = new DomainIndex(profiles);
+
+        List<String> hosts = new ArrayList<String>(Arrays.asList(
+                "mystuff.stuff", "MYSTUFF.STUFF", "exact.org", "sub.exact.org",
+                "stuff.com", "en.stuff.com", "EN.STUFF.COM", "xstuff.com", "other.org", "a.other.org", ".other.org",
+                "stuff.net", "mystuff.net", "deep.example.com", "a.b.deep.example.com",
+                "mything.stuff", "fr.site.com", "www.site.com", "aaaa.org", "aaa.org",
+                "", "anything", "line\nbreak.stuff.com"));
+        for (String host : hosts) {
+            assertEquals(host, index.find(host, 0, host.length()), linearFind(profiles, host));
+        }
+    }
+
+    @Test
+    public void testFirstDeclaredProfileWins() throws Exception {
+        List<Profile> profiles = ImmutableList.of(
+                profile("regex", "e.\\.test\\.com"),
+                profile("literal", "en\\.test\\.com"),
+                profile("suffix", ".*\\.test\\.com")
+        );
+        DomainIndex index = new DomainIndex(profiles);
+        assertEquals(index.find("en.test.com", 0, 11), 0);
+        assertEquals(index.find("fr.test.com", 0, 11), 2);
+        assertEquals(index.find("test.com", 0, 8), -1);
+
+        // Offsets into a larger input
+        String url = "http://en.test.com/";
+        assertEquals(index.find(url, 7, 18), 0);
+    }
+
+    @Test
+    public void testQuotesAndComments() throws Exception {
+        List<Profile> profiles = ImmutableList.of(
+                profile("quote", "www\\.foo\\Q.com"),
+                profile("comments", "(?x) en\\.site\\.com # english"),
+                profile("regex", "[a-z]{2}\\.site\\.com")
+        );
+        DomainIndex index = new DomainIndex(profiles);
+        for (String host : Arrays.asList("www.foo.com", "www.foo\\.com", "en.site.com", "fr.site.com", "other.com")) {
+            assertEquals(host, index.find(host, 0, host.length()), linearFind(profiles, host));
+        }
+    }
+
+    @Test
+    public void testEmptyIndex() throws Exception {
+        DomainIndex index = new DomainIndex(ImmutableList.of());
+        assertEquals(index.find("en.test.com", 0, 11), -1);
+    }
+}
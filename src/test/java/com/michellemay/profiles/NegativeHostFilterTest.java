@@ -0,0 +1,111 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.profiles;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * NegativeHostFilter Tester.
+ *
+ * @author Michel Lemay
+ */
+public class NegativeHostFilterTest {
+    private static boolean skip(NegativeHostFilter filter, String host) {
+        return filter.shouldSkip(host, 0, host.length());
+    }
+
+    private static void record(NegativeHostFilter filter, String host, boolean found) {
+        filter.record(host, 0, host.length(), found);
+    }
+
+    @Test
+    public void testConsecutiveMisses() throws Exception {
+        NegativeHostFilter filter = new NegativeHostFilter(3, 0.01, 1, TimeUnit.HOURS);
+        record(filter, "unknown.org", false);
+        record(filter, "unknown.org", false);
+        assertFalse(skip(filter, "unknown.org"));
+
+        // A hit resets the count.
+        record(filter, "unknown.org", true);
+        record(filter, "unknown.org", false);
+        record(filter, "unknown.org", false);
+        assertFalse(skip(filter, "unknown.org"));
+        record(filter, "unknown.org", false);
+        assertTrue(skip(filter, "unknown.org"));
+        assertFalse(skip(filter, "known.org"));
+
+        // Hosts are filtered as written: case sensitive matchers may find languages for other spellings.
+        assertFalse(skip(filter, "Unknown.Org"));
+
+        NegativeHostFilter.Stats stats = filter.getStats();
+        assertEquals(stats.getSkippedCount(), 1);
+        assertEquals(stats.getFilteredHosts(), 1);
+    }
+
+    @Test
+    public void testAging() throws Exception {
+        NegativeHostFilter filter = new NegativeHostFilter(1, 0.01, 1, TimeUnit.HOURS);
+        record(filter, "unknown.org", false);
+        assertTrue(skip(filter, "unknown.org"));
+
+        // Kept in previous generation, then dropped.
+        filter.age();
+        assertTrue(skip(filter, "unknown.org"));
+        filter.age();
+        assertFalse(skip(filter, "unknown.org"));
+
+        record(filter, "unknown.org", false);
+        filter.invalidateAll();
+        assertFalse(skip(filter, "unknown.org"));
+        assertEquals(filter.getStats().getFilteredHosts(), 0);
+    }
+
+    @Test
+    public void testFalsePositiveRate() throws Exception {
+        NegativeHostFilter filter = new NegativeHostFilter(1, 0.01, 1, TimeUnit.HOURS);
+        for (int i = 0; i < 20000; i++) {
+            record(filter, "host" + i + ".org", false);
+        }
+        // Stages were added as the filter grew.
+        assertTrue(filter.getStats().getStageCount() > 2);
+        for (int i = 0; i < 20000; i++) {
+            assertTrue(skip(filter, "host" + i + ".org"));
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 100000; i++) {
+            falsePositives += skip(filter, "other" + i + ".org") ? 1 : 0;
+        }
+        assertTrue("False positives: " + falsePositives, falsePositives < 1000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidThreshold() throws Exception {
+        new NegativeHostFilter(0, 0.01, 1, TimeUnit.HOURS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidFalsePositiveRate() throws Exception {
+        new NegativeHostFilter(1, 1.0, 1, TimeUnit.HOURS);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.regex;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * AhoCorasick Tester.
+ *
+ * @author Michel Lemay
+ */
+public class AhoCorasickTest {
+    private static String found(AhoCorasick automaton, String input) {
+        long[] found = automaton.newFoundSet();
+        automaton.scan(input, 0, input.length(), found);
+        StringBuilder result = new StringBuilder();
+        for (int id = 0; id < automaton.size(); id++) {
+            result.append(AhoCorasick.isFound(found, id) ? '1' : '0');
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void testScan() throws Exception {
+        AhoCorasick automaton = new AhoCorasick(Arrays.asList("lang=", "/docs/", "ang", "s/", "café"));
+        assertEquals(found(automaton, "http://www.test.com/"), "00000");
+        assertEquals(found(automaton, "http://www.test.com/DOCS/en?LANG=fr"), "11110");
+        assertEquals(found(automaton, "http://www.test.com/docs?language=fr"), "00100");
+        assertEquals(found(automaton, "http://CAFé.com/"), "00001");
+        assertEquals(found(automaton, "http://cafÉ.com/"), "00000");
+
+        // Region only
+        String input = "xlang=x";
+        long[] found = automaton.newFoundSet();
+        automaton.scan(input, 1, 5, found);
+        assertEquals(AhoCorasick.isFound(found, 0), false);
+        assertEquals(AhoCorasick.isFound(found, 2), true);
+    }
+
+    @Test
+    public void testManyLiterals() throws Exception {
+        List<String> literals = new java.util.ArrayList<String>();
+        for (int i = 0; i < 100; i++) {
+            literals.add("p" + i + "=");
+        }
+        AhoCorasick automaton = new AhoCorasick(literals);
+        long[] found = automaton.newFoundSet();
+        automaton.scan("?p7=a&p99=b&p100=c", 0, 18, found);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Integer.toString(i), AhoCorasick.isFound(found, i), i == 7 || i == 99);
+        }
+    }
+}
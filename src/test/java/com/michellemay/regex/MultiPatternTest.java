@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.regex;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * MultiPattern Tester.
+ *
+ * @author Michel Lemay
+ */
+public class MultiPatternTest {
+    private static final List<String> REGEXES = Arrays.asList(
+            "(?<lang>[^\\.]+)(\\.[^\\.]+){2,}",
+            "/(?<lang>[^/]+)(/.*)?",
+            "(cv_)?lang(uage)?=(?<lang>.*)",
+            "^(?<lang>[a-z]{2})(?:[-_][a-z]{2})?$",
+            "(?<lang>\\w+)\\.(com|net)",
+            "(?:.*\\.)?(?<lang>\\w\\w)\\.example\\.(?:com|org)",
+            ".*?(?<lang>[a-z]+)\\.html",
+            ".*(?<lang>[a-z]+)\\.html",
+            "(?<lang>a|ab)(c|bcd)(d*)",
+            "(?:(?<lang>a)|b)+c?",
+            "(?:x(?<lang>\\d{1,3}?)y?)*",
+            "lang=(?<lang>[^&]*)&?.*",
+            "(?<lang>\\s*\\S+)\\t?",
+            "\\x41(?<lang>\\u0042+)[\\-\\]x-z]*",
+            "[^a-c\\d](?<lang>.)",
+            "(?<lang>[\\w-]{2,5})/",
+            "(?<other>en)(?<lang>fr)?",
+            "/(?<lang>.{2})",
+            "(?<lang>[^/]{1,3})\\W?"
+    );
+
+    private static final List<String> INPUTS = Arrays.asList(
+            "", "a", "en", "EN", "fr-CA", "en_us", "en.test.com", "EN.Test.co.uk", "en.com", "..com", "/en", "/en/",
+            "/en/index.html", "//en/", "lang=fr", "LANGUAGE=de", "cv_language=", "cv_lang=e\nn", "abcd", "abcdd",
+            "abab", "ababc", "x12y", "x1x22y", "x1234y", "lang=en&x=y", "  en\t", "ABBB", "ABBB-]xz", "dz",
+            "ez\u2028", "en-u/", "Fr/", "enfr", "en", "index.html", "fr.html", "/fr/page.html", "éÉ.com",
+            "www.fr.example.com", "fr.example.org", "fr.example.net", "/\uD83D\uDE00", "/\uD83D\uDE00x", "/a\uD83D",
+            "\uDE00en", "x\uD83D\uDE00.com", "en\uD83D\uDE00");
+
+    private void assertSameCaptures(List<String> regexes, int flags) {
+        List<Pattern> patterns = new ArrayList<Pattern>();
+        regexes.forEach((regex) -> patterns.add(Pattern.compile(regex, flags)));
+        MultiPattern multiPattern = MultiPattern.compile(patterns, "lang");
+        long[] spans = new long[patterns.size()];
+        for (String part : INPUTS) {
+            // Match in the middle of a larger input to validate offsets.
+            String input = "<<" + part + ">>";
+            multiPattern.match(input, 2, 2 + part.length(), spans);
+            for (int i = 0; i < patterns.size(); i++) {
+                if (!multiPattern.isSupported(i)) {
+                    continue;
+                }
+                long expected = MultiPattern.NO_MATCH;
+                Matcher m = patterns.get(i).matcher(input).region(2, 2 + part.length());
+                if (m.matches() && m.start("lang") >= 0) {
+                    expected = ((long)m.start("lang") << 32) | m.end("lang");
+                }
+                assertEquals(regexes.get(i) + " on '" + part + "'", spans[i], expected);
+            }
+        }
+    }
+
+    @Test
+    public void testSameCapturesAsJavaRegex() throws Exception {
+        assertSameCaptures(REGEXES, 0);
+        assertSameCaptures(REGEXES, Pattern.CASE_INSENSITIVE);
+    }
+
+    @Test
+    public void testAllSupported() throws Exception {
+        MultiPattern multiPattern = MultiPattern.compile(REGEXES.stream().map(Pattern::compile).collect(java.util.stream.Collectors.toList()), "lang");
+        for (int i = 0; i < REGEXES.size(); i++) {
+            assertTrue(REGEXES.get(i), multiPattern.isSupported(i));
+        }
+    }
+
+    @Test
+    public void testUnsupportedPatterns() throws Exception {
+        List<String> regexes = Arrays.asList(
+                "(?<lang>a)\\1",
+                "(?<lang>a)(?=b)b",
+                "(?i)(?<lang>a)",
+                "(?<lang>a*)*",
+                "(?<lang>a)++",
+                "\\b(?<lang>a)",
+                "(?<lang>[a-z&&[^x]])",
+                "a^(?<lang>b)",
+                "(?<lang>\\p{L}+)",
+                "(?<lang>a){5000}",
+                "(?<other>a)",
+                "(?<lang>\uD83D\uDE00)",
+                "(?<lang>\\uD83D\\uDE00)",
+                "(?<lang>[\\u0000-\\uFFFF])");
+        List<Pattern> patterns = new ArrayList<Pattern>();
+        regexes.forEach((regex) -> patterns.add(Pattern.compile(regex)));
+        patterns.add(Pattern.compile("(?<lang>a)", Pattern.COMMENTS));
+        MultiPattern multiPattern = MultiPattern.compile(patterns, "lang");
+        for (int i = 0; i < patterns.size(); i++) {
+            assertFalse(patterns.get(i).pattern(), multiPattern.isSupported(i));
+        }
+
+        // Unsupported patterns are reported as not matching.
+        long[] spans = new long[patterns.size()];
+        multiPattern.match("a", 0, 1, spans);
+        for (long span : spans) {
+            assertEquals(span, MultiPattern.NO_MATCH);
+        }
+    }
+}
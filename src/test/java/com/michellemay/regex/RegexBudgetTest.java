@@ -0,0 +1,101 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.regex;
+
+import com.michellemay.matchers.LangExtractor;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * RegexBudget Tester.
+ *
+ * @author Michel Lemay
+ */
+public class RegexBudgetTest {
+    @After
+    public void after() throws Exception {
+        RegexBudget.get().reset(0);
+    }
+
+    @Test
+    public void testUnlimited() throws Exception {
+        RegexBudget budget = RegexBudget.get();
+        String input = "aaaa";
+        assertSame(budget.wrap(input), input);
+        assertTrue(budget.matches(Pattern.compile("a+").matcher(budget.wrap(input))));
+        assertEquals(budget.getRemaining(), Long.MAX_VALUE);
+        assertEquals(budget.getAborts(), 0);
+    }
+
+    @Test
+    public void testAbort() throws Exception {
+        RegexBudget budget = RegexBudget.get();
+        budget.reset(1000);
+
+        // Catastrophic backtracking on a failing input.
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            input.append('x');
+        }
+        input.append('!');
+        Pattern pattern = Pattern.compile("(x+x+)+y");
+        assertFalse(budget.matches(pattern.matcher(budget.wrap(input))));
+        assertEquals(budget.getAborts(), 1);
+        assertEquals(budget.getRemaining(), 0);
+
+        // Spent budget aborts any other match.
+        assertFalse(budget.matches(Pattern.compile("a").matcher(budget.wrap("a"))));
+        assertEquals(budget.getAborts(), 2);
+
+        budget.reset(1000);
+        assertEquals(budget.getAborts(), 0);
+        CharSequence wrapped = budget.wrap("ab");
+        assertTrue(budget.matches(Pattern.compile("(?<x>a)b").matcher(wrapped)));
+        assertTrue(budget.getRemaining() < 1000);
+        assertEquals(wrapped.toString(), "ab");
+
+        // Views are reused, not allocated per match.
+        assertSame(budget.wrap("cd"), wrapped);
+        assertEquals(wrapped.toString(), "cd");
+        assertSame(budget.wrap(wrapped), wrapped);
+    }
+
+    @Test
+    public void testRegexExtractor() throws Exception {
+        LangExtractor extractor = LangExtractor.regex(Pattern.compile("/docs/(?<lang>[^/]+)/index\\.html"));
+        String input = "/docs/en/index.html";
+        assertEquals(extractor.extract(input, 0, input.length()), LangExtractor.span(6, 8));
+
+        RegexBudget budget = RegexBudget.get();
+        budget.reset(5);
+        assertEquals(extractor.extract(input, 0, input.length()), LangExtractor.NO_MATCH);
+        assertEquals(budget.getAborts(), 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBudget() throws Exception {
+        RegexBudget.get().reset(-1);
+    }
+}
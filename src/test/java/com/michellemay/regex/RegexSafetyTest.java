@@ -0,0 +1,80 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.regex;
+
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * RegexSafety Tester.
+ *
+ * @author Michel Lemay
+ */
+public class RegexSafetyTest {
+    private static String check(String regex) {
+        return RegexSafety.check(Pattern.compile(regex, Pattern.CASE_INSENSITIVE));
+    }
+
+    @Test
+    public void testSafePatterns() throws Exception {
+        assertNull(check("(?<lang>[^\\.]+)(\\.[^\\.]+){2,}"));
+        assertNull(check("/(?<lang>[^/]+)(/.*)?"));
+        assertNull(check("(cv_)?lang(uage)?=(?<lang>.*)"));
+        assertNull(check("(?:.*\\.)?(?<lang>\\w\\w)\\.example\\.(?:com|org)"));
+        assertNull(check("(?:/[a-z]+)*/(?<lang>[a-z]{2})"));
+        assertNull(check("(a+b)+"));
+        assertNull(check("(ab?)+"));
+        assertNull(check("(?:x|y)*"));
+        assertNull(check("(a{2})*"));
+        assertNull(check("(en|es)+"));
+        assertNull(check("(?:[a-z]{2}-|[a-z]{2}_)+"));
+        assertNull(check("(a+){2}"));
+        assertNull(check("(?:a|ab){3}"));
+        // Not analyzed
+        assertNull(check("(?<lang>a+)+(?=b)"));
+    }
+
+    @Test
+    public void testNestedQuantifiers() throws Exception {
+        assertEquals(check("(?<lang>a+)+"), "nested quantifiers");
+        assertEquals(check("(?:\\w+\\d*)*x"), "nested quantifiers");
+        assertEquals(check("(?:[a-z]+\\.?)+com"), "nested quantifiers");
+        assertEquals(check("(?:A*)*"), "nested quantifiers");
+        assertEquals(check("x(y|(?:a|B+)){2,}"), "nested quantifiers");
+        assertEquals(check("(x+x+)+y"), "nested quantifiers");
+        assertEquals(check("(a+){4}"), "nested quantifiers");
+        assertNull(RegexSafety.check(Pattern.compile("(?:Bb+)*")));
+        assertEquals(RegexSafety.check(Pattern.compile("(?:Bb+)*", Pattern.CASE_INSENSITIVE)), "nested quantifiers");
+        assertEquals(RegexSafety.check(Pattern.compile("(?:B|b+)*", Pattern.CASE_INSENSITIVE)), "nested quantifiers");
+    }
+
+    @Test
+    public void testOverlappingAlternatives() throws Exception {
+        assertEquals(check("(?<lang>a|ab)*c"), "overlapping alternatives");
+        assertEquals(check("(?:\\w|\\d)+"), "overlapping alternatives");
+        assertEquals(check("(?:x|.)*"), "overlapping alternatives");
+        assertEquals(check("(?:(?:a|A))+"), "overlapping alternatives");
+        assertEquals(check("(?:a|aa)+"), "overlapping alternatives");
+        assertEquals(check("(?:ab|a.)+"), "overlapping alternatives");
+        assertEquals(check("(?:en|e\\w)+"), "overlapping alternatives");
+        assertNull(RegexSafety.check(Pattern.compile("(?:a|A)+")));
+    }
+}
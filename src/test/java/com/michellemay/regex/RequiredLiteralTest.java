@@ -0,0 +1,52 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.regex;
+
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * RequiredLiteral Tester.
+ *
+ * @author Michel Lemay
+ */
+public class RequiredLiteralTest {
+    private static String literal(String regex) {
+        return RequiredLiteral.of(Pattern.compile(regex, Pattern.CASE_INSENSITIVE));
+    }
+
+    @Test
+    public void testLiterals() throws Exception {
+        assertEquals(literal("lang=(?<lang>.*)"), "lang=");
+        assertEquals(literal(".*/docs/(?<lang>[^/]+)/.*"), "/docs/");
+        assertEquals(literal("^/KB/(?<lang>\\w+)/index\\.html$"), "/index.html");
+        assertEquals(literal("(?:loc)=(?<lang>.*)"), "loc=");
+        assertEquals(literal("(?<lang>\\w+)(\\.abc)+"), ".abc");
+        assertEquals(literal("x(?<lang>\\w+)(?:section)?"), null);
+        assertEquals(literal("(?<lang>\\w+)|language=(?<other>.*)"), null);
+        assertEquals(literal("(?<lang>\\w+)"), null);
+    }
+
+    @Test
+    public void testUnsupported() throws Exception {
+        assertEquals(literal("(?=lang)lang=(?<lang>.*)"), null);
+        assertEquals(RequiredLiteral.of(Pattern.compile("lang=(?<lang>.*)", Pattern.COMMENTS)), null);
+    }
+}
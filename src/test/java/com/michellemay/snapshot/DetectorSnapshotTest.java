@@ -0,0 +1,150 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.snapshot;
+
+import com.google.common.io.ByteStreams;
+import com.michellemay.URLLanguageDetector;
+import com.michellemay.URLLanguageDetectorBuilder;
+import com.michellemay.config.ConfigReader;
+import com.michellemay.mappings.Mapping;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * DetectorSnapshot Tester.
+ *
+ * @author Michel Lemay
+ */
+public class DetectorSnapshotTest {
+    private static final List<String> URLS = Arrays.asList(
+            "http://en.test.com/",
+            "http://www.wikipedia.org/fr/page",
+            "http://fr.wikipedia.org/wiki/Paris",
+            "http://www.test.com/fr-ca/index.html",
+            "http://www.test.com/stuff?lang=de",
+            "http://www.test.com/stuff?language=Spanish",
+            "http://mystuff.stuff?cv_lang=fr",
+            "http://mystuff.stuff/zh-Hant-TW/",
+            "malformed");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] builtIn(String configName) throws Exception {
+        try (InputStream in = ConfigReader.class.getClassLoader().getResourceAsStream(configName)) {
+            return ByteStreams.toByteArray(in);
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        for (String configName : Arrays.asList(ConfigReader.DEFAULT_CONFIG, ConfigReader.TEST_CONFIG)) {
+            byte[] config = builtIn(configName);
+            Path snapshot = folder.newFile().toPath();
+            URLLanguageDetectorBuilder built = DetectorSnapshot.write(config, snapshot);
+
+            Optional<URLLanguageDetectorBuilder> loaded = DetectorSnapshot.read(snapshot, config);
+            assertTrue(loaded.isPresent());
+
+            Map<String, Mapping> expectedMappings = built.getMappingsFactory().getMaterializedMappings();
+            Map<String, Mapping> actualMappings = loaded.get().getMappingsFactory().getMappings();
+            assertEquals(actualMappings.keySet(), expectedMappings.keySet());
+            for (Mapping mapping : expectedMappings.values()) {
+                Mapping actual = actualMappings.get(mapping.getName());
+                assertEquals(actual.getCaseSensitive(), mapping.getCaseSensitive());
+                assertEquals(actual.getMapping(), mapping.getMapping());
+            }
+
+            URLLanguageDetector expected = built.create();
+            URLLanguageDetector actual = loaded.get().create();
+            for (String url : URLS) {
+                assertEquals(actual.detect(url), expected.detect(url));
+            }
+        }
+    }
+
+    @Test
+    public void testStaleSnapshot() throws Exception {
+        Path snapshot = folder.newFile().toPath();
+        DetectorSnapshot.write(builtIn(ConfigReader.TEST_CONFIG), snapshot);
+
+        assertFalse(DetectorSnapshot.read(snapshot, builtIn(ConfigReader.DEFAULT_CONFIG)).isPresent());
+        assertFalse(DetectorSnapshot.read(folder.getRoot().toPath().resolve("missing"), builtIn(ConfigReader.TEST_CONFIG)).isPresent());
+    }
+
+    @Test
+    public void testCorruptedSnapshot() throws Exception {
+        byte[] config = builtIn(ConfigReader.TEST_CONFIG);
+        Path snapshot = folder.newFile().toPath();
+        DetectorSnapshot.write(config, snapshot);
+        byte[] bytes = Files.readAllBytes(snapshot);
+
+        // Bad magic
+        byte[] badMagic = bytes.clone();
+        badMagic[0] = 'X';
+        Files.write(snapshot, badMagic);
+        assertFalse(DetectorSnapshot.read(snapshot, config).isPresent());
+
+        // Other format version
+        byte[] badVersion = bytes.clone();
+        badVersion[11] = (byte)(DetectorSnapshot.FORMAT_VERSION + 1);
+        Files.write(snapshot, badVersion);
+        assertFalse(DetectorSnapshot.read(snapshot, config).isPresent());
+
+        // Truncated
+        Files.write(snapshot, Arrays.copyOf(bytes, bytes.length / 2));
+        assertFalse(DetectorSnapshot.read(snapshot, config).isPresent());
+    }
+
+    @Test
+    public void testLoadOrCompile() throws Exception {
+        Path config = folder.newFile("config.json").toPath();
+        Files.write(config, builtIn(ConfigReader.TEST_CONFIG));
+        Path snapshot = folder.getRoot().toPath().resolve("config.snapshot");
+
+        URLLanguageDetector compiled = DetectorSnapshot.loadOrCompile(config, snapshot).create();
+        assertTrue(Files.exists(snapshot));
+        long modified = Files.getLastModifiedTime(snapshot).toMillis();
+
+        URLLanguageDetector loaded = DetectorSnapshot.loadOrCompile(config, snapshot).create();
+        assertEquals(Files.getLastModifiedTime(snapshot).toMillis(), modified);
+        for (String url : URLS) {
+            assertEquals(loaded.detect(url), compiled.detect(url));
+        }
+
+        // Config changes invalidate the snapshot.
+        Files.write(config, new String(builtIn(ConfigReader.DEFAULT_CONFIG), StandardCharsets.UTF_8).getBytes(StandardCharsets.UTF_8));
+        assertEquals(DetectorSnapshot.loadOrCompile(config, snapshot).create().detect("http://en.test.com/"),
+                URLLanguageDetectorBuilder.create(ConfigReader.readBuiltIn()).create().detect("http://en.test.com/"));
+        assertTrue(DetectorSnapshot.read(snapshot, builtIn(ConfigReader.DEFAULT_CONFIG)).isPresent());
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.url;
+
+import com.michellemay.mappings.LanguageRegistry;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * URLResultCache Tester.
+ *
+ * @author Michel Lemay
+ */
+public class URLResultCacheTest {
+    private static long fingerprint(URLResultCache cache, String url) {
+        URLTokenizer tokenizer = new URLTokenizer();
+        assertEquals(tokenizer.tokenize(url), URLTokenizer.OK);
+        return cache.fingerprint(tokenizer);
+    }
+
+    @Test
+    public void testNormalization() throws Exception {
+        URLResultCache cache = new URLResultCache(1 << 16, URLResultCache.DEFAULT_STRIPPED_PARAMETERS);
+        long expected = fingerprint(cache, "http://www.test.com/en/index.html?lang=fr");
+
+        // Protocol, port, user info, fragment and tracking parameters are ignored.
+        assertEquals(fingerprint(cache, "https://www.test.com/en/index.html?lang=fr"), expected);
+        assertEquals(fingerprint(cache, "http://user@www.test.com:8080/en/index.html?lang=fr#top"), expected);
+        assertEquals(fingerprint(cache, "http://www.test.com/en/index.html?utm_source=x&lang=fr&UTM_Medium=y&gclid=z"), expected);
+        assertEquals(fingerprint(cache, "http://www.test.com/en/index.html?lang=fr&utm_campaign"), expected);
+        assertEquals(fingerprint(cache, "http://www.test.com/en/index.html?utm_source=x"),
+                fingerprint(cache, "http://www.test.com/en/index.html"));
+
+        // Everything else is significant, host case included.
+        assertNotEquals(fingerprint(cache, "http://WWW.Test.com/en/index.html?lang=fr"), expected);
+        assertNotEquals(fingerprint(cache, "http://www.test.com/EN/index.html?lang=fr"), expected);
+        assertNotEquals(fingerprint(cache, "http://www.test.com/en/index.html?lang=FR"), expected);
+        assertNotEquals(fingerprint(cache, "http://www.test.com/en/index.html?lang=fr&gclidx=z"), expected);
+        assertNotEquals(fingerprint(cache, "http://www.test.com/en/index.html?lang=fr&q=1"),
+                fingerprint(cache, "http://www.test.com/en/index.html?q=1&lang=fr"));
+        assertNotEquals(fingerprint(cache, "http://www.test.com/en/index.htmllang=fr"), expected);
+    }
+
+    @Test
+    public void testGetPut() throws Exception {
+        URLResultCache cache = new URLResultCache(1 << 16, Collections.<String>emptyList());
+        assertEquals(cache.getCapacity(), 8 * 512);
+        long known = fingerprint(cache, "http://www.test.com/en/");
+        long unknown = fingerprint(cache, "http://www.test.com/xx/");
+        assertEquals(cache.get(known), URLResultCache.MISS);
+
+        cache.put(known, 3);
+        cache.put(unknown, LanguageRegistry.NO_LANGUAGE);
+        assertEquals(cache.get(known), 3);
+        assertEquals(cache.get(unknown), LanguageRegistry.NO_LANGUAGE);
+        cache.put(known, 4);
+        assertEquals(cache.get(known), 4);
+
+        URLResultCache.Stats stats = cache.getStats();
+        assertEquals(stats.getHitCount(), 3);
+        assertEquals(stats.getMissCount(), 1);
+
+        cache.invalidateAll();
+        assertEquals(cache.get(known), URLResultCache.MISS);
+    }
+
+    @Test
+    public void testClockEviction() throws Exception {
+        // A single bucket of 8 entries.
+        URLResultCache cache = new URLResultCache(URLResultCache.MIN_BYTES, Collections.<String>emptyList());
+        assertEquals(cache.getCapacity(), 8);
+        for (long i = 1; i <= 8; i++) {
+            cache.put(i << 16, (int)i);
+        }
+        // Entries read since the hand last passed get a second chance.
+        for (long i = 1; i <= 3; i++) {
+            assertEquals(cache.get(i << 16), (int)i);
+        }
+        cache.put(9L << 16, 9);
+        assertEquals(cache.get(4L << 16), URLResultCache.MISS);
+        for (long i = 1; i <= 3; i++) {
+            assertEquals(cache.get(i << 16), (int)i);
+        }
+        assertEquals(cache.get(9L << 16), 9);
+        assertEquals(cache.getStats().getEvictionCount(), 1);
+    }
+
+    @Test
+    public void testInvalidRules() throws Exception {
+        for (String rule : Arrays.asList("", " ", "*", "a*b", "a=b", "a&b")) {
+            try {
+                new URLResultCache(1 << 16, Collections.singletonList(rule));
+                throw new AssertionError("Rule '" + rule + "' should be invalid");
+            } catch (IllegalArgumentException e) {
+                assertEquals(e.getMessage(), "Invalid stripped parameter '" + rule + "'!");
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooSmall() throws Exception {
+        new URLResultCache(URLResultCache.MIN_BYTES - 1, Collections.<String>emptyList());
+    }
+}
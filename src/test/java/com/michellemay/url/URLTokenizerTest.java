@@ -0,0 +1,212 @@
+/*
+ * Copyright 2015 Michel Lemay
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.michellemay.url;
+
+import org.junit.Test;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * URLTokenizer Tester.
+ *
+ * @author Michel Lemay
+ */
+public class URLTokenizerTest {
+    private List<String> corpus = Arrays.asList(
+            "http://en.test.com/",
+            "http://ENG.test.com/",
+            "http://www.test.com/en/index.html",
+            "http://www.test.com/en/longer/Path//index.html",
+            "http://www.test.com/path/index.html?lang=en-US",
+            "http://fr:fr@www.test.com:8080/path/index.html?lang=en",
+            "http://www.test.com/path/index.html?q=fr&lang=en&lang=fr",
+            "http://test.com/?lang=%ca%80",
+            "http://mystuff.stuff?cv_lang=fr",
+            "http://mystuff.stuff?LR=français",
+            "http://OTHER.COM?LR=es",
+            "HTTPS://www.test.com/a/b#frag?notquery",
+            "http://www.test.com/a?b#c",
+            "http://www.test.com?",
+            "http://www.test.com:/path",
+            "http://[::1]:8080/path?x=y",
+            "http://a@b@c.com/path",
+            "http:///path/only",
+            "http:relative/path",
+            "ftp://user@ftp.test.com/pub",
+            "file:////server/share",
+            "  url:http://www.test.com/trimmed  ",
+            "",
+            "http//en.test.com",
+            "en.test.com/path",
+            "unknown://www.test.com/",
+            "http://www.test.com:abc/",
+            "http://www.test.com:-5/",
+            "http://[::1/",
+            "http://[::1]x/",
+            "http://[a:]/",
+            "http://[:1]/",
+            "http://[::1%]/",
+            "http://[1:2:3:4:5:6:7:8:9]/",
+            "http://[1::2::3]/",
+            "http://[::ffff:1.2.3.4]/",
+            "http://[::ffff:1.2.3.256]/",
+            "http://[fe80::1%eth0]/",
+            "mailto:x?LANG=en",
+            "jar:file:/lib/a.jar!/en/index.html",
+            "jar:file:/lib/a.jar",
+            "javascript:void(0)",
+            "data:text/plain,en",
+            "tel:+15551234",
+            "android-app://com.example/http/en.test.com",
+            "http://en.site.org\t/x",
+            "http://de.x.org\t:80/",
+            "http://en.site.org\n/x",
+            "http://en.site.org\r/x",
+            "http://\u007F/",
+            "http://a\u2100b.com/",
+            "http://a\uff0fb.com/",
+            "http://[::1]\t/",
+            "http://u\t@a.com/",
+            "http://a b.com/"
+    );
+
+    @Test
+    public void testSameSlicesAsJavaNetURL() throws Exception {
+        URLTokenizer tokenizer = new URLTokenizer();
+        for (String spec : corpus) {
+            URL url = null;
+            try {
+                url = new URL(spec);
+            } catch (MalformedURLException e) {
+                // Expected for some inputs
+            }
+
+            int status = tokenizer.tokenize(spec);
+            assertEquals(spec, url != null, status == URLTokenizer.OK);
+            if (url != null) {
+                assertEquals(spec, url.getHost(), tokenizer.getHost());
+                assertEquals(spec, url.getPath(), tokenizer.getPath());
+                assertEquals(spec, url.getQuery(), tokenizer.getQuery());
+                assertEquals(spec, url.getPort(), tokenizer.getPort());
+            }
+        }
+    }
+
+    @Test
+    public void testStatusCodes() throws Exception {
+        URLTokenizer tokenizer = new URLTokenizer();
+        assertEquals(tokenizer.tokenize(null), URLTokenizer.NO_PROTOCOL);
+        assertEquals(tokenizer.tokenize(""), URLTokenizer.NO_PROTOCOL);
+        assertEquals(tokenizer.tokenize("http//en.test.com"), URLTokenizer.NO_PROTOCOL);
+        assertEquals(tokenizer.tokenize("gopher://en.test.com"), URLTokenizer.UNKNOWN_PROTOCOL);
+        assertEquals(tokenizer.tokenize("http://[::1/"), URLTokenizer.INVALID_AUTHORITY);
+        assertEquals(tokenizer.tokenize("http://[a:]/"), URLTokenizer.INVALID_AUTHORITY);
+        assertEquals(tokenizer.tokenize("jar:file:/lib/a.jar"), URLTokenizer.INVALID_URL);
+        assertEquals(tokenizer.tokenize("javascript:void(0)"), URLTokenizer.UNKNOWN_PROTOCOL);
+        assertEquals(tokenizer.tokenize("http://en.site.org\t/x"), URLTokenizer.INVALID_AUTHORITY);
+        assertEquals(tokenizer.tokenize("http://de.x.org\t:80/"), URLTokenizer.INVALID_AUTHORITY);
+        assertEquals(tokenizer.tokenize("http://en.test.com:80a/"), URLTokenizer.INVALID_PORT);
+        assertFalse(tokenizer.isValid());
+        assertEquals(tokenizer.tokenize("http://en.test.com:80/"), URLTokenizer.OK);
+        assertTrue(tokenizer.isValid());
+    }
+
+    @Test
+    public void testOffsets() throws Exception {
+        URLTokenizer tokenizer = new URLTokenizer();
+        String spec = "http://en.test.com/path?q=1#ref";
+        tokenizer.tokenize(spec);
+        assertEquals(spec.substring(tokenizer.getProtocolStart(), tokenizer.getProtocolEnd()), "http");
+        assertEquals(tokenizer.slice(tokenizer.getHostStart(), tokenizer.getHostEnd()).toString(), "en.test.com");
+        assertEquals(tokenizer.slice(tokenizer.getPathStart(), tokenizer.getPathEnd()).toString(), "/path");
+        assertEquals(tokenizer.slice(tokenizer.getQueryStart(), tokenizer.getQueryEnd()).toString(), "q=1");
+        assertEquals(tokenizer.slice(tokenizer.getRefStart(), tokenizer.getRefEnd()).toString(), "ref");
+    }
+
+    @Test
+    public void testOtherProtocols() throws Exception {
+        URLTokenizer tokenizer = new URLTokenizer();
+        assertEquals(tokenizer.tokenize("mailto:x?LANG=en#top"), URLTokenizer.OK);
+        assertEquals(tokenizer.slice(tokenizer.getProtocolStart(), tokenizer.getProtocolEnd()).toString(), "mailto");
+        assertEquals(tokenizer.getPath(), "x");
+        assertEquals(tokenizer.getQueryParameterCount(), 1);
+        assertEquals(tokenizer.slice(tokenizer.getQueryParameterStart(0), tokenizer.getQueryParameterEnd(0)).toString(), "LANG=en");
+        assertEquals(tokenizer.hasRef(), false);
+    }
+
+    @Test
+    public void testUnknownProtocolsWithoutExceptions() throws Exception {
+        URLTokenizer tokenizer = new URLTokenizer();
+        long failures = URLTokenizer.HANDLER_FAILURES.get();
+        for (String spec : Arrays.asList("javascript:void(0)", "data:text/plain,en", "tel:+15551234", "android-app://com.example/", "Gopher://x/")) {
+            assertEquals(spec, tokenizer.tokenize(spec), URLTokenizer.UNKNOWN_PROTOCOL);
+        }
+        assertEquals(URLTokenizer.HANDLER_FAILURES.get(), failures);
+
+        // Only urls rejected by a protocol handler cost an exception.
+        tokenizer.tokenize("jar:file:/lib/a.jar");
+        assertEquals(URLTokenizer.HANDLER_FAILURES.get(), failures + 1);
+    }
+
+    @Test
+    public void testQueryParameters() throws Exception {
+        URLTokenizer tokenizer = new URLTokenizer();
+        String[] specs = { "http://test.com/", "http://test.com/?", "http://test.com/?a=1&&b=2&&", "http://test.com/?&", "http://test.com/?x#a&b" };
+        for (String spec : specs) {
+            tokenizer.tokenize(spec);
+            String[] expected = tokenizer.hasQuery() ? tokenizer.getQuery().split("&") : new String[0];
+            assertEquals(tokenizer.getQueryParameterCount(), expected.length);
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(spec.substring(tokenizer.getQueryParameterStart(i), tokenizer.getQueryParameterEnd(i)), expected[i]);
+            }
+        }
+
+        StringBuilder spec = new StringBuilder("http://test.com/?p0");
+        for (int i = 1; i < 100; i++) {
+            spec.append("&p").append(i);
+        }
+        tokenizer.tokenize(spec);
+        assertEquals(tokenizer.getQueryParameterCount(), 100);
+        assertEquals(spec.substring(tokenizer.getQueryParameterStart(99), tokenizer.getQueryParameterEnd(99)), "p99");
+    }
+
+    @Test
+    public void testPathSegments() throws Exception {
+        URLTokenizer tokenizer = new URLTokenizer();
+        String spec = "http://test.com/a//bc/?q";
+        tokenizer.tokenize(spec);
+        assertTrue(tokenizer.hasPathSegment(1));
+        assertEquals(tokenizer.getPathSegmentStart(1), tokenizer.getPathSegmentEnd(1));
+        assertTrue(tokenizer.hasPathSegment(3));
+        assertFalse(tokenizer.hasPathSegment(4));
+        assertEquals(spec.substring(tokenizer.getPathSegmentStart(0), tokenizer.getPathSegmentEnd(0)), "a");
+        assertEquals(spec.substring(tokenizer.getPathSegmentStart(2), tokenizer.getPathSegmentEnd(2)), "bc");
+        assertEquals(tokenizer.getPathSegmentStart(3), tokenizer.getPathSegmentEnd(3));
+
+        tokenizer.tokenize("http://test.com");
+        assertFalse(tokenizer.hasPathSegment(0));
+        tokenizer.tokenize("http//test.com/a");
+        assertFalse(tokenizer.hasPathSegment(0));
+    }
+}